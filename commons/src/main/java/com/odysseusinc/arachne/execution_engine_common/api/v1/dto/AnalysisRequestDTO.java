@@ -35,6 +35,25 @@ public class AnalysisRequestDTO extends AnalysisSyncRequestDTO {
     @NotNull
     private String resultCallback;
 
+    /**
+     * Optional. If set, result files which the analysis marks as final while still running are sent here in parts,
+     * and only the remaining files are sent to {@link #resultCallback} on completion.
+     */
+    private String partialResultCallback;
+
+    /**
+     * Optional. If set, a {@link ResultManifestDTO} is posted here before the results are uploaded. The response is the
+     * list of hashes the receiver does not have, and only files with these hashes are uploaded.
+     */
+    private String resultManifestCallback;
+
+    /**
+     * Optional. If true, result files are not uploaded. The result callback carries only a {@link ResultManifestDTO}
+     * named {@value ResultManifestDTO#PULL_FILE_NAME}, and the files are downloaded from the engine until acknowledged
+     * or until they expire.
+     */
+    private boolean pullResults;
+
     public String getCallbackPassword() {
 
         return callbackPassword;
@@ -65,4 +84,34 @@ public class AnalysisRequestDTO extends AnalysisSyncRequestDTO {
         this.resultCallback = resultCallback;
     }
 
+    public String getPartialResultCallback() {
+
+        return partialResultCallback;
+    }
+
+    public void setPartialResultCallback(String partialResultCallback) {
+
+        this.partialResultCallback = partialResultCallback;
+    }
+
+    public String getResultManifestCallback() {
+
+        return resultManifestCallback;
+    }
+
+    public void setResultManifestCallback(String resultManifestCallback) {
+
+        this.resultManifestCallback = resultManifestCallback;
+    }
+
+    public boolean isPullResults() {
+
+        return pullResults;
+    }
+
+    public void setPullResults(boolean pullResults) {
+
+        this.pullResults = pullResults;
+    }
+
 }
@@ -46,7 +46,15 @@ public class AnalysisResultDTO {
      * post-processing, such as cleanup. No assumption should be made by consumers.
      */
     private String error;
+    /**
+     * Process log. If the log is too long, only its tail is kept here, and the full log
+     * is sent along with the result files as a separate {@code stdout} part.
+     */
     private String stdout;
+    /**
+     * True if {@link #stdout} holds only the tail of the log
+     */
+    private boolean stdoutTruncated;
     /**
      * @deprecated Use {@link #stage} and {@link #error} to inspect status detail
      */
@@ -0,0 +1,54 @@
+package com.odysseusinc.arachne.execution_engine_common.api.v1.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Lists result files with their content hashes. Offered to the receiver before the upload, so that
+ * files it already has are not uploaded again, and then sent along with the results as {@link #FILE_NAME}.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class ResultManifestDTO {
+    public static final String FILE_NAME = "result_manifest.json";
+    /**
+     * Name of the manifest sent instead of the result files, when the analysis requested them to be pulled
+     */
+    public static final String PULL_FILE_NAME = "result_pull_manifest.json";
+    public static final String ALGORITHM = "SHA-256";
+
+    /**
+     * Execution id, as provided in the request
+     */
+    private Long id;
+    private String algorithm = ALGORITHM;
+    private List<ResultFileDTO> files = new ArrayList<>();
+    /**
+     * For pulled results, epoch millis until which the files can be downloaded, unless acknowledged earlier
+     */
+    private Long retainedUntil;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    public static class ResultFileDTO {
+        /**
+         * Path relative to the result root, with '/' as separator
+         */
+        private String path;
+        private long size;
+        /**
+         * Lower case hex
+         */
+        private String hash;
+        /**
+         * False if the file was not uploaded, because the receiver reported it already has the content with this hash,
+         * or because the results are to be pulled
+         */
+        private boolean uploaded = true;
+    }
+}
@@ -32,14 +32,14 @@ import java.nio.file.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.zip.Deflater;
 
 import net.lingala.zip4j.ZipFile;
 import net.lingala.zip4j.exception.ZipException;
 import net.lingala.zip4j.model.FileHeader;
-import net.lingala.zip4j.model.ZipParameters;
-import net.lingala.zip4j.model.enums.CompressionLevel;
-import net.lingala.zip4j.model.enums.CompressionMethod;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.FileSystemResource;
@@ -50,7 +50,6 @@ public class CommonFileUtils {
     private static final Logger log = LoggerFactory.getLogger(CommonFileUtils.class);
     private static final AntPathMatcher matcher = new AntPathMatcher();
     private static final String DELETE_IN_ZIP_ERROR = "Error deleting file in zip archive. Skipped";
-    private static final PathMatcher ZIP_FILES_MATCHER = FileSystems.getDefault().getPathMatcher("glob:**.zip");
     private static final PathMatcher RENV_FILES_MATCHER = FileSystems.getDefault()
             .getPathMatcher("glob:{,**/}renv{,/**}");
 
@@ -92,30 +91,64 @@ public class CommonFileUtils {
     public static File compressAndSplit(File folder, File zipArchive, Long maximumSize, String exclusions)
             throws ZipException {
 
+        return compressAndSplit(folder, zipArchive, maximumSize, exclusions, Deflater.DEFAULT_COMPRESSION, 0);
+    }
+
+    /**
+     * @param level   deflate level, 0-9 or -1 for default.
+     * @param threads number of threads used to compress files, 0 to use all available processors.
+     */
+    public static File compressAndSplit(File folder, File zipArchive, Long maximumSize, String exclusions, int level, int threads)
+            throws ZipException {
+
+        return compressAndSplit(folder, zipArchive, maximumSize, exclusions, CompressionPolicy.fixed(level), threads);
+    }
+
+    /**
+     * @param policy  decides how each file is compressed.
+     * @param threads number of threads used to compress files, 0 to use all available processors.
+     */
+    public static File compressAndSplit(
+            File folder, File zipArchive, Long maximumSize, String exclusions, CompressionPolicy policy, int threads
+    ) throws ZipException {
+
+        return compressAndSplit(folder, zipArchive, maximumSize, exclusions, policy, threads, file -> true);
+    }
+
+    /**
+     * @param include only files accepted by this filter are added, in addition to exclusions.
+     */
+    public static File compressAndSplit(
+            File folder, File zipArchive, Long maximumSize, String exclusions, CompressionPolicy policy, int threads, Predicate<File> include
+    ) throws ZipException {
+
+        return compressAndSplit(folder, zipArchive, maximumSize, exclusions, policy, null, threads, include);
+    }
+
+    /**
+     * @param executor shared executor compressing files, or null to create a pool for this archive only.
+     * @param threads  max number of files of this archive compressed at once, 0 to use all available processors.
+     */
+    public static File compressAndSplit(
+            File folder, File zipArchive, Long maximumSize, String exclusions, CompressionPolicy policy, ExecutorService executor, int threads,
+            Predicate<File> include
+    ) throws ZipException {
+
         File zipDir = new File(zipArchive.getParent());
         try {
             Files.createDirectories(zipDir.toPath());
-            ZipFile zipFile = new ZipFile(zipArchive);
-
-            ZipParameters parameters = new ZipParameters();
-            parameters.setCompressionMethod(CompressionMethod.DEFLATE);
-            // High compression level was set selected as possible fix for a bug:
-            // http://www.lingala.net/zip4j/forum/index.php?topic=225.0
-            parameters.setCompressionLevel(CompressionLevel.MAXIMUM);
-            parameters.setIncludeRootFolder(false);
-            parameters.setReadHiddenFiles(false);
-
-            parameters.setDefaultFolderPath(folder.getAbsolutePath());
-            ArrayList<File> filesToAdd = filterFiles(folder.toPath(), exclusions);
-
-            if (maximumSize != null) {
-                zipFile.createSplitZipFile(filesToAdd, parameters, true, maximumSize);
-            } else {
-                zipFile.addFiles(filesToAdd, parameters);
-            }
-        } catch (ZipException zipException) {
+            List<String> patterns = Arrays.asList(split(exclusions, ","));
+            ArrayList<File> filesToAdd = filterFiles(folder.toPath(), patterns);
+            filesToAdd.removeIf(file -> file.isHidden() || !include.test(file));
+            new ParallelZipWriter(policy, executor, threads, new NestedZipFilter(patterns)).write(folder.toPath(), filesToAdd, zipArchive, maximumSize);
+        } catch (IllegalArgumentException zipException) {
+            // Invalid split size
             throw new ZipException(String.format("Zip exception [folder: %s, zipArchive: %s]: %s",
                     folder.getAbsolutePath(), zipArchive.getAbsolutePath(), zipException.getMessage()), zipException);
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new ZipException(String.format("Interrupted [folder: %s, zipArchive: %s]",
+                    folder.getAbsolutePath(), zipArchive.getAbsolutePath()), interruptedException);
         } catch (IOException ioException) {
             log.error(ioException.getMessage(), ioException);
             throw new IORuntimeException(ioException.getMessage());
@@ -123,21 +156,23 @@ public class CommonFileUtils {
         return zipDir;
     }
 
-    private static ArrayList<File> filterFiles(Path folderPath, String exclusions) throws IOException {
+    /**
+     * Lists files which {@link #compressAndSplit} would add to the archive.
+     */
+    public static List<File> listFiles(File folder, String exclusions) throws IOException {
+
+        ArrayList<File> files = filterFiles(folder.toPath(), Arrays.asList(split(exclusions, ",")));
+        files.removeIf(File::isHidden);
+        return files;
+    }
 
-        List<String> patterns = Arrays.asList(split(exclusions, ","));
+    private static ArrayList<File> filterFiles(Path folderPath, List<String> patterns) throws IOException {
 
-        ArrayList<File> files = Files.walk(folderPath)
+        return Files.walk(folderPath)
                 .filter(path -> !RENV_FILES_MATCHER.matches(folderPath.relativize(path))
                         && noneMatch(patterns, folderPath.relativize(path).toString()))
                 .filter(path -> !Files.isDirectory(path))
                 .map(Path::toFile).collect(Collectors.toCollection(ArrayList::new));
-
-        files.stream()
-                .filter(file -> ZIP_FILES_MATCHER.matches(file.toPath()))
-                .forEach(file -> filterFilesInZip(patterns, file));
-
-        return files;
     }
 
     private static boolean noneMatch(List<String> patterns, String fileName) {
@@ -147,6 +182,11 @@ public class CommonFileUtils {
                 .noneMatch(e -> matcher.match(e.trim(), fileName));
     }
 
+    /**
+     * @deprecated rewrites the archive on every removed entry. Result archives apply {@link NestedZipFilter} instead,
+     * which leaves the file intact.
+     */
+    @Deprecated
     public static void filterFilesInZip(List<String> patterns, File file) {
         try {
             ZipFile zipFile = new ZipFile(file);
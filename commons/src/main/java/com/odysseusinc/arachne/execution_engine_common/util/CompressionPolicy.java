@@ -0,0 +1,153 @@
+package com.odysseusinc.arachne.execution_engine_common.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Decides how each file is put into a result archive.
+ * A fixed policy deflates everything with the same level. An adaptive policy stores files which are already
+ * compressed, judging by their extension or by how well their first block compresses, and lowers the level
+ * for large files when deflating them at the max level would not fit into the time budget of the archive.
+ */
+public class CompressionPolicy {
+
+    private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "zip", "gz", "tgz", "bz2", "xz", "zst", "7z", "jar", "rds", "rda", "rdata", "andromeda",
+            "png", "jpg", "jpeg", "gif", "webp", "pdf", "parquet", "docx", "xlsx", "pptx"
+    ));
+    private static final int SAMPLE_SIZE = 256 * 1024;
+    // Files this small are deflated at max level without sampling, it is cheaper than the decision itself
+    private static final long SMALL_FILE_SIZE = 64 * 1024;
+    // Deflate output is still above this share of the input, so compressing is not worth it
+    private static final double INCOMPRESSIBLE_RATIO = 0.9;
+    // Approximate deflate time per level, relative to level 1
+    private static final double[] LEVEL_COST = {0, 1, 1.1, 1.3, 1.6, 2.2, 3, 4, 7, 10};
+
+    private final int maxLevel;
+    private final boolean adaptive;
+    private final long timeBudgetNanos;
+
+    private CompressionPolicy(int maxLevel, boolean adaptive, long timeBudgetMs) {
+
+        this.maxLevel = maxLevel < 0 ? 6 : maxLevel;
+        this.adaptive = adaptive;
+        this.timeBudgetNanos = TimeUnit.MILLISECONDS.toNanos(timeBudgetMs);
+    }
+
+    public static CompressionPolicy fixed(int level) {
+
+        return new CompressionPolicy(level, false, 0);
+    }
+
+    /**
+     * @param maxLevel     level used when there is enough time.
+     * @param timeBudgetMs target time to compress the whole archive, 0 for no limit.
+     */
+    public static CompressionPolicy adaptive(int maxLevel, long timeBudgetMs) {
+
+        return new CompressionPolicy(maxLevel, true, timeBudgetMs);
+    }
+
+    /**
+     * @param totalBytes size of all files in the archive.
+     * @param threads    number of files compressed at the same time.
+     */
+    public Decision decide(File file, long totalBytes, int threads) throws IOException {
+
+        if (!adaptive || maxLevel == 0) {
+            return new Decision(maxLevel, "fixed");
+        }
+        String extension = StringUtils.substringAfterLast(file.getName(), ".").toLowerCase(Locale.ROOT);
+        if (COMPRESSED_EXTENSIONS.contains(extension)) {
+            return new Decision(0, "compressed type");
+        }
+        long size = file.length();
+        if (size < SMALL_FILE_SIZE) {
+            return new Decision(maxLevel, "small");
+        }
+        byte[] sample = new byte[(int) Math.min(size, SAMPLE_SIZE)];
+        int read;
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            read = readFully(in, sample);
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        long started = System.nanoTime();
+        long compressed;
+        try {
+            deflater.setInput(sample, 0, read);
+            deflater.finish();
+            byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                deflater.deflate(buffer);
+            }
+            compressed = deflater.getBytesWritten();
+        } finally {
+            deflater.end();
+        }
+        long sampleNanos = Math.max(1, System.nanoTime() - started);
+        if (read == 0 || compressed >= read * INCOMPRESSIBLE_RATIO) {
+            return new Decision(0, "incompressible");
+        }
+        if (timeBudgetNanos <= 0) {
+            return new Decision(maxLevel, "compressible");
+        }
+        // Files are compressed in parallel, so each one gets its share of the budget multiplied by the number of threads
+        double allowedNanos = (double) timeBudgetNanos * threads * size / Math.max(size, totalBytes);
+        double fastestNanos = (double) sampleNanos * size / read;
+        for (int level = maxLevel; level > 1; level--) {
+            if (fastestNanos * LEVEL_COST[level] <= allowedNanos) {
+                return new Decision(level, level == maxLevel ? "compressible" : "time budget");
+            }
+        }
+        return new Decision(1, "time budget");
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+
+        int total = 0;
+        int read;
+        while (total < buffer.length && (read = in.read(buffer, total, buffer.length - total)) > 0) {
+            total += read;
+        }
+        return total;
+    }
+
+    public static class Decision {
+        private final int level;
+        private final String reason;
+
+        Decision(int level, String reason) {
+
+            this.level = level;
+            this.reason = reason;
+        }
+
+        /**
+         * @return deflate level, 0 means the file is stored as is.
+         */
+        public int getLevel() {
+
+            return level;
+        }
+
+        public String getReason() {
+
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+
+            return (level == 0 ? "stored" : "deflate-" + level) + " (" + reason + ")";
+        }
+    }
+}
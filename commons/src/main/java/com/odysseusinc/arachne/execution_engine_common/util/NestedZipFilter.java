@@ -0,0 +1,78 @@
+package com.odysseusinc.arachne.execution_engine_common.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.AntPathMatcher;
+
+/**
+ * Applies result exclusions to the entries of zip archives nested in the results.
+ * Entries which are kept are copied in their compressed form in a single pass, and the original archive is never modified.
+ */
+public class NestedZipFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(NestedZipFilter.class);
+    private static final AntPathMatcher matcher = new AntPathMatcher();
+    private static final PathMatcher ZIP_FILES_MATCHER = FileSystems.getDefault().getPathMatcher("glob:**.zip");
+
+    private final List<String> patterns;
+
+    public NestedZipFilter(List<String> patterns) {
+
+        this.patterns = patterns.stream().filter(matcher::isPattern).map(String::trim).collect(Collectors.toList());
+    }
+
+    public static NestedZipFilter none() {
+
+        return new NestedZipFilter(Collections.emptyList());
+    }
+
+    /**
+     * @return the file itself if it is not a zip archive or nothing in it is excluded,
+     * otherwise a filtered copy created in tempDir, which the caller has to delete.
+     */
+    public File filter(File file, Path tempDir) {
+
+        if (patterns.isEmpty() || !ZIP_FILES_MATCHER.matches(file.toPath())) {
+            return file;
+        }
+        File filtered = null;
+        try (ZipFile zipFile = new ZipFile(file)) {
+            List<String> excluded = Collections.list(zipFile.getEntries()).stream()
+                    .map(ZipArchiveEntry::getName)
+                    .filter(this::isExcluded)
+                    .collect(Collectors.toList());
+            if (excluded.isEmpty()) {
+                return file;
+            }
+            filtered = Files.createTempFile(tempDir, "nested", ".zip").toFile();
+            try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(filtered)) {
+                zipFile.copyRawEntries(out, entry -> !isExcluded(entry.getName()));
+            }
+            log.debug("Excluded {} entries from nested archive [{}]: {}", excluded.size(), file, excluded);
+            return filtered;
+        } catch (IOException e) {
+            log.warn("Error filtering files in zip archive [{}]. Skipped: {}", file, e.getMessage());
+            if (filtered != null) {
+                filtered.delete();
+            }
+            return file;
+        }
+    }
+
+    private boolean isExcluded(String name) {
+
+        return patterns.stream().anyMatch(pattern -> matcher.match(pattern, name));
+    }
+}
@@ -0,0 +1,279 @@
+package com.odysseusinc.arachne.execution_engine_common.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import org.apache.commons.compress.archivers.zip.ScatterZipOutputStream;
+import org.apache.commons.compress.archivers.zip.StreamCompressor;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntryRequest;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.parallel.FileBasedScatterGatherBackingStore;
+import org.apache.commons.compress.parallel.ScatterGatherBackingStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a standard zip archive, optionally split into volumes, compressing entries concurrently.
+ * Every worker thread deflates its entries into its own temporary scatter files, one per compression level,
+ * and the compressed entries are then copied as is into the target archive. Content of the entries does not depend on
+ * the number of threads, but their order in the archive does, as it follows the order in which threads picked them up.
+ * Entries are compressed on the given shared executor, so that concurrent archives do not multiply the number of threads.
+ * Without one, a pool is created for each archive.
+ */
+public class ParallelZipWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelZipWriter.class);
+
+    private final CompressionPolicy policy;
+    private final ExecutorService executor;
+    private final int threads;
+    private final NestedZipFilter nestedZipFilter;
+
+    /**
+     * @param level   deflate level, 0-9 or -1 for default.
+     * @param threads max number of threads used to compress entries, 0 to use all available processors.
+     */
+    public ParallelZipWriter(int level, int threads) {
+
+        this(CompressionPolicy.fixed(level), threads);
+    }
+
+    /**
+     * @param policy  decides how each file is compressed.
+     * @param threads max number of threads used to compress entries, 0 to use all available processors.
+     */
+    public ParallelZipWriter(CompressionPolicy policy, int threads) {
+
+        this(policy, threads, NestedZipFilter.none());
+    }
+
+    /**
+     * @param policy          decides how each file is compressed.
+     * @param threads         max number of threads used to compress entries, 0 to use all available processors.
+     * @param nestedZipFilter applied to zip archives found among the files, while they are added.
+     */
+    public ParallelZipWriter(CompressionPolicy policy, int threads, NestedZipFilter nestedZipFilter) {
+
+        this(policy, null, threads, nestedZipFilter);
+    }
+
+    /**
+     * @param policy          decides how each file is compressed.
+     * @param executor        shared executor compressing entries, or null to create a pool for each archive.
+     * @param threads         max number of entries of an archive compressed at once, 0 to use all available processors.
+     *                        Should not exceed the size of the executor.
+     * @param nestedZipFilter applied to zip archives found among the files, while they are added.
+     */
+    public ParallelZipWriter(CompressionPolicy policy, ExecutorService executor, int threads, NestedZipFilter nestedZipFilter) {
+
+        this.policy = policy;
+        this.executor = executor;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.nestedZipFilter = nestedZipFilter;
+    }
+
+    /**
+     * @param root      entry names are relative to this folder.
+     * @param files     files to add, all must be located under root.
+     * @param archive   target archive. When split, volumes are named archive.z01, archive.z02... and the last one is archive.
+     * @param splitSize max size of a volume, or null to create a single archive.
+     */
+    public void write(Path root, List<File> files, File archive, Long splitSize) throws IOException, InterruptedException {
+
+        long started = System.currentTimeMillis();
+        long totalBytes = files.stream().mapToLong(File::length).sum();
+        Path scatterDir = Files.createTempDirectory("zip-scatter");
+        int poolSize = Math.max(1, Math.min(threads, files.size()));
+        ExecutorService executor = this.executor != null ? this.executor : createPool(archive, poolSize);
+        // Only poolSize tasks are submitted at once, the next one as soon as one of them is done
+        Semaphore permits = new Semaphore(poolSize);
+        List<Scatter> scatters = Collections.synchronizedList(new ArrayList<>());
+        // Scatters of each thread, keyed by level. Not a ThreadLocal, as threads of a shared executor outlive the archive
+        Map<Thread, Map<Integer, Scatter>> threadScatters = new ConcurrentHashMap<>();
+        Map<String, Stats> stats = new TreeMap<>();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (File file : files) {
+                permits.acquire();
+                futures.add(executor.submit(() -> {
+                    try {
+                        compress(root, file, scatterDir, totalBytes, poolSize, scatters, threadScatters, stats);
+                    } finally {
+                        permits.release();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            try (ZipArchiveOutputStream out = splitSize != null ? new ZipArchiveOutputStream(archive, splitSize) : new ZipArchiveOutputStream(archive)) {
+                for (Scatter scatter : scatters) {
+                    scatter.stream.writeTo(out);
+                }
+            }
+            log.info("Compressed {} files, {} bytes into [{}] using {} threads in {} ms: {}", files.size(), totalBytes, archive, poolSize,
+                    System.currentTimeMillis() - started,
+                    stats.entrySet().stream().map(entry -> entry.getKey() + " " + entry.getValue()).collect(Collectors.joining(", "))
+            );
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+        } finally {
+            // Tasks of a failed archive must not keep writing into scatters which are about to be deleted
+            awaitOrCancel(futures);
+            if (executor != this.executor) {
+                executor.shutdownNow();
+            }
+            for (Scatter scatter : scatters) {
+                try {
+                    scatter.stream.close();
+                } catch (IOException e) {
+                    log.warn("Failed to close scatter stream: {}", e.getMessage());
+                }
+            }
+            deleteQuietly(scatterDir);
+        }
+    }
+
+    private void compress(
+            Path root, File file, Path scatterDir, long totalBytes, int poolSize, List<Scatter> scatters,
+            Map<Thread, Map<Integer, Scatter>> threadScatters, Map<String, Stats> stats
+    ) throws IOException {
+
+        long fileStarted = System.nanoTime();
+        File source = nestedZipFilter.filter(file, scatterDir);
+        CompressionPolicy.Decision decision = policy.decide(source, totalBytes, poolSize);
+        Scatter scatter = threadScatters.computeIfAbsent(Thread.currentThread(), thread -> new HashMap<>()).computeIfAbsent(decision.getLevel(), level -> {
+            Scatter created = new Scatter(scatterDir, level);
+            scatters.add(created);
+            return created;
+        });
+        try {
+            scatter.stream.addArchiveEntry(entryRequest(root, file, source, decision.getLevel()));
+        } finally {
+            if (!source.equals(file)) {
+                Files.deleteIfExists(source.toPath());
+            }
+        }
+        long bytesIn = scatter.compressor.getBytesRead();
+        long bytesOut = scatter.compressor.getBytesWrittenForLastEntry();
+        long nanos = System.nanoTime() - fileStarted;
+        log.debug("Compressed [{}] as {}: {} -> {} bytes in {} ms", file, decision, bytesIn, bytesOut, nanos / 1_000_000);
+        synchronized (stats) {
+            stats.computeIfAbsent(decision.toString(), key -> new Stats()).add(bytesIn, bytesOut, nanos);
+        }
+    }
+
+    private static void awaitOrCancel(List<Future<?>> futures) {
+
+        for (Future<?> future : futures) {
+            if (!future.cancel(false)) {
+                try {
+                    future.get();
+                } catch (ExecutionException | CancellationException e) {
+                    // Already reported, or not started
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static ExecutorService createPool(File archive, int poolSize) {
+
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "zip-" + archive.getName() + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static void deleteQuietly(Path dir) {
+
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException e) {
+            log.warn("Failed to delete [{}]: {}", dir, e.getMessage());
+        }
+    }
+
+    private static ZipArchiveEntryRequest entryRequest(Path root, File file, File source, int level) {
+
+        ZipArchiveEntry entry = new ZipArchiveEntry(root.relativize(file.toPath()).toString().replace(File.separatorChar, '/'));
+        entry.setMethod(level == 0 ? ZipEntry.STORED : ZipEntry.DEFLATED);
+        entry.setTime(file.lastModified());
+        return ZipArchiveEntryRequest.createZipArchiveEntryRequest(entry, () -> {
+            try {
+                return Files.newInputStream(source.toPath());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Compressed entries of one thread at one compression level.
+     */
+    private static class Scatter {
+        private final StreamCompressor compressor;
+        private final ScatterZipOutputStream stream;
+
+        Scatter(Path dir, int level) {
+
+            try {
+                ScatterGatherBackingStore store = new FileBasedScatterGatherBackingStore(
+                        Files.createTempFile(dir, "scatter", ".tmp").toFile()
+                );
+                compressor = StreamCompressor.create(level, store);
+                stream = new ScatterZipOutputStream(store, compressor);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static class Stats {
+        private int files;
+        private long bytesIn;
+        private long bytesOut;
+        private long nanos;
+
+        void add(long bytesIn, long bytesOut, long nanos) {
+
+            this.files++;
+            this.bytesIn += bytesIn;
+            this.bytesOut += bytesOut;
+            this.nanos += nanos;
+        }
+
+        @Override
+        public String toString() {
+
+            return String.format("[files: %d, in: %d, out: %d, cpu: %d ms]", files, bytesIn, bytesOut, nanos / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.odysseusinc.arachne.execution_engine_common.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.model.FileHeader;
+import net.lingala.zip4j.model.enums.CompressionMethod;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ParallelZipWriterTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testArchiveIsReadableByZip4j() throws IOException {
+
+        File folder = createResults(20);
+        File archive = new File(temp.newFolder("zip"), "1_result.zip");
+
+        File zipDir = CommonFileUtils.compressAndSplit(folder, archive, null, "", 6, 4);
+
+        Assert.assertEquals("Single archive expected", 1, zipDir.list().length);
+        assertSameContent(folder, extract(archive));
+    }
+
+    @Test
+    public void testSplitArchiveIsReadableByZip4j() throws IOException {
+
+        File folder = createResults(20);
+        File archive = new File(temp.newFolder("zip"), "1_result.zip");
+
+        File zipDir = CommonFileUtils.compressAndSplit(folder, archive, 65536L, "", 6, 4);
+
+        Assert.assertTrue("Split volumes expected", zipDir.list().length > 1);
+        Assert.assertTrue(new File(zipDir, "1_result.z01").exists());
+        assertSameContent(folder, extract(archive));
+    }
+
+    @Test
+    public void testConcurrentArchivesShareExecutor() throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            File first = createResults(20);
+            File second = createResults(20);
+            File firstArchive = new File(temp.newFolder("zip1"), "1_result.zip");
+            File secondArchive = new File(temp.newFolder("zip2"), "2_result.zip");
+            Future<File> other = Executors.newSingleThreadExecutor().submit(() ->
+                    CommonFileUtils.compressAndSplit(second, secondArchive, null, "", CompressionPolicy.fixed(6), executor, 2, file -> true)
+            );
+            CommonFileUtils.compressAndSplit(first, firstArchive, 65536L, "", CompressionPolicy.fixed(6), executor, 2, file -> true);
+            other.get();
+
+            Assert.assertEquals(2, ((ThreadPoolExecutor) executor).getLargestPoolSize());
+            assertSameContent(first, extract(firstArchive));
+            assertSameContent(second, extract(secondArchive));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExclusionsAndHiddenFilesAreSkipped() throws IOException {
+
+        File folder = createResults(2);
+        Files.write(folder.toPath().resolve(".hidden"), "x".getBytes(StandardCharsets.UTF_8));
+        Files.write(folder.toPath().resolve("skip.log"), "x".getBytes(StandardCharsets.UTF_8));
+        File archive = new File(temp.newFolder("zip"), "1_result.zip");
+
+        CommonFileUtils.compressAndSplit(folder, archive, null, "*.log", 6, 2);
+
+        Set<String> names = new ZipFile(archive).getFileHeaders().stream().map(h -> h.getFileName()).collect(Collectors.toSet());
+        Assert.assertFalse(names.contains(".hidden"));
+        Assert.assertFalse(names.contains("skip.log"));
+        Assert.assertTrue(names.contains("dir0/result0.csv"));
+    }
+
+    @Test
+    public void testNestedZipIsFilteredWithoutModification() throws IOException {
+
+        File folder = createResults(1);
+        File nested = new File(folder, "nested.zip");
+        ZipFile nestedZip = new ZipFile(nested);
+        nestedZip.addFolder(createResults(2));
+        Files.write(folder.toPath().resolve("skip.log"), "x".getBytes(StandardCharsets.UTF_8));
+        nestedZip.addFile(new File(folder, "skip.log"));
+        byte[] original = Files.readAllBytes(nested.toPath());
+        File archive = new File(temp.newFolder("zip"), "1_result.zip");
+
+        CommonFileUtils.compressAndSplit(folder, archive, null, "**/*.log,*.log", 6, 2);
+
+        Assert.assertArrayEquals("Nested archive must not be modified", original, Files.readAllBytes(nested.toPath()));
+        File extracted = extract(archive);
+        Set<String> nestedNames = new ZipFile(new File(extracted, "nested.zip")).getFileHeaders().stream()
+                .map(FileHeader::getFileName).collect(Collectors.toSet());
+        Assert.assertFalse(nestedNames.contains("skip.log"));
+        Assert.assertTrue(nestedNames.stream().anyMatch(name -> name.endsWith("dir1/result1.csv")));
+        Assert.assertFalse(new File(extracted, "skip.log").exists());
+    }
+
+    @Test
+    public void testAdaptivePolicyStoresCompressedFiles() throws IOException {
+
+        File folder = createResults(3);
+        byte[] random = new byte[200_000];
+        new Random(1).nextBytes(random);
+        Files.write(folder.toPath().resolve("model.rds"), random);
+        Files.write(folder.toPath().resolve("random.bin"), random);
+        File archive = new File(temp.newFolder("zip"), "1_result.zip");
+
+        CommonFileUtils.compressAndSplit(folder, archive, null, "", CompressionPolicy.adaptive(9, 0), 2);
+
+        Map<String, CompressionMethod> methods = new ZipFile(archive).getFileHeaders().stream()
+                .collect(Collectors.toMap(FileHeader::getFileName, FileHeader::getCompressionMethod));
+        Assert.assertEquals(CompressionMethod.STORE, methods.get("model.rds"));
+        Assert.assertEquals(CompressionMethod.STORE, methods.get("random.bin"));
+        Assert.assertEquals(CompressionMethod.DEFLATE, methods.get("dir0/result0.csv"));
+        assertSameContent(folder, extract(archive));
+    }
+
+    @Test
+    public void testTimeBudgetLowersLevel() throws IOException {
+
+        File file = temp.newFile("large.csv");
+        StringBuilder content = new StringBuilder();
+        Random random = new Random(7);
+        for (int line = 0; line < 50_000; line++) {
+            content.append(line).append(',').append(random.nextInt(1000)).append('\n');
+        }
+        Files.write(file.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertEquals(9, CompressionPolicy.adaptive(9, 0).decide(file, file.length(), 1).getLevel());
+        Assert.assertEquals(1, CompressionPolicy.adaptive(9, 1).decide(file, 1_000_000_000_000L, 1).getLevel());
+        Assert.assertEquals(0, CompressionPolicy.adaptive(9, 0).decide(new File("result.zip"), 1, 1).getLevel());
+    }
+
+    private File createResults(int count) throws IOException {
+
+        File folder = temp.newFolder();
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            Path dir = Files.createDirectories(folder.toPath().resolve("dir" + i % 3));
+            StringBuilder content = new StringBuilder();
+            for (int line = 0; line < 2000; line++) {
+                content.append(i).append(',').append(random.nextInt()).append('\n');
+            }
+            Files.write(dir.resolve("result" + i + ".csv"), content.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return folder;
+    }
+
+    private File extract(File archive) throws IOException {
+
+        File target = temp.newFolder("extracted-" + archive.getName());
+        new ZipFile(archive).extractAll(target.getAbsolutePath());
+        return target;
+    }
+
+    private static void assertSameContent(File expected, File actual) throws IOException {
+
+        Set<Path> expectedFiles = files(expected);
+        Assert.assertEquals(expectedFiles, files(actual));
+        for (Path file : expectedFiles) {
+            Assert.assertArrayEquals(file.toString(),
+                    Files.readAllBytes(expected.toPath().resolve(file)), Files.readAllBytes(actual.toPath().resolve(file)));
+        }
+    }
+
+    private static Set<Path> files(File root) throws IOException {
+
+        try (Stream<Path> paths = Files.walk(root.toPath())) {
+            return paths.filter(Files::isRegularFile).map(root.toPath()::relativize).collect(Collectors.toSet());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import com.odysseusinc.arachne.executionengine.model.descriptor.Descriptor;
+import com.odysseusinc.arachne.executionengine.model.descriptor.r.RDependency;
+import com.odysseusinc.arachne.executionengine.model.descriptor.r.RDependencySourceType;
+import com.odysseusinc.arachne.executionengine.model.descriptor.r.RExecutionRuntime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Selection of a descriptor for a submitted renv.lock: scanning every runtime of every descriptor compared to
+ * looking up the {@link RuntimeIndex}. The requested runtime matches the last descriptor only, as scanning would
+ * otherwise stop being the worst case.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DescriptorMatchingBenchmark {
+    private static final String[] VERSIONS = {"4.1.2", "4.1.3", "4.2.0", "4.2.3"};
+
+    @Param({"100", "500"})
+    public int descriptorCount;
+    @Param("200")
+    public int dependencyCount;
+
+    private List<Descriptor> descriptors;
+    private RuntimeIndex index;
+    private RExecutionRuntime requested;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        descriptors = new ArrayList<>();
+        for (int i = 0; i < descriptorCount; i++) {
+            // Descriptors share most packages, differing in versions of some of them
+            List<RDependency> dependencies = new ArrayList<>();
+            for (int p = 0; p < dependencyCount; p++) {
+                dependencies.add(dependency("package" + p, "1." + (random.nextInt(10) == 0 ? random.nextInt(5) : 0)));
+            }
+            Collections.shuffle(dependencies, random);
+            Descriptor descriptor = new Descriptor();
+            descriptor.setId("descriptor" + i);
+            descriptor.setBundleName("bundle" + i + ".tar.gz");
+            descriptor.setExecutionRuntimes(Collections.singletonList(runtime(VERSIONS[i % VERSIONS.length], dependencies)));
+            descriptors.add(descriptor);
+        }
+        RExecutionRuntime last = (RExecutionRuntime) descriptors.get(descriptorCount - 1).getExecutionRuntimes().get(0);
+        requested = runtime(last.getVersion(), last.getDependencies().stream().filter(dependency ->
+                random.nextBoolean()
+        ).collect(Collectors.toList()));
+        index = new RuntimeIndex(descriptors);
+    }
+
+    /**
+     * Matching as done before the index, comparing with {@link List#contains}
+     */
+    @Benchmark
+    public List<Descriptor> listScan() {
+        return descriptors.stream().filter(descriptor -> descriptor.getExecutionRuntimes().stream().anyMatch(runtime -> {
+            RExecutionRuntime rRuntime = (RExecutionRuntime) runtime;
+            return rRuntime.getVersion().equals(requested.getVersion())
+                    && requested.getDependencies().stream().allMatch(rRuntime.getDependencies()::contains);
+        })).collect(Collectors.toList());
+    }
+
+    /**
+     * Matching by describing mismatches of every runtime, which is still how mismatches are logged
+     */
+    @Benchmark
+    public List<Descriptor> mismatchScan() {
+        return descriptors.stream().filter(descriptor -> descriptor.getExecutionRuntimes().stream().map(runtime ->
+                runtime.getMismatches(requested)
+        ).anyMatch(mismatches -> mismatches == null)).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Descriptor> index() {
+        return index.match(requested);
+    }
+
+    @Benchmark
+    public RuntimeIndex buildIndex() {
+        return new RuntimeIndex(descriptors);
+    }
+
+    private static RExecutionRuntime runtime(String version, List<RDependency> dependencies) {
+        RExecutionRuntime runtime = new RExecutionRuntime();
+        runtime.setVersion(version);
+        runtime.setDependencies(dependencies);
+        return runtime;
+    }
+
+    private static RDependency dependency(String name, String version) {
+        RDependency dependency = new RDependency();
+        dependency.setName(name);
+        dependency.setVersion(version);
+        dependency.setDependencySourceType(RDependencySourceType.CRAN);
+        return dependency;
+    }
+}
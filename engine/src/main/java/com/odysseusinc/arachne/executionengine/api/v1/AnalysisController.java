@@ -31,6 +31,8 @@ import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisSyncRe
 import com.odysseusinc.arachne.executionengine.execution.AnalysisService;
 import com.odysseusinc.arachne.executionengine.execution.CallbackService;
 import com.odysseusinc.arachne.executionengine.execution.Overseer;
+import com.odysseusinc.arachne.executionengine.execution.ResourceSampler;
+import com.odysseusinc.arachne.executionengine.execution.ResourceUsage;
 import com.odysseusinc.arachne.executionengine.util.AnalisysUtils;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -44,6 +46,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.function.BiConsumer;
 import javax.validation.Valid;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,6 +62,7 @@ import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestHeader;
@@ -88,14 +92,16 @@ public class AnalysisController {
     private final AnalysisService analysisService;
     private final CallbackService callbackService;
     private final ThreadPoolTaskExecutor threadPoolExecutor;
+    private final ResourceSampler resourceSampler;
 
     @Autowired
     public AnalysisController(AnalysisService analysisService, CallbackService callbackService,
-                              ThreadPoolTaskExecutor threadPoolExecutor) {
+                              ThreadPoolTaskExecutor threadPoolExecutor, ResourceSampler resourceSampler) {
 
         this.analysisService = analysisService;
         this.callbackService = callbackService;
         this.threadPoolExecutor = threadPoolExecutor;
+        this.resourceSampler = resourceSampler;
     }
 
     @ApiOperation(value = "Files for analysis")
@@ -156,6 +162,8 @@ public class AnalysisController {
         try {
             AnalysisRequestStatusDTO stat = analysisService.analyze(analysisRequest, analysisDir, false, callback, 100).map(overseer -> {
                 overseer.getResult().join();
+                // Output is collected by the callback
+                overseer.detachStdout().ifPresent(FileUtils::deleteQuietly);
                 long elapsedTime = System.currentTimeMillis() - startTime;
                 log.info("Execution of synchronous analysis ID = {} took: {} sec", id, elapsedTime / 1000);
                 return new AnalysisRequestStatusDTO(id, overseer.getType(), overseer.getEnvironment());
@@ -208,6 +216,16 @@ public class AnalysisController {
         );
     }
 
+    @ApiOperation(value = "Resources used by running analysis job")
+    @GetMapping(value = "/resources/{id}")
+    public ResponseEntity<ResourceUsage> resources(
+            @PathVariable("id") Long id
+    ) {
+        return resourceSampler.getUsage(id).map(ResponseEntity::ok).orElseGet(() ->
+                ResponseEntity.notFound().build()
+        );
+    }
+
     @ApiOperation(value = "Prometheus compatible metrics")
     @RequestMapping(value = REST_API_METRICS,
             method = RequestMethod.GET,
@@ -216,7 +234,18 @@ public class AnalysisController {
     public String metrics() {
 
         int busy = analysisService.activeTasks();
-        return "busy " + busy;
+        StringBuilder result = new StringBuilder("busy " + busy);
+        resourceSampler.getAll().forEach((id, usage) -> {
+            String label = "{analysis=\"" + id + "\"} ";
+            result.append("\nanalysis_cpu_seconds").append(label).append(usage.getCpuSeconds());
+            result.append("\nanalysis_rss_bytes").append(label).append(usage.getRssBytes());
+            result.append("\nanalysis_peak_rss_bytes").append(label).append(usage.getPeakRssBytes());
+            if (usage.getReadBytes() != null) {
+                result.append("\nanalysis_read_bytes").append(label).append(usage.getReadBytes());
+                result.append("\nanalysis_write_bytes").append(label).append(usage.getWriteBytes());
+            }
+        });
+        return result.toString();
     }
 
     @RequestMapping(value = REST_API_THREAD, method = RequestMethod.GET, produces = MediaType.TEXT_PLAIN_VALUE)
@@ -0,0 +1,138 @@
+package com.odysseusinc.arachne.executionengine.api.v1;
+
+import com.odysseusinc.arachne.executionengine.execution.callback.ResultRetention;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Serves results of analyses which requested them to be pulled, see {@link ResultRetention}.
+ * Files are served with single range requests support, so downloads can be parallel and resumed.
+ */
+@Slf4j
+@RestController
+@Api
+@RequestMapping(value = ResultController.REST_API_MAIN)
+public class ResultController {
+    @SuppressWarnings("WeakerAccess")
+    public static final String REST_API_MAIN = "/api/v1";
+    @SuppressWarnings("WeakerAccess")
+    public static final String REST_API_RESULTS = "/analysis/{id}/results";
+    @SuppressWarnings("WeakerAccess")
+    public static final String REST_API_RESULT_FILE = "/analysis/{id}/results/{file:.+}";
+    public static final String PASSWORD_HEADER = "arachne-callback-password";
+
+    // Tomcat sendfile support, available on plain connections only
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final ResultRetention retention;
+
+    public ResultController(ResultRetention retention) {
+        this.retention = retention;
+    }
+
+    @ApiOperation(value = "Download retained result file")
+    @GetMapping(value = REST_API_RESULT_FILE)
+    public void download(
+            @PathVariable("id") Long id,
+            @PathVariable("file") String name,
+            @RequestHeader(value = PASSWORD_HEADER, required = false) String password,
+            HttpServletRequest request,
+            HttpServletResponse response
+    ) throws IOException {
+        Optional<File> found = retention.find(id, name, password);
+        if (!found.isPresent()) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        File file = found.get();
+        long length = file.length();
+        long start = 0;
+        long end = length;
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(range);
+            } catch (IllegalArgumentException e) {
+                ranges = null;
+            }
+            // Multiple ranges are rarely used for downloads, such requests get the whole file
+            if (ranges != null && ranges.size() == 1) {
+                HttpRange requested = ranges.get(0);
+                if (length == 0 || requested.getRangeStart(length) >= length) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    return;
+                }
+                start = requested.getRangeStart(length);
+                end = requested.getRangeEnd(length) + 1;
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + length);
+            } else if (ranges == null) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                return;
+            }
+        }
+        response.setContentLengthLong(end - start);
+        log.debug("Execution [{}] serving [{}] bytes {}-{} of {}", id, name, start, end, length);
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // The container writes the file straight from page cache to the socket once the handler returns
+            request.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+        } else {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                OutputStream out = response.getOutputStream();
+                WritableByteChannel target = Channels.newChannel(out);
+                for (long position = start; position < end; ) {
+                    long sent = channel.transferTo(position, end - position, target);
+                    if (sent <= 0) {
+                        // Nothing left to read, the file got shorter than the length already sent in the headers
+                        throw new EOFException(String.format("Retained file [%s] of execution [%s] ended at %d of %d bytes", name, id, position, end));
+                    }
+                    position += sent;
+                }
+                out.flush();
+            }
+        }
+    }
+
+    @ApiOperation(value = "Acknowledge retained results are downloaded")
+    @DeleteMapping(value = REST_API_RESULTS)
+    public ResponseEntity<Void> acknowledge(
+            @PathVariable("id") Long id,
+            @RequestHeader(value = PASSWORD_HEADER, required = false) String password
+    ) {
+        return retention.release(id, password) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+}
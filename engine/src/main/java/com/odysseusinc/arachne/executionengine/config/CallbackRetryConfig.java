@@ -13,11 +13,6 @@ import org.springframework.web.client.RestClientException;
 @EnableConfigurationProperties(CallbackRetryProperties.class)
 public class CallbackRetryConfig {
 
-    @Bean
-    public RetryTemplate successCallbackRetryTemplate(CallbackRetryProperties properties) {
-        return buildRetryTemplate(properties.getSuccess());
-    }
-
     @Bean
     public RetryTemplate failureCallbackRetryTemplate(CallbackRetryProperties properties) {
         return buildRetryTemplate(properties.getFailure());
@@ -0,0 +1,152 @@
+package com.odysseusinc.arachne.executionengine.config;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * Compresses request bodies with gzip while they are streamed, without buffering them in memory.
+ * Only streaming requests are compressed, so the wrapped factory must not buffer request bodies.
+ * Only text and JSON bodies are compressed. Multipart uploads carry result archives, which are compressed already and
+ * may take gigabytes, so they are sent as is and never have to be repeated.
+ * If a server rejects the encoding with HTTP 415, the request is repeated uncompressed, and the following requests to
+ * that server are sent uncompressed too. Repeating writes the body again, so it must not be a one-shot stream.
+ */
+@Slf4j
+public class CompressingClientHttpRequestFactory implements ClientHttpRequestFactory {
+    private static final String GZIP = "gzip";
+
+    private final ClientHttpRequestFactory delegate;
+    private final int level;
+    private final Set<String> unsupported = ConcurrentHashMap.newKeySet();
+
+    public CompressingClientHttpRequestFactory(ClientHttpRequestFactory delegate, int level) {
+        this.delegate = delegate;
+        this.level = level;
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        ClientHttpRequest request = delegate.createRequest(uri, httpMethod);
+        boolean compress = request instanceof StreamingHttpOutputMessage && !unsupported.contains(uri.getAuthority());
+        return compress ? new GzipRequest(request, httpMethod) : request;
+    }
+
+    private class GzipRequest implements ClientHttpRequest, StreamingHttpOutputMessage {
+        private final ClientHttpRequest request;
+        private final HttpMethod method;
+        private Body body;
+        private long compressed;
+        private long uncompressed;
+
+        GzipRequest(ClientHttpRequest request, HttpMethod method) {
+            this.request = request;
+            this.method = method;
+        }
+
+        @Override
+        public void setBody(Body body) {
+            this.body = body;
+        }
+
+        private void setCompressedBody() {
+            ((StreamingHttpOutputMessage) request).setBody(out -> {
+                CountingOutputStream counted = new CountingOutputStream(out);
+                LeveledGzipOutputStream gzip = new LeveledGzipOutputStream(counted, level);
+                try {
+                    CountingOutputStream source = new CountingOutputStream(gzip);
+                    body.writeTo(source);
+                    gzip.finish();
+                    uncompressed = source.getByteCount();
+                    compressed = counted.getByteCount();
+                } finally {
+                    // The stream is not closed, as that would close the connection stream. Release native memory now
+                    gzip.end();
+                }
+            });
+        }
+
+        @Override
+        public OutputStream getBody() {
+            throw new UnsupportedOperationException("getBody not supported");
+        }
+
+        @Override
+        public ClientHttpResponse execute() throws IOException {
+            URI uri = getURI();
+            // Content type is only known once the message converter has written the headers
+            boolean compressed = body != null && isCompressible(getHeaders().getContentType());
+            if (compressed) {
+                // Length of the compressed body is not known in advance
+                getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+                getHeaders().set(HttpHeaders.CONTENT_ENCODING, GZIP);
+                setCompressedBody();
+            } else if (body != null) {
+                ((StreamingHttpOutputMessage) request).setBody(body);
+            }
+            ClientHttpResponse response = request.execute();
+            if (compressed) {
+                log.debug("Request to [{}] compressed from {} to {} bytes", uri, uncompressed, compressed);
+                if (response.getRawStatusCode() == HttpStatus.UNSUPPORTED_MEDIA_TYPE.value()) {
+                    if (unsupported.add(uri.getAuthority())) {
+                        log.warn("Server [{}] does not accept {} request bodies, further requests will be sent uncompressed", uri.getAuthority(), GZIP);
+                    }
+                    response.close();
+                    return executeUncompressed();
+                }
+            }
+            return response;
+        }
+
+        private ClientHttpResponse executeUncompressed() throws IOException {
+            ClientHttpRequest retry = delegate.createRequest(getURI(), method);
+            retry.getHeaders().putAll(getHeaders());
+            retry.getHeaders().remove(HttpHeaders.CONTENT_ENCODING);
+            ((StreamingHttpOutputMessage) retry).setBody(body);
+            return retry.execute();
+        }
+
+        @Override
+        public String getMethodValue() {
+            return request.getMethodValue();
+        }
+
+        @Override
+        public URI getURI() {
+            return request.getURI();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return request.getHeaders();
+        }
+    }
+
+    private static boolean isCompressible(MediaType type) {
+        return type != null && ("text".equals(type.getType()) || "json".equals(type.getSubtype()) || type.getSubtype().endsWith("+json"));
+    }
+
+    private static class LeveledGzipOutputStream extends GZIPOutputStream {
+        LeveledGzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out, 8192);
+            def.setLevel(level);
+        }
+
+        void end() {
+            def.end();
+        }
+    }
+}
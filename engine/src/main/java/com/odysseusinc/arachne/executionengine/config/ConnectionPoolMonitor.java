@@ -0,0 +1,89 @@
+package com.odysseusinc.arachne.executionengine.config;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.http.pool.PoolStats;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+@ManagedResource
+public class ConnectionPoolMonitor {
+
+    private final InstrumentedConnectionManager connectionManager;
+
+    public ConnectionPoolMonitor(InstrumentedConnectionManager connectionManager) {
+
+        this.connectionManager = connectionManager;
+    }
+
+    @ManagedAttribute
+    public int getLeased() {
+
+        return connectionManager.getTotalStats().getLeased();
+    }
+
+    @ManagedAttribute
+    public int getPending() {
+
+        return connectionManager.getTotalStats().getPending();
+    }
+
+    @ManagedAttribute
+    public int getAvailable() {
+
+        return connectionManager.getTotalStats().getAvailable();
+    }
+
+    @ManagedAttribute
+    public int getMaxTotal() {
+
+        return connectionManager.getMaxTotal();
+    }
+
+    @ManagedAttribute
+    public int getDefaultMaxPerRoute() {
+
+        return connectionManager.getDefaultMaxPerRoute();
+    }
+
+    /**
+     * Percentage of the pool capacity currently leased. Any pending requests on top of 100 means callers are queued.
+     */
+    @ManagedAttribute
+    public int getSaturation() {
+
+        PoolStats stats = connectionManager.getTotalStats();
+        return stats.getMax() > 0 ? 100 * (stats.getLeased() + stats.getPending()) / stats.getMax() : 0;
+    }
+
+    @ManagedAttribute
+    public long getLeaseCount() {
+
+        return connectionManager.getLeaseCount();
+    }
+
+    @ManagedAttribute
+    public long getLeaseTimeoutCount() {
+
+        return connectionManager.getLeaseTimeoutCount();
+    }
+
+    @ManagedAttribute
+    public double getAverageLeaseWaitMs() {
+
+        long count = connectionManager.getLeaseCount();
+        return count > 0 ? (double) TimeUnit.NANOSECONDS.toMicros(connectionManager.getLeaseWaitNanos()) / count / 1000 : 0;
+    }
+
+    @ManagedAttribute
+    public long getMaxLeaseWaitMs() {
+
+        return TimeUnit.NANOSECONDS.toMillis(connectionManager.getMaxLeaseWaitNanos());
+    }
+
+    @ManagedOperation
+    public void resetMaxLeaseWait() {
+
+        connectionManager.resetMaxLeaseWait();
+    }
+}
@@ -0,0 +1,84 @@
+package com.odysseusinc.arachne.executionengine.config;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.config.Registry;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * Pooling connection manager which keeps track of how long callers wait to lease a connection.
+ */
+public class InstrumentedConnectionManager extends PoolingHttpClientConnectionManager {
+
+    private final AtomicLong leaseCount = new AtomicLong();
+    private final AtomicLong leaseTimeoutCount = new AtomicLong();
+    private final AtomicLong leaseWaitNanos = new AtomicLong();
+    private final AtomicLong maxLeaseWaitNanos = new AtomicLong();
+
+    public InstrumentedConnectionManager(Registry<ConnectionSocketFactory> socketFactoryRegistry) {
+
+        super(socketFactoryRegistry);
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+
+        ConnectionRequest request = super.requestConnection(route, state);
+        return new ConnectionRequest() {
+            @Override
+            public HttpClientConnection get(long timeout, TimeUnit unit)
+                    throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+
+                long start = System.nanoTime();
+                try {
+                    return request.get(timeout, unit);
+                } catch (ConnectionPoolTimeoutException e) {
+                    leaseTimeoutCount.incrementAndGet();
+                    throw e;
+                } finally {
+                    long waited = System.nanoTime() - start;
+                    leaseCount.incrementAndGet();
+                    leaseWaitNanos.addAndGet(waited);
+                    maxLeaseWaitNanos.accumulateAndGet(waited, Math::max);
+                }
+            }
+
+            @Override
+            public boolean cancel() {
+
+                return request.cancel();
+            }
+        };
+    }
+
+    public long getLeaseCount() {
+
+        return leaseCount.get();
+    }
+
+    public long getLeaseTimeoutCount() {
+
+        return leaseTimeoutCount.get();
+    }
+
+    public long getLeaseWaitNanos() {
+
+        return leaseWaitNanos.get();
+    }
+
+    public long getMaxLeaseWaitNanos() {
+
+        return maxLeaseWaitNanos.get();
+    }
+
+    public void resetMaxLeaseWait() {
+
+        maxLeaseWaitNanos.set(0);
+    }
+}
@@ -22,15 +22,24 @@
 
 package com.odysseusinc.arachne.executionengine.config;
 
+import com.odysseusinc.arachne.executionengine.config.properties.HttpClientProperties;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
-import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
@@ -38,23 +47,119 @@ import org.springframework.web.client.RestTemplate;
 
 
 @Configuration
+@EnableConfigurationProperties(HttpClientProperties.class)
 public class IntegrationConfig {
 
+    /**
+     * Used for analysis status updates.
+     */
     @Bean(name = "nodeRestTemplate")
-    public RestTemplate centralRestTemplate(HttpClient httpClient) {
+    public RestTemplate centralRestTemplate(
+            @Qualifier("statusHttpClient") CloseableHttpClient httpClient, HttpClientProperties properties) {
+
+        return buildRestTemplate(httpClient, properties.getStatus());
+    }
+
+    /**
+     * Used for result uploads, has its own connection pool so that status updates do not queue behind uploads.
+     */
+    @Bean(name = "uploadRestTemplate")
+    public RestTemplate uploadRestTemplate(
+            @Qualifier("uploadHttpClient") CloseableHttpClient httpClient, HttpClientProperties properties) {
+
+        return buildRestTemplate(httpClient, properties.getUpload());
+    }
+
+    @Bean
+    public InstrumentedConnectionManager statusConnectionManager(SSLConnectionSocketFactory sslSocketFactory, HttpClientProperties properties) {
+
+        return buildConnectionManager(sslSocketFactory, properties.getStatus());
+    }
+
+    @Bean
+    public InstrumentedConnectionManager uploadConnectionManager(SSLConnectionSocketFactory sslSocketFactory, HttpClientProperties properties) {
+
+        return buildConnectionManager(sslSocketFactory, properties.getUpload());
+    }
+
+    @Bean
+    public CloseableHttpClient statusHttpClient(
+            @Qualifier("statusConnectionManager") InstrumentedConnectionManager connectionManager, HttpClientProperties properties) {
+
+        return buildHttpClient(connectionManager, properties.getStatus());
+    }
+
+    @Bean
+    public CloseableHttpClient uploadHttpClient(
+            @Qualifier("uploadConnectionManager") InstrumentedConnectionManager connectionManager, HttpClientProperties properties) {
+
+        return buildHttpClient(connectionManager, properties.getUpload());
+    }
+
+    @Bean
+    public ConnectionPoolMonitor statusConnectionPoolMonitor(@Qualifier("statusConnectionManager") InstrumentedConnectionManager connectionManager) {
+
+        return new ConnectionPoolMonitor(connectionManager);
+    }
+
+    @Bean
+    public ConnectionPoolMonitor uploadConnectionPoolMonitor(@Qualifier("uploadConnectionManager") InstrumentedConnectionManager connectionManager) {
+
+        return new ConnectionPoolMonitor(connectionManager);
+    }
+
+    private RestTemplate buildRestTemplate(CloseableHttpClient httpClient, HttpClientProperties.PoolProperties pool) {
 
         HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
         // https://jira.spring.io/browse/SPR-7909
         // Not to put posted files into memory, which can cause Heap overflow in case of big files
         requestFactory.setBufferRequestBody(false);
+        if (pool.getCompression() == HttpClientProperties.Compression.GZIP) {
+            return new RestTemplate(new CompressingClientHttpRequestFactory(requestFactory, pool.getCompressionLevel()));
+        }
         return new RestTemplate(requestFactory);
     }
 
+    private InstrumentedConnectionManager buildConnectionManager(
+            SSLConnectionSocketFactory sslSocketFactory, HttpClientProperties.PoolProperties pool) {
+
+        InstrumentedConnectionManager connectionManager = new InstrumentedConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                        .register("https", sslSocketFactory)
+                        .build()
+        );
+        connectionManager.setMaxTotal(pool.getMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(pool.getMaxPerRoute());
+        connectionManager.setValidateAfterInactivity((int) pool.getValidateAfterInactivityMs());
+        return connectionManager;
+    }
+
+    private CloseableHttpClient buildHttpClient(InstrumentedConnectionManager connectionManager, HttpClientProperties.PoolProperties pool) {
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout((int) pool.getConnectTimeoutMs())
+                .setSocketTimeout((int) pool.getSocketTimeoutMs())
+                .setConnectionRequestTimeout((int) pool.getConnectionRequestTimeoutMs())
+                .build();
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> {
+                    long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return keepAlive > 0 ? keepAlive : pool.getKeepAliveMs();
+                })
+                // Starts a background thread closing expired and idle connections, which the server may have dropped already
+                .evictExpiredConnections()
+                .evictIdleConnections(pool.getMaxIdleMs(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
     @Configuration
     @ConditionalOnProperty(value = "server.ssl.strictMode", havingValue = "false")
     public class nonStrictSSLSecurityConfig {
         @Bean
-        public HttpClient getHttpClient() {
+        public SSLConnectionSocketFactory getSslSocketFactory() {
 
             TrustManager[] trustAllCerts = new TrustManager[]{
                     new X509TrustManager() {
@@ -84,7 +189,7 @@ public class IntegrationConfig {
             } catch (NoSuchAlgorithmException | KeyManagementException e) {
                 e.printStackTrace();
             }
-            return HttpClients.custom().setSSLSocketFactory(csf).build();
+            return csf;
         }
     }
 
@@ -93,9 +198,9 @@ public class IntegrationConfig {
     public class strictSSLSecurityConfig {
 
         @Bean
-        public HttpClient getHttpClient() {
+        public SSLConnectionSocketFactory getSslSocketFactory() {
 
-            return HttpClients.createDefault();
+            return SSLConnectionSocketFactory.getSocketFactory();
         }
     }
 }
\ No newline at end of file
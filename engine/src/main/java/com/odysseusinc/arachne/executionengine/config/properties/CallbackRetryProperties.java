@@ -2,6 +2,7 @@ package com.odysseusinc.arachne.executionengine.config.properties;
 
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
+import org.apache.commons.lang3.Validate;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 @ConfigurationProperties(prefix = "callback.retry")
@@ -9,6 +10,15 @@ public class CallbackRetryProperties {
 
     private RetryPolicyProperties success = new RetryPolicyProperties();
     private RetryPolicyProperties failure = new RetryPolicyProperties();
+    // Bounds are checked by setters, as there is no bean validation provider to enforce constraint annotations
+    // Threads used to deliver results and schedule retries, independent of the number of pending deliveries
+    private int schedulerPoolSize = 2;
+    // Once attempts of a delivery kept in outbox are exhausted, it is retried again this often
+    private long resumeIntervalMs = 3_600_000L; //1h
+    // Deliveries kept in outbox are dropped once this old, 0 for no limit
+    private long maxAgeHours = 168L; //7d
+    // Deliveries kept in outbox are dropped once retried this many rounds since the engine started, 0 for no limit
+    private int maxResumeRounds = 0;
 
     public RetryPolicyProperties getSuccess() {
         return success;
@@ -26,6 +36,42 @@ public class CallbackRetryProperties {
         this.failure = failure;
     }
 
+    public int getSchedulerPoolSize() {
+        return schedulerPoolSize;
+    }
+
+    public void setSchedulerPoolSize(int schedulerPoolSize) {
+        Validate.isTrue(schedulerPoolSize >= 1, "scheduler-pool-size must be at least 1, got %d", schedulerPoolSize);
+        this.schedulerPoolSize = schedulerPoolSize;
+    }
+
+    public long getResumeIntervalMs() {
+        return resumeIntervalMs;
+    }
+
+    public void setResumeIntervalMs(long resumeIntervalMs) {
+        Validate.isTrue(resumeIntervalMs >= 1, "resume-interval-ms must be at least 1, got %d", resumeIntervalMs);
+        this.resumeIntervalMs = resumeIntervalMs;
+    }
+
+    public long getMaxAgeHours() {
+        return maxAgeHours;
+    }
+
+    public void setMaxAgeHours(long maxAgeHours) {
+        Validate.isTrue(maxAgeHours >= 0, "max-age-hours must not be negative, got %d", maxAgeHours);
+        this.maxAgeHours = maxAgeHours;
+    }
+
+    public int getMaxResumeRounds() {
+        return maxResumeRounds;
+    }
+
+    public void setMaxResumeRounds(int maxResumeRounds) {
+        Validate.isTrue(maxResumeRounds >= 0, "max-resume-rounds must not be negative, got %d", maxResumeRounds);
+        this.maxResumeRounds = maxResumeRounds;
+    }
+
     public static class RetryPolicyProperties {
         @Min(1)
         @Max(Integer.MAX_VALUE)
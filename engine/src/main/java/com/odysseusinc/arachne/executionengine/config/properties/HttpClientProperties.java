@@ -0,0 +1,145 @@
+package com.odysseusinc.arachne.executionengine.config.properties;
+
+import java.util.zip.Deflater;
+import org.apache.commons.lang3.Validate;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "callback.http")
+public class HttpClientProperties {
+
+    // Small and frequent status updates, must not wait behind uploads
+    private PoolProperties status = new PoolProperties(20, 10, 30_000L, 10_000L);
+    // Result uploads, few but long-running
+    private PoolProperties upload = new PoolProperties(8, 4, 600_000L, 60_000L);
+
+    public PoolProperties getStatus() {
+        return status;
+    }
+
+    public void setStatus(PoolProperties status) {
+        this.status = status;
+    }
+
+    public PoolProperties getUpload() {
+        return upload;
+    }
+
+    public void setUpload(PoolProperties upload) {
+        this.upload = upload;
+    }
+
+    public static class PoolProperties {
+        // Bounds are checked by setters, as there is no bean validation provider to enforce constraint annotations
+        private int maxTotal;
+        private int maxPerRoute;
+        private long connectTimeoutMs = 10_000L;
+        // Max inactivity between two data packets, not the total request duration
+        private long socketTimeoutMs;
+        // Max time to wait for a connection from the pool
+        private long connectionRequestTimeoutMs;
+        // Used when the server does not send Keep-Alive header
+        private long keepAliveMs = 60_000L;
+        private long maxIdleMs = 30_000L;
+        private long validateAfterInactivityMs = 2_000L;
+        // Content-Encoding of request bodies, the central node has to support it
+        private Compression compression = Compression.NONE;
+        private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+        public PoolProperties() {
+        }
+
+        public PoolProperties(int maxTotal, int maxPerRoute, long socketTimeoutMs, long connectionRequestTimeoutMs) {
+            this.maxTotal = maxTotal;
+            this.maxPerRoute = maxPerRoute;
+            this.socketTimeoutMs = socketTimeoutMs;
+            this.connectionRequestTimeoutMs = connectionRequestTimeoutMs;
+        }
+
+        public int getMaxTotal() {
+            return maxTotal;
+        }
+
+        public void setMaxTotal(int maxTotal) {
+            Validate.isTrue(maxTotal >= 1, "max-total must be at least 1, got %d", maxTotal);
+            this.maxTotal = maxTotal;
+        }
+
+        public int getMaxPerRoute() {
+            return maxPerRoute;
+        }
+
+        public void setMaxPerRoute(int maxPerRoute) {
+            Validate.isTrue(maxPerRoute >= 1, "max-per-route must be at least 1, got %d", maxPerRoute);
+            this.maxPerRoute = maxPerRoute;
+        }
+
+        public long getConnectTimeoutMs() {
+            return connectTimeoutMs;
+        }
+
+        public void setConnectTimeoutMs(long connectTimeoutMs) {
+            this.connectTimeoutMs = connectTimeoutMs;
+        }
+
+        public long getSocketTimeoutMs() {
+            return socketTimeoutMs;
+        }
+
+        public void setSocketTimeoutMs(long socketTimeoutMs) {
+            this.socketTimeoutMs = socketTimeoutMs;
+        }
+
+        public long getConnectionRequestTimeoutMs() {
+            return connectionRequestTimeoutMs;
+        }
+
+        public void setConnectionRequestTimeoutMs(long connectionRequestTimeoutMs) {
+            this.connectionRequestTimeoutMs = connectionRequestTimeoutMs;
+        }
+
+        public long getKeepAliveMs() {
+            return keepAliveMs;
+        }
+
+        public void setKeepAliveMs(long keepAliveMs) {
+            this.keepAliveMs = keepAliveMs;
+        }
+
+        public long getMaxIdleMs() {
+            return maxIdleMs;
+        }
+
+        public void setMaxIdleMs(long maxIdleMs) {
+            this.maxIdleMs = maxIdleMs;
+        }
+
+        public long getValidateAfterInactivityMs() {
+            return validateAfterInactivityMs;
+        }
+
+        public void setValidateAfterInactivityMs(long validateAfterInactivityMs) {
+            this.validateAfterInactivityMs = validateAfterInactivityMs;
+        }
+
+        public Compression getCompression() {
+            return compression;
+        }
+
+        public void setCompression(Compression compression) {
+            this.compression = compression;
+        }
+
+        public int getCompressionLevel() {
+            return compressionLevel;
+        }
+
+        public void setCompressionLevel(int compressionLevel) {
+            Validate.inclusiveBetween(Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION, compressionLevel, "compression-level must be -1 to 9, got %d", compressionLevel);
+            this.compressionLevel = compressionLevel;
+        }
+    }
+
+    public enum Compression {
+        NONE, GZIP
+    }
+}
@@ -16,6 +16,48 @@ public class RIsolatedRuntimeProperties {
     private String archiveFolder;
     // Flag for showing difference between dependencies
     private boolean applyRuntimeDependenciesComparisonLogic;
+    // How often archive folder is rescanned for added, changed or removed descriptors and bundles, 0 to scan once
+    private long descriptorRefreshSec = 30;
+    // Path to folder keeping extracted runtime environments, jails are built as an overlay on top of them. Disabled if empty
+    private String cacheDir;
+    // Disk budget for extracted runtime environments, 0 for unlimited
+    private long cacheMaxSizeMb;
+    // Max number of jails prepared in advance per bundle, 0 to disable
+    private int poolSize;
+    // Number of most requested bundles to prepare jails for
+    private int poolBundles = 2;
+    // Period over which bundle requests are counted
+    private long poolDemandWindowMin = 60;
+    // Path to folder with prepared jails, must be on the same file system as analysis dirs
+    private String poolDir;
+    // Path to folder where cleanup moves jails to be deleted in background, must be on the same file system as analysis dirs
+    private String trashDir;
+    // Time to wait for cleanup script to unmount and move away the jail
+    private long cleanupTimeoutSec = 300;
+    // Parent cgroup v2 of executions, each execution gets a child cgroup in it. Empty to disable
+    private String cgroupParent;
+    // Default limits of an execution, 0 for unlimited. Descriptors may override them up to the ceilings
+    private long cgroupMemoryMb;
+    private double cgroupCpus;
+    private long cgroupIoReadBps;
+    private long cgroupIoWriteBps;
+    // Block device of analysis dirs for io limits, as major:minor. io limits are not applied if empty
+    private String cgroupIoDevice;
+    // Ceilings for limits requested by descriptors, 0 for no ceiling
+    private long cgroupMaxMemoryMb;
+    private double cgroupMaxCpus;
+    private long cgroupMaxIoBps;
+    // Path to folder keeping R packages required by analyses renv.lock, mounted read-only into jails. Disabled if empty.
+    // Packages are installed there by the engine, never taken from a jail
+    private String renvCacheDir;
+    // Disk budget for cached R packages, 0 for unlimited
+    private long renvCacheMaxSizeMb;
+    // Script installing a package for the cache in a clean root, the bundled renv-install.sh is used if it does not exist
+    private String renvInstallSh;
+    // Repository packages for the cache are installed from
+    private String renvCacheRepo = "https://cloud.r-project.org";
+    // Time to wait for a package to be installed for the cache
+    private long renvInstallTimeoutSec = 1800;
 
     public String[] getRunCmd() {
         return runCmd;
@@ -64,4 +106,188 @@ public class RIsolatedRuntimeProperties {
     public void setApplyRuntimeDependenciesComparisonLogic(boolean applyRuntimeDependenciesComparisonLogic) {
         this.applyRuntimeDependenciesComparisonLogic = applyRuntimeDependenciesComparisonLogic;
     }
+
+    public long getDescriptorRefreshSec() {
+        return descriptorRefreshSec;
+    }
+
+    public void setDescriptorRefreshSec(long descriptorRefreshSec) {
+        this.descriptorRefreshSec = descriptorRefreshSec;
+    }
+
+    public String getCacheDir() {
+        return cacheDir;
+    }
+
+    public void setCacheDir(String cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    public long getCacheMaxSizeMb() {
+        return cacheMaxSizeMb;
+    }
+
+    public void setCacheMaxSizeMb(long cacheMaxSizeMb) {
+        this.cacheMaxSizeMb = cacheMaxSizeMb;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public int getPoolBundles() {
+        return poolBundles;
+    }
+
+    public void setPoolBundles(int poolBundles) {
+        this.poolBundles = poolBundles;
+    }
+
+    public long getPoolDemandWindowMin() {
+        return poolDemandWindowMin;
+    }
+
+    public void setPoolDemandWindowMin(long poolDemandWindowMin) {
+        this.poolDemandWindowMin = poolDemandWindowMin;
+    }
+
+    public String getPoolDir() {
+        return poolDir;
+    }
+
+    public void setPoolDir(String poolDir) {
+        this.poolDir = poolDir;
+    }
+
+    public String getTrashDir() {
+        return trashDir;
+    }
+
+    public void setTrashDir(String trashDir) {
+        this.trashDir = trashDir;
+    }
+
+    public long getCleanupTimeoutSec() {
+        return cleanupTimeoutSec;
+    }
+
+    public void setCleanupTimeoutSec(long cleanupTimeoutSec) {
+        this.cleanupTimeoutSec = cleanupTimeoutSec;
+    }
+
+    public String getCgroupParent() {
+        return cgroupParent;
+    }
+
+    public void setCgroupParent(String cgroupParent) {
+        this.cgroupParent = cgroupParent;
+    }
+
+    public long getCgroupMemoryMb() {
+        return cgroupMemoryMb;
+    }
+
+    public void setCgroupMemoryMb(long cgroupMemoryMb) {
+        this.cgroupMemoryMb = cgroupMemoryMb;
+    }
+
+    public double getCgroupCpus() {
+        return cgroupCpus;
+    }
+
+    public void setCgroupCpus(double cgroupCpus) {
+        this.cgroupCpus = cgroupCpus;
+    }
+
+    public long getCgroupIoReadBps() {
+        return cgroupIoReadBps;
+    }
+
+    public void setCgroupIoReadBps(long cgroupIoReadBps) {
+        this.cgroupIoReadBps = cgroupIoReadBps;
+    }
+
+    public long getCgroupIoWriteBps() {
+        return cgroupIoWriteBps;
+    }
+
+    public void setCgroupIoWriteBps(long cgroupIoWriteBps) {
+        this.cgroupIoWriteBps = cgroupIoWriteBps;
+    }
+
+    public String getCgroupIoDevice() {
+        return cgroupIoDevice;
+    }
+
+    public void setCgroupIoDevice(String cgroupIoDevice) {
+        this.cgroupIoDevice = cgroupIoDevice;
+    }
+
+    public long getCgroupMaxMemoryMb() {
+        return cgroupMaxMemoryMb;
+    }
+
+    public void setCgroupMaxMemoryMb(long cgroupMaxMemoryMb) {
+        this.cgroupMaxMemoryMb = cgroupMaxMemoryMb;
+    }
+
+    public double getCgroupMaxCpus() {
+        return cgroupMaxCpus;
+    }
+
+    public void setCgroupMaxCpus(double cgroupMaxCpus) {
+        this.cgroupMaxCpus = cgroupMaxCpus;
+    }
+
+    public long getCgroupMaxIoBps() {
+        return cgroupMaxIoBps;
+    }
+
+    public void setCgroupMaxIoBps(long cgroupMaxIoBps) {
+        this.cgroupMaxIoBps = cgroupMaxIoBps;
+    }
+
+    public String getRenvCacheDir() {
+        return renvCacheDir;
+    }
+
+    public void setRenvCacheDir(String renvCacheDir) {
+        this.renvCacheDir = renvCacheDir;
+    }
+
+    public long getRenvCacheMaxSizeMb() {
+        return renvCacheMaxSizeMb;
+    }
+
+    public void setRenvCacheMaxSizeMb(long renvCacheMaxSizeMb) {
+        this.renvCacheMaxSizeMb = renvCacheMaxSizeMb;
+    }
+
+    public String getRenvInstallSh() {
+        return renvInstallSh;
+    }
+
+    public void setRenvInstallSh(String renvInstallSh) {
+        this.renvInstallSh = renvInstallSh;
+    }
+
+    public String getRenvCacheRepo() {
+        return renvCacheRepo;
+    }
+
+    public void setRenvCacheRepo(String renvCacheRepo) {
+        this.renvCacheRepo = renvCacheRepo;
+    }
+
+    public long getRenvInstallTimeoutSec() {
+        return renvInstallTimeoutSec;
+    }
+
+    public void setRenvInstallTimeoutSec(long renvInstallTimeoutSec) {
+        this.renvInstallTimeoutSec = renvInstallTimeoutSec;
+    }
 }
@@ -1,14 +1,16 @@
 package com.odysseusinc.arachne.executionengine.execution;
 
 import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.ExecutionOutcome;
+import java.io.File;
 import java.time.Instant;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
 import lombok.Getter;
 
 public abstract class AbstractOverseer implements Overseer {
     protected final long id;
-    protected final StringBuffer stdout = new StringBuffer();
+    protected final LogStore stdout;
     protected final BiConsumer<String, String> callback;
     /**
      * A pure execution result
@@ -25,8 +27,11 @@ public abstract class AbstractOverseer implements Overseer {
     @Getter
     protected volatile CompletableFuture<ExecutionOutcome> result;
 
-    public AbstractOverseer(long id, BiConsumer<String, String> callback, Instant started, String environment, int killTimeout, CompletableFuture<ExecutionOutcome> outcome) {
+    public AbstractOverseer(
+            long id, LogStore stdout, BiConsumer<String, String> callback, Instant started, String environment, int killTimeout, CompletableFuture<ExecutionOutcome> outcome
+    ) {
         this.id = id;
+        this.stdout = stdout;
         this.callback = callback;
         this.started = started;
         this.environment = environment;
@@ -36,7 +41,17 @@ public abstract class AbstractOverseer implements Overseer {
 
     @Override
     public String getStdout() {
-        return stdout.toString();
+        return stdout.getTail();
+    }
+
+    @Override
+    public String getStdout(long offset, int length) {
+        return stdout.read(offset, length);
+    }
+
+    @Override
+    public Optional<File> detachStdout() {
+        return Optional.empty();
     }
 
     @Override
@@ -25,6 +25,7 @@ package com.odysseusinc.arachne.executionengine.execution;
 import static com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisRequestTypeDTO.NOT_RECOGNIZED;
 import static org.apache.commons.lang3.exception.ExceptionUtils.getStackTrace;
 
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.io.Files;
 import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisRequestDTO;
@@ -42,6 +43,7 @@ import java.util.Date;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -51,12 +53,15 @@ import java.util.function.Consumer;
 import java.util.function.Function;
 import lombok.extern.slf4j.Slf4j;
 import net.lingala.zip4j.exception.ZipException;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.FileSystemResource;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
@@ -67,9 +72,15 @@ import java.util.stream.Stream;
 
 @Slf4j
 @Service
+@ManagedResource
 public class AnalysisService {
     private final Map<String, ExecutionService> executionServices;
-    private final ConcurrentMap<Long, Overseer> overseers;
+    private final ConcurrentMap<Long, Overseer> overseers = new ConcurrentHashMap<>();
+    /**
+     * Completed executions, so that status information is still available for some time after completion
+     */
+    private final Cache<Long, ExecutionSummary> completed;
+    private final int summaryStdoutChars;
 
     @Autowired
     @Qualifier("analysisTaskExecutor")
@@ -79,6 +90,8 @@ public class AnalysisService {
     @Autowired
     private CallbackService callbackService;
     @Autowired
+    private PartialResultShipper partialResultShipper;
+    @Autowired
     private DriverLocations drivers;
 
     @Value("${submission.update.interval}")
@@ -87,16 +100,19 @@ public class AnalysisService {
     @Autowired
     public AnalysisService(
             List<ExecutionService> executionServices,
-            @Value("${runtime.timeOutSec:259200}") long runtimeTimeout
+            @Value("${runtime.timeOutSec:259200}") long runtimeTimeout,
+            @Value("${runtime.completed.maxCount:10000}") long completedMaxCount,
+            @Value("${runtime.completed.stdoutChars:4096}") int summaryStdoutChars
     ) {
         this.executionServices = executionServices.stream().collect(
                 Collectors.toMap(ExecutionService::getExtension, Function.identity())
         );
-        // Double the runtime timeout to ensure entries stay in map for some time after timeout completion,
-        // so that status information is still available
-        overseers = CacheBuilder.newBuilder().expireAfterWrite(
-                2 * runtimeTimeout, TimeUnit.SECONDS
-        ).<Long, Overseer>build().asMap();
+        // Double the runtime timeout to ensure entries stay for some time after timeout completion
+        completed = CacheBuilder.newBuilder()
+                .expireAfterWrite(2 * runtimeTimeout, TimeUnit.SECONDS)
+                .maximumSize(completedMaxCount)
+                .build();
+        this.summaryStdoutChars = summaryStdoutChars;
     }
 
     public Optional<Overseer> analyze(
@@ -116,18 +132,38 @@ public class AnalysisService {
                     attachMetadata(analysis, analysisDir);
                 }
             });
-            overseers.put(analysis.getId(), overseer);
-            return overseer;
+            Long id = analysis.getId();
+            overseers.put(id, overseer);
+            // Registered after put, so that an execution completing right away is not left in the map
+            return overseer.whenComplete((outcome, throwable) -> {
+                completed.put(id, ExecutionSummary.of(id, overseer, outcome, throwable, summaryStdoutChars));
+                overseers.remove(id, overseer);
+            });
         });
     }
 
     public Optional<AnalysisResultDTO> abort(Long id) {
-        return Optional.ofNullable(overseers.get(id)).map(overseer -> {
+        Overseer overseer = overseers.get(id);
+        if (overseer != null) {
             ExecutionOutcome outcome = abort(id, overseer);
-            return buildResult(id, Date.from(overseer.getStarted()), fromOutcome(outcome));
+            return Optional.of(buildResult(id, Date.from(overseer.getStarted()), fromOutcome(outcome)));
+        }
+        return Optional.ofNullable(completed.getIfPresent(id)).map(summary -> {
+            log.info("Execution [{}] received abort, but it is completed already", id);
+            return buildResult(id, Date.from(summary.getStarted()), fromOutcome(summary.toOutcome()));
         });
     }
 
+    @ManagedAttribute
+    public int getRunningCount() {
+        return overseers.size();
+    }
+
+    @ManagedAttribute
+    public long getCompletedCount() {
+        return completed.size();
+    }
+
     private ExecutionOutcome abort(Long id, Overseer overseer) {
         CompletableFuture<ExecutionOutcome> future = overseer.abort();
         try {
@@ -162,16 +198,29 @@ public class AnalysisService {
         BiConsumer<String, String> callback = (stage, log) -> callbackService.updateAnalysisStatus(analysis, stage, log);
         try {
             return analyze(analysis, analysisDir, attachCdmMetadata, callback, submissionUpdateInterval).map(overseer -> {
+                PartialResultShipper.Watch partialResults = partialResultShipper.watch(analysis, analysisDir, chunkSize);
                 overseer.whenComplete((outcome, throwable) -> {
                     log.info("Execution [{}] completed, sending results...", analysis.getId());
+                    partialResults.stop();
                     AnalysisResultDTO result = buildResult(analysis, outcome, throwable);
                     String url = analysis.getResultCallback();
-                    try (AutoCloseWrapper<List<FileSystemResource>> results = callbackService.packResults(analysis, analysisDir, compressedResult, chunkSize)) {
-                        callbackService.sendResults(result, results.getValue(), url, password);
+                    AutoCloseWrapper<List<FileSystemResource>> results;
+                    try {
+                        results = callbackService.packResults(analysis, analysisDir, compressedResult, chunkSize, partialResults::isRemaining);
+                        if (analysis.isPullResults()) {
+                            results = callbackService.retainResults(analysis, results);
+                        }
                     } catch (ZipException | RuntimeException exception) {
                         result.setError(outcome.addError("Error processing result files: " + exception.getMessage()).getError());
-                        callbackService.sendResults(result, null, url, password);
+                        results = null;
+                    }
+                    Optional<File> stdout = overseer.detachStdout();
+                    if (throwable != null) {
+                        // The result carries the stack trace instead of the log
+                        stdout.ifPresent(FileUtils::deleteQuietly);
+                        stdout = Optional.empty();
                     }
+                    callbackService.sendResults(result, results, stdout, url, password);
                 });
                 return new AnalysisRequestStatusDTO(analysis.getId(), overseer.getType(), overseer.getEnvironment());
             }).orElseGet(() -> {
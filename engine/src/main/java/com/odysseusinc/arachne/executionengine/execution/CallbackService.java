@@ -26,17 +26,42 @@ import com.google.common.io.Files;
 import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisExecutionStatusDTO;
 import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisRequestDTO;
 import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisResultDTO;
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.ResultManifestDTO;
 import com.odysseusinc.arachne.execution_engine_common.util.CommonFileUtils;
+import com.odysseusinc.arachne.execution_engine_common.util.CompressionPolicy;
+import com.odysseusinc.arachne.execution_engine_common.util.NestedZipFilter;
 import com.odysseusinc.arachne.executionengine.aspect.FileDescriptorCount;
+import com.odysseusinc.arachne.executionengine.execution.callback.PendingDelivery;
+import com.odysseusinc.arachne.executionengine.execution.callback.ResultDeliveryService;
+import com.odysseusinc.arachne.executionengine.execution.callback.ResultRetention;
 import com.odysseusinc.arachne.executionengine.util.AnalisysUtils;
 import com.odysseusinc.arachne.executionengine.util.AutoCloseWrapper;
 import java.io.File;
-import java.util.Collection;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import net.lingala.zip4j.exception.ZipException;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -44,14 +69,10 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
-import org.springframework.retry.support.RetryTemplate;
 import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
@@ -60,12 +81,40 @@ public class CallbackService {
     private static final Logger log = LoggerFactory.getLogger(CallbackService.class);
     @Value("${submission.cleanupResults}")
     private boolean cleanupResults;
+    @Value("${submission.compression.level:6}")
+    private int compressionLevel;
+    @Value("${submission.compression.threads:0}")
+    private int compressionThreads;
+    @Value("${submission.compression.adaptive:true}")
+    private boolean adaptiveCompression;
+    @Value("${submission.compression.timeBudgetSec:300}")
+    private long compressionTimeBudgetSec;
+    @Value("${submission.stdoutTail:65536}")
+    private int stdoutTail;
     @Autowired
     @Qualifier("nodeRestTemplate")
     private RestTemplate nodeRestTemplate;
     @Autowired
-    @Qualifier("successCallbackRetryTemplate")
-    private RetryTemplate successfulRetryTemplate;
+    private ResultDeliveryService deliveryService;
+    @Autowired
+    private ResultManifestService manifestService;
+    @Autowired
+    private ResultRetention retention;
+    /**
+     * Compresses result files of all analyses, so that concurrent analyses do not multiply compression threads
+     */
+    private ExecutorService compressor;
+
+    @PostConstruct
+    public void init() {
+        int threads = compressionThreads > 0 ? compressionThreads : Runtime.getRuntime().availableProcessors();
+        compressor = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("result-zip-"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        compressor.shutdownNow();
+    }
 
     @Async
     @FileDescriptorCount
@@ -84,17 +133,60 @@ public class CallbackService {
 
     public AutoCloseWrapper<List<FileSystemResource>> packResults(
             AnalysisRequestDTO analysis, File resultDir, Boolean compressedResult, Long chunkSize
+    ) throws ZipException {
+        return packResults(analysis, resultDir, compressedResult, chunkSize, file -> true);
+    }
+
+    /**
+     * @param include filters result files, e.g. to skip files already sent as partial results.
+     */
+    public AutoCloseWrapper<List<FileSystemResource>> packResults(
+            AnalysisRequestDTO analysis, File resultDir, Boolean compressedResult, Long chunkSize, Predicate<File> include
     ) throws ZipException {
         Long id = analysis.getId();
         File zipDir = Files.createTempDir();
-        Runnable cleanup = cleanupResults ? () -> Stream.of(resultDir, zipDir).forEach(FileUtils::deleteQuietly) : () -> {};
+        File manifestDir = Files.createTempDir();
+        Runnable cleanup = cleanupResults
+                ? () -> Stream.of(resultDir, zipDir, manifestDir).forEach(FileUtils::deleteQuietly)
+                : () -> FileUtils.deleteQuietly(manifestDir);
         try {
             int resultFilesCnt = AnalisysUtils.getDirectoryItems(resultDir).size();
             log.info("Execution [{}] produced {} result files", id, resultFilesCnt);
 
-            List<File> files = compressedResult
-                    ? getCompressedResults(analysis, resultDir, chunkSize, id, zipDir)
-                    : AnalisysUtils.getDirectoryItemsExclude(resultDir, AnalisysUtils.EXCLUDE_JARS_MATCHER);
+            Set<File> skipped = new HashSet<>();
+            File manifestFile = null;
+            if (StringUtils.isNotBlank(analysis.getResultManifestCallback())) {
+                try {
+                    List<File> candidates = (compressedResult
+                            ? CommonFileUtils.listFiles(resultDir, analysis.getResultExclusions())
+                            : AnalisysUtils.getDirectoryItemsExclude(resultDir, AnalisysUtils.EXCLUDE_JARS_MATCHER)
+                    ).stream().filter(include).collect(Collectors.toList());
+                    // Nested archives are shipped with result exclusions applied when results are compressed
+                    NestedZipFilter nestedZipFilter = compressedResult
+                            ? new NestedZipFilter(Arrays.asList(StringUtils.split(StringUtils.defaultString(analysis.getResultExclusions()), ",")))
+                            : NestedZipFilter.none();
+                    Optional<ResultManifestDTO> manifest = manifestService.negotiate(analysis, resultDir, candidates, nestedZipFilter);
+                    if (manifest.isPresent()) {
+                        manifestFile = manifestService.write(manifest.get(), manifestDir);
+                        List<ResultManifestDTO.ResultFileDTO> entries = manifest.get().getFiles();
+                        for (int i = 0; i < entries.size(); i++) {
+                            if (!entries.get(i).isUploaded()) {
+                                skipped.add(candidates.get(i));
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    log.warn("Execution [{}] failed to prepare result manifest, uploading all files: {}", id, e.getMessage());
+                }
+            }
+            Predicate<File> upload = include.and(file -> !skipped.contains(file));
+            List<File> files = new ArrayList<>(compressedResult
+                    ? getCompressedResults(analysis, resultDir, chunkSize, id + "_result.zip", zipDir, upload)
+                    : AnalisysUtils.getDirectoryItemsExclude(resultDir, AnalisysUtils.EXCLUDE_JARS_MATCHER).stream().filter(upload).collect(Collectors.toList())
+            );
+            if (manifestFile != null) {
+                files.add(manifestFile);
+            }
             return AutoCloseWrapper.of(CommonFileUtils.getFSResources(files), cleanup);
         } catch (RuntimeException | ZipException e) {
             cleanup.run();
@@ -102,11 +194,62 @@ public class CallbackService {
         }
     }
 
-    private List<File> getCompressedResults(AnalysisRequestDTO analysis, File resultDir, Long chunkSize, Long id, File zipDir) throws ZipException {
-        final File archive = new File(zipDir, id + "_result.zip");
+    /**
+     * Packs the given result files into a separate archive. Unlike {@link #packResults}, never removes the result dir,
+     * as the analysis is still running.
+     */
+    public AutoCloseWrapper<List<FileSystemResource>> packPartialResults(
+            AnalysisRequestDTO analysis, File resultDir, Set<File> files, int part, Long chunkSize
+    ) throws ZipException {
+        File zipDir = Files.createTempDir();
+        try {
+            List<File> archives = getCompressedResults(analysis, resultDir, chunkSize, analysis.getId() + "_result_part" + part + ".zip", zipDir, files::contains);
+            return AutoCloseWrapper.of(CommonFileUtils.getFSResources(archives), () -> FileUtils.deleteQuietly(zipDir));
+        } catch (RuntimeException | ZipException e) {
+            FileUtils.deleteQuietly(zipDir);
+            throw e;
+        }
+    }
+
+    /**
+     * Keeps the packed files to be pulled by the receiver, and replaces them with a manifest listing the files.
+     * If the files cannot be kept, they are left to be uploaded as usual.
+     */
+    public AutoCloseWrapper<List<FileSystemResource>> retainResults(
+            AnalysisRequestDTO analysis, AutoCloseWrapper<List<FileSystemResource>> files
+    ) {
+        Long id = analysis.getId();
+        ResultManifestDTO manifest;
+        try {
+            manifest = retention.retain(id, analysis.getCallbackPassword(), files.getValue());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Execution [{}] failed to retain results for pulling, uploading them instead: {}", id, e.getMessage());
+            return files;
+        }
+        // Packed files have been moved out, so the temporary directories are no longer needed
+        files.close();
+        File manifestDir = Files.createTempDir();
+        try {
+            File manifestFile = manifestService.write(manifest, manifestDir, ResultManifestDTO.PULL_FILE_NAME);
+            return AutoCloseWrapper.of(CommonFileUtils.getFSResources(Collections.singletonList(manifestFile)), () -> FileUtils.deleteQuietly(manifestDir));
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(manifestDir);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<File> getCompressedResults(
+            AnalysisRequestDTO analysis, File resultDir, Long chunkSize, String name, File zipDir, Predicate<File> include
+    ) throws ZipException {
+        final File archive = new File(zipDir, name);
         log.info("Adding folder [{}] to zip [{}] with chunk size = {}", resultDir.getAbsolutePath(), archive.getAbsolutePath(), chunkSize);
         try {
-            final File dir = CommonFileUtils.compressAndSplit(resultDir, archive, chunkSize, analysis.getResultExclusions());
+            CompressionPolicy policy = adaptiveCompression
+                    ? CompressionPolicy.adaptive(compressionLevel, TimeUnit.SECONDS.toMillis(compressionTimeBudgetSec))
+                    : CompressionPolicy.fixed(compressionLevel);
+            final File dir = CommonFileUtils.compressAndSplit(
+                    resultDir, archive, chunkSize, analysis.getResultExclusions(), policy, compressor, compressionThreads, include
+            );
             return AnalisysUtils.getDirectoryItemsExclude(dir, AnalisysUtils.EXCLUDE_JARS_MATCHER);
         } catch (ZipException ex) {
             log.error(ex.getMessage());
@@ -117,40 +260,105 @@ public class CallbackService {
         }
     }
 
-    public void sendResults(AnalysisResultDTO result, Collection<FileSystemResource> files, String url, String password) {
+    /**
+     * Hands the result over to the delivery service and returns immediately.
+     * The packed files are disposed by the delivery service once they are no longer needed.
+     */
+    public void sendResults(AnalysisResultDTO result, AutoCloseWrapper<List<FileSystemResource>> files, String url, String password) {
+        sendResults(result, files, Optional.empty(), url, password);
+    }
+
+    /**
+     * @param stdoutFile full process log, of which the result has the tail only. Sent as a separate part if it is
+     * longer than the tail kept in the result, and removed once no longer needed.
+     */
+    public void sendResults(
+            AnalysisResultDTO result, AutoCloseWrapper<List<FileSystemResource>> files, Optional<File> stdoutFile, String url, String password
+    ) {
+        AutoCloseWrapper<FileSystemResource> stdout = stdoutFile.isPresent() ? attachStdout(result, stdoutFile.get()) : detachStdout(result);
+        deliveryService.submit(new PendingDelivery(String.valueOf(result.getId()), result, files, stdout, url, password));
+    }
+
+    /**
+     * Sends the log file as is, so that the full log is never read into memory. Logs which fit into the result
+     * are sent in the result instead.
+     */
+    private AutoCloseWrapper<FileSystemResource> attachStdout(AnalysisResultDTO result, File logFile) {
         Long id = result.getId();
-        successfulRetryTemplate.execute(
-                ctx -> {
-                    Throwable t = ctx.getLastThrowable();
-                    if (t == null) {
-                        log.warn("Execution [{}], send result: {} - {}", id, result.getStage(), result.getError());
-                    } else {
-                        log.info("Execution [{}], retry send result after error: {}", id, t.getMessage());
-                    }
-                    ResponseEntity<String> sent = executeSend(result, files, url, password);
-                    log.info("Execution [{}] result status sent, response HTTP {}", id, sent.getStatusCode());
-                    return sent;
-                },
-                ctx -> {
-                    log.error("Execution [{}] failed to send results: {}", id, ctx.getLastThrowable().getMessage());
-                    return null;
-                }
+        // A file of no more bytes than the tail can not have more chars
+        if (logFile.length() <= stdoutTail) {
+            try {
+                result.setStdout(FileUtils.readFileToString(logFile, StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                log.warn("Execution [{}] failed to read stdout from [{}], sending the captured part: {}", id, logFile, e.getMessage());
+            } finally {
+                FileUtils.deleteQuietly(logFile);
+            }
+            return null;
+        }
+        File dir = Files.createTempDir();
+        File file = new File(dir, id + "_stdout.txt");
+        try {
+            FileUtils.moveFile(logFile, file);
+        } catch (IOException e) {
+            log.warn("Execution [{}] failed to move stdout from [{}], sending the captured part: {}", id, logFile, e.getMessage());
+            FileUtils.deleteQuietly(dir);
+            FileUtils.deleteQuietly(logFile);
+            return detachStdout(result);
+        }
+        String stdout = StringUtils.defaultString(result.getStdout());
+        result.setStdout(stdout.substring(tailStart(stdout)));
+        result.setStdoutTruncated(true);
+        log.info("Execution [{}] stdout of {} bytes will be sent as a file, keeping last {} chars in the result",
+                id, file.length(), result.getStdout().length()
         );
+        return AutoCloseWrapper.of(new FileSystemResource(file), () -> FileUtils.deleteQuietly(dir));
     }
 
-    private ResponseEntity<String> executeSend(AnalysisResultDTO analysisResult, Collection<FileSystemResource> files, String url, String password) {
-        HttpHeaders jsonHeader = new HttpHeaders();
-        jsonHeader.setContentType(MediaType.APPLICATION_JSON);
-        HttpEntity<AnalysisResultDTO> analysisRequestHttpEntity = new HttpEntity<>(analysisResult, jsonHeader);
-        LinkedMultiValueMap<String, Object> multipartRequest = new LinkedMultiValueMap<>();
-        multipartRequest.add("analysisResult", analysisRequestHttpEntity);
-        if (files != null) {
-            files.forEach(f -> multipartRequest.add("file", f));
+    /**
+     * Moves a long process log out of the result DTO into a file, leaving only its tail in the DTO,
+     * so that the log is streamed from disk rather than kept and serialized on each delivery attempt.
+     */
+    private AutoCloseWrapper<FileSystemResource> detachStdout(AnalysisResultDTO result) {
+        String stdout = result.getStdout();
+        if (stdout == null || stdout.length() <= stdoutTail) {
+            return null;
+        }
+        File dir = Files.createTempDir();
+        File file = new File(dir, result.getId() + "_stdout.txt");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(stdout);
+        } catch (IOException e) {
+            log.warn("Execution [{}] failed to write stdout to file, sending it in the result: {}", result.getId(), e.getMessage());
+            FileUtils.deleteQuietly(dir);
+            return null;
         }
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
-        HttpEntity<LinkedMultiValueMap<String, Object>> entity = new HttpEntity<>(multipartRequest, headers);
-        Long submissionId = analysisResult.getId();
-        return nodeRestTemplate.exchange(url, HttpMethod.POST, entity, String.class, submissionId, password);
+        int from = tailStart(stdout);
+        result.setStdout(stdout.substring(from));
+        result.setStdoutTruncated(true);
+        log.info("Execution [{}] stdout of {} chars will be sent as a file, keeping last {} chars in the result", result.getId(), stdout.length(), stdout.length() - from);
+        return AutoCloseWrapper.of(new FileSystemResource(file), () -> FileUtils.deleteQuietly(dir));
+    }
+
+    /**
+     * @return where the part of the log kept in the result starts
+     */
+    private int tailStart(String stdout) {
+        int from = Math.max(stdout.length() - stdoutTail, 0);
+        // Start the tail from a whole line, unless lines are too long
+        int lineStart = stdout.indexOf('\n', from) + 1;
+        if (lineStart > 0 && lineStart < stdout.length()) {
+            from = lineStart;
+        }
+        return from;
+    }
+
+    /**
+     * Same as {@link #sendResults}, for a part of results sent while the analysis is still running.
+     */
+    public void sendPartialResults(
+            AnalysisResultDTO result, int part, AutoCloseWrapper<List<FileSystemResource>> files, String url, String password
+    ) {
+        deliveryService.submit(new PendingDelivery(result.getId() + "." + part, result, files, url, password));
     }
 }
@@ -0,0 +1,56 @@
+package com.odysseusinc.arachne.executionengine.execution;
+
+import static org.apache.commons.lang3.exception.ExceptionUtils.getStackTrace;
+
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisRequestTypeDTO;
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.ExecutionOutcome;
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.Stage;
+import java.time.Instant;
+import lombok.Getter;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * What is retained of a completed execution once its overseer, with the log, futures and finalizers, is released.
+ */
+@Getter
+public class ExecutionSummary {
+    private final long id;
+    private final AnalysisRequestTypeDTO type;
+    private final String environment;
+    private final Instant started;
+    private final Instant finished;
+    private final String stage;
+    private final String error;
+    /**
+     * Last part of the log. The summary keeps this instead of a pointer to the log file, as the file goes away with
+     * the analysis dir once results are sent, while the summary is kept for much longer
+     */
+    private final String stdout;
+
+    private ExecutionSummary(
+            long id, AnalysisRequestTypeDTO type, String environment, Instant started, Instant finished, String stage, String error, String stdout
+    ) {
+        this.id = id;
+        this.type = type;
+        this.environment = environment;
+        this.started = started;
+        this.finished = finished;
+        this.stage = stage;
+        this.error = error;
+        this.stdout = stdout;
+    }
+
+    public static ExecutionSummary of(long id, Overseer overseer, ExecutionOutcome outcome, Throwable throwable, int stdoutChars) {
+        String stage = throwable != null ? Stage.INITIALIZE : outcome.getStage();
+        String error = throwable != null ? throwable.getMessage() : outcome.getError();
+        String stdout = throwable != null ? getStackTrace(throwable) : outcome.getStdout();
+        return new ExecutionSummary(
+                id, overseer.getType(), overseer.getEnvironment(), overseer.getStarted(), Instant.now(), stage, error,
+                StringUtils.right(stdout, stdoutChars)
+        );
+    }
+
+    public ExecutionOutcome toOutcome() {
+        return new ExecutionOutcome(stage, error, stdout);
+    }
+}
@@ -0,0 +1,223 @@
+package com.odysseusinc.arachne.executionengine.execution;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Process log which keeps only its tail in memory. Older text is spilled to a segment file in independently
+ * compressed chunks, so that any range of the log can be read back by offset without inflating the whole file.
+ * Offsets and lengths are in chars.
+ */
+@Slf4j
+public class LogStore implements AutoCloseable {
+    private static final int CHUNK_CHARS = 64 * 1024;
+
+    private final File file;
+    private final int memoryChars;
+    private final int chunkChars;
+    private final StringBuilder tail = new StringBuilder();
+    private final List<Chunk> chunks = new ArrayList<>();
+    /**
+     * Offset of the in-memory tail, which is the number of chars spilled to disk
+     */
+    private long tailOffset;
+    private FileChannel channel;
+    private boolean spillFailed;
+
+    /**
+     * @param file        Segment file, created once the log outgrows the memory limit
+     * @param memoryChars Number of last chars to keep in memory
+     */
+    public LogStore(File file, int memoryChars) {
+        this(file, memoryChars, CHUNK_CHARS);
+    }
+
+    LogStore(File file, int memoryChars, int chunkChars) {
+        this.file = file;
+        this.memoryChars = memoryChars;
+        this.chunkChars = chunkChars;
+    }
+
+    public synchronized void append(CharSequence text) {
+        tail.append(text);
+        while (!spillFailed && tail.length() - chunkChars >= memoryChars) {
+            spill();
+        }
+    }
+
+    public synchronized long length() {
+        return tailOffset + tail.length();
+    }
+
+    /**
+     * Provides the part of the log which is kept in memory.
+     */
+    public synchronized String getTail() {
+        return tail.toString();
+    }
+
+    /**
+     * Reads a range of the log. The range is cut to the current length of the log.
+     */
+    public synchronized String read(long offset, int length) {
+        long from = Math.max(offset, 0);
+        long to = Math.min(from + Math.max(length, 0), length());
+        StringBuilder sb = new StringBuilder((int) Math.max(to - from, 0));
+        for (int i = findChunk(from); i < chunks.size() && from < to; i++) {
+            Chunk chunk = chunks.get(i);
+            String text = inflate(chunk);
+            int start = (int) (from - chunk.offset);
+            int end = (int) Math.min(to - chunk.offset, text.length());
+            sb.append(text, start, end);
+            from = chunk.offset + end;
+        }
+        // Spilled part is gone once the store is closed
+        from = Math.max(from, tailOffset);
+        if (from < to) {
+            sb.append(tail, (int) (from - tailOffset), (int) (to - tailOffset));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return read(0, (int) Math.min(length(), Integer.MAX_VALUE));
+    }
+
+    /**
+     * Removes the segment file. Only the in-memory tail remains readable.
+     */
+    @Override
+    public synchronized void close() {
+        closeChannel();
+        FileUtils.deleteQuietly(file);
+        chunks.clear();
+    }
+
+    private void spill() {
+        int count = chunkChars;
+        // Keep surrogate pairs in one chunk
+        if (Character.isHighSurrogate(tail.charAt(count - 1))) {
+            count--;
+        }
+        byte[] data = deflate(tail.substring(0, count));
+        try {
+            if (channel == null) {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING);
+            }
+            long position = channel.size();
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, position + buffer.position());
+            }
+            chunks.add(new Chunk(tailOffset, count, position, data.length));
+        } catch (IOException e) {
+            log.warn("Failed to spill log to [{}], keeping it in memory: {}", file, e.getMessage());
+            spillFailed = true;
+            return;
+        }
+        tail.delete(0, count);
+        tailOffset += count;
+    }
+
+    private int findChunk(long offset) {
+        int low = 0;
+        int high = chunks.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Chunk chunk = chunks.get(mid);
+            if (offset < chunk.offset) {
+                high = mid - 1;
+            } else if (offset >= chunk.offset + chunk.chars) {
+                low = mid + 1;
+            } else {
+                return mid;
+            }
+        }
+        return low;
+    }
+
+    private String inflate(Chunk chunk) {
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(chunk.size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, chunk.position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+            }
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(buffer.array());
+                ByteArrayOutputStream out = new ByteArrayOutputStream(chunk.chars);
+                byte[] block = new byte[8192];
+                while (!inflater.finished()) {
+                    int n = inflater.inflate(block);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Truncated chunk");
+                    }
+                    out.write(block, 0, n);
+                }
+                return new String(out.toByteArray(), StandardCharsets.UTF_8);
+            } finally {
+                inflater.end();
+            }
+        } catch (IOException | DataFormatException | RuntimeException e) {
+            log.warn("Failed to read log chunk at {} from [{}]: {}", chunk.offset, file, e.getMessage());
+            // Keep offsets of the rest of the log intact
+            return new String(new char[chunk.chars]).replace('\0', '?');
+        }
+    }
+
+    private static byte[] deflate(String text) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(text.getBytes(StandardCharsets.UTF_8));
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(text.length() / 4);
+            byte[] block = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(block, 0, deflater.deflate(block));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Failed to close [{}]: {}", file, e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    private static class Chunk {
+        private final long offset;
+        private final int chars;
+        private final long position;
+        private final int size;
+
+        private Chunk(long offset, int chars, long position, int size) {
+            this.offset = offset;
+            this.chars = chars;
+            this.position = position;
+            this.size = size;
+        }
+    }
+}
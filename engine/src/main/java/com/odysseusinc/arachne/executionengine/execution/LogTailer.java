@@ -0,0 +1,184 @@
+package com.odysseusinc.arachne.executionengine.execution;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Follows log files of running processes. Process output is redirected to a file by the OS, so the process never
+ * blocks on a full pipe and capturing it takes no threads. Appends are picked up by a single thread watching the log
+ * directory, and are passed to the listener of each log as text deltas.
+ */
+@Slf4j
+@Service
+@ManagedResource
+public class LogTailer {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path dir;
+    private final Map<Path, Tail> tails = new ConcurrentHashMap<>();
+    private WatchService watcher;
+
+    @Autowired
+    public LogTailer(@Value("${runtime.logDir:}") String dir) {
+        this.dir = StringUtils.isBlank(dir) ? Paths.get(System.getProperty("java.io.tmpdir"), "execution-engine", "logs") : Paths.get(dir);
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(dir);
+        watcher = FileSystems.getDefault().newWatchService();
+        dir.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread thread = new CustomizableThreadFactory("log-tailer-").newThread(this::watch);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        watcher.close();
+    }
+
+    /**
+     * Creates a log file for the process output. Appends are not followed until {@link Tail#listen} is called.
+     */
+    public Tail create(long id) throws IOException {
+        return new Tail(Files.createTempFile(dir, id + "-", ".log").toFile());
+    }
+
+    private void watch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watcher.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    Object context = event.context();
+                    Tail tail = context instanceof Path ? tails.get(context) : null;
+                    if (tail != null) {
+                        tail.poll();
+                    } else if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        tails.values().forEach(Tail::poll);
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            log.debug("Log tailer stopped");
+        }
+    }
+
+    @ManagedAttribute
+    public int getFollowedCount() {
+        return tails.size();
+    }
+
+    public class Tail implements AutoCloseable {
+        private final File file;
+        private volatile Consumer<String> listener;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        private long position;
+        private boolean closed;
+
+        private Tail(File file) {
+            this.file = file;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Starts following the log.
+         * @param listener receives appended text, called on the tailer thread or on the thread calling {@link #poll()}.
+         */
+        public void listen(Consumer<String> listener) {
+            this.listener = listener;
+            tails.put(file.toPath().getFileName(), this);
+            poll();
+        }
+
+        /**
+         * Reads whatever has been appended since the last read and passes it to the listener.
+         * Called by the tailer on file change events, and may also be called to make sure the log is read up to the end.
+         */
+        public synchronized void poll() {
+            if (closed || listener == null) {
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                StringBuilder delta = new StringBuilder();
+                int read;
+                while ((read = channel.read(bytes, position)) > 0) {
+                    position += read;
+                    bytes.flip();
+                    // Incomplete multi-byte sequence at the end stays in the buffer until the rest is appended
+                    decoder.decode(bytes, chars, false);
+                    bytes.compact();
+                    chars.flip();
+                    delta.append(chars);
+                    chars.clear();
+                }
+                if (delta.length() > 0) {
+                    listener.accept(delta.toString());
+                }
+            } catch (IOException e) {
+                log.warn("Failed to read log [{}]: {}", file, e.getMessage());
+            }
+        }
+
+        /**
+         * Reads the rest of the log and stops following it, leaving the file to the caller.
+         * @return the log file, or null if the log has been closed or detached already
+         */
+        public synchronized File detach() {
+            if (closed) {
+                return null;
+            }
+            poll();
+            closed = true;
+            tails.remove(file.toPath().getFileName(), this);
+            return file;
+        }
+
+        /**
+         * Reads the rest of the log, stops following it and removes the file.
+         */
+        @Override
+        public synchronized void close() {
+            if (detach() != null && !file.delete()) {
+                log.debug("Log [{}] was not removed", file);
+            }
+        }
+    }
+}
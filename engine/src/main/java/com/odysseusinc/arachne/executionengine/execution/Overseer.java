@@ -2,7 +2,9 @@ package com.odysseusinc.arachne.executionengine.execution;
 
 import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisRequestTypeDTO;
 import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.ExecutionOutcome;
+import java.io.File;
 import java.time.Instant;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
 
@@ -10,11 +12,24 @@ public interface Overseer {
     Instant getStarted();
 
     /**
-     * Provides a full current state of log.
-     * For incomplete execution, this will be a snapshot at the given moment.
+     * Provides the last part of the log, as much as is kept in memory, so that its size does not depend on the
+     * length of the log. For incomplete execution, this will be a snapshot at the given moment.
      */
     String getStdout();
 
+    /**
+     * Provides a range of the log, without building it in full.
+     * The range is cut to the current length of the log.
+     */
+    String getStdout(long offset, int length);
+
+    /**
+     * Hands over the file with the full log of a completed execution, so that it can be sent without reading it
+     * into memory. The caller removes the file once done with it.
+     * @return empty if the log is not kept in a file, or has been handed over already
+     */
+    Optional<File> detachStdout();
+
     /**
      * Attempts to abort the execution. Returned future might not be complete immediately,
      * as it also includes finalizers amended via {@link #whenComplete}
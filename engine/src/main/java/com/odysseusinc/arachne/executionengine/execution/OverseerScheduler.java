@@ -0,0 +1,171 @@
+package com.odysseusinc.arachne.executionengine.execution;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Runs timed jobs of all overseers, so that the number of threads does not depend on the number of running analyses.
+ * Timeouts and other one-off timers run on a single timer thread and must be short, periodic log pumping runs on a
+ * small separate pool, and tasks which block for long, like terminating process trees, run on a pool of their own.
+ * Every job is registered until it is cancelled or done, and is visible over JMX.
+ */
+@Slf4j
+@Service
+@ManagedResource
+public class OverseerScheduler {
+    private final ScheduledThreadPoolExecutor timers;
+    private final ScheduledThreadPoolExecutor pumps;
+    private final ThreadPoolExecutor tasks;
+    private final Map<Long, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public OverseerScheduler(int logThreads) {
+        this(logThreads, 2);
+    }
+
+    @Autowired
+    public OverseerScheduler(
+            @Value("${runtime.scheduler.logThreads:4}") int logThreads, @Value("${runtime.scheduler.taskThreads:2}") int taskThreads
+    ) {
+        timers = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("overseer-timer-"));
+        timers.setRemoveOnCancelPolicy(true);
+        pumps = new ScheduledThreadPoolExecutor(logThreads, new CustomizableThreadFactory("overseer-log-"));
+        pumps.setRemoveOnCancelPolicy(true);
+        tasks = new ThreadPoolExecutor(taskThreads, taskThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new CustomizableThreadFactory("overseer-task-"));
+        tasks.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timers.shutdownNow();
+        pumps.shutdownNow();
+        tasks.shutdownNow();
+    }
+
+    /**
+     * Runs the task once after the delay.
+     */
+    public Job schedule(long analysisId, String name, Runnable task, long delay, TimeUnit unit) {
+        Job job = new Job(analysisId, name, Kind.TIMER, Instant.now().plusMillis(unit.toMillis(delay)));
+        job.future = timers.schedule(() -> {
+            try {
+                task.run();
+            } finally {
+                jobs.remove(job.seq, job);
+            }
+        }, delay, unit);
+        return register(job);
+    }
+
+    /**
+     * Runs the task periodically on the log pumping pool, until cancelled.
+     * Runs of the same task never overlap, an exception thrown by the task stops it.
+     */
+    public Job scheduleAtFixedRate(long analysisId, String name, Runnable task, long period, TimeUnit unit) {
+        Job job = new Job(analysisId, name, Kind.PUMP, null);
+        job.future = pumps.scheduleAtFixedRate(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Execution [{}] {} failed and will not run again", analysisId, name, e);
+                job.cancel();
+                throw e;
+            }
+        }, period, period, unit);
+        return register(job);
+    }
+
+    /**
+     * Runs the task once, as soon as a task thread is free.
+     */
+    public Job submit(long analysisId, String name, Runnable task) {
+        Job job = new Job(analysisId, name, Kind.TASK, null);
+        job.future = tasks.submit(() -> {
+            try {
+                task.run();
+            } finally {
+                jobs.remove(job.seq, job);
+            }
+        });
+        return register(job);
+    }
+
+    private Job register(Job job) {
+        jobs.put(job.seq, job);
+        // The task may have finished before it got registered
+        if (job.future.isDone()) {
+            jobs.remove(job.seq, job);
+        }
+        return job;
+    }
+
+    @ManagedAttribute
+    public int getTimerCount() {
+        return (int) jobs.values().stream().filter(job -> job.kind == Kind.TIMER).count();
+    }
+
+    @ManagedAttribute
+    public int getLogPumpCount() {
+        return (int) jobs.values().stream().filter(job -> job.kind == Kind.PUMP).count();
+    }
+
+    @ManagedAttribute
+    public int getTaskCount() {
+        return (int) jobs.values().stream().filter(job -> job.kind == Kind.TASK).count();
+    }
+
+    @ManagedAttribute
+    public List<String> getJobs() {
+        return jobs.values().stream().sorted((a, b) -> Long.compare(a.seq, b.seq)).map(Job::toString).collect(Collectors.toList());
+    }
+
+    public class Job {
+        private final long seq = sequence.incrementAndGet();
+        private final long analysisId;
+        private final String name;
+        private final Kind kind;
+        /**
+         * For one-off timers, the moment the job is due to run
+         */
+        private final Instant due;
+        private volatile Future<?> future;
+
+        private Job(long analysisId, String name, Kind kind, Instant due) {
+            this.analysisId = analysisId;
+            this.name = name;
+            this.kind = kind;
+            this.due = due;
+        }
+
+        public void cancel() {
+            jobs.remove(seq, this);
+            future.cancel(false);
+        }
+
+        @Override
+        public String toString() {
+            return "[" + analysisId + "] " + name + (kind == Kind.TIMER ? " due " + due : kind == Kind.PUMP ? " periodic" : " running");
+        }
+    }
+
+    private enum Kind {
+        TIMER, PUMP, TASK
+    }
+}
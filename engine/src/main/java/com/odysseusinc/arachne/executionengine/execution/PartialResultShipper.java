@@ -0,0 +1,191 @@
+package com.odysseusinc.arachne.executionengine.execution;
+
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisRequestDTO;
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisResultDTO;
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.Stage;
+import com.odysseusinc.arachne.executionengine.util.AutoCloseWrapper;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.lingala.zip4j.exception.ZipException;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Sends results which are ready while the analysis is still running.
+ * An analysis marks a directory as final by creating an empty {@value #FINAL_MARKER} file in it. The analysis dir
+ * is scanned periodically, and every newly marked directory is packed and sent to the partial result callback.
+ * Files sent this way are left out of the final result.
+ */
+@Slf4j
+@Service
+public class PartialResultShipper {
+    public static final String FINAL_MARKER = ".final";
+
+    private final CallbackService callbackService;
+    private final long scanIntervalSec;
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    @Autowired
+    public PartialResultShipper(
+            CallbackService callbackService,
+            @Value("${submission.partial.scanIntervalSec:30}") long scanIntervalSec,
+            @Value("${submission.partial.threads:2}") int threads
+    ) {
+        this.callbackService = callbackService;
+        this.scanIntervalSec = scanIntervalSec;
+        scheduler = new ScheduledThreadPoolExecutor(threads, new CustomizableThreadFactory("partial-results-"));
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Starts watching the analysis dir, if the analysis requested partial results.
+     */
+    public Watch watch(AnalysisRequestDTO analysis, File analysisDir, Long chunkSize) {
+        Watch watch = new Watch(analysis, analysisDir, chunkSize);
+        if (StringUtils.isNotBlank(analysis.getPartialResultCallback())) {
+            log.info("Execution [{}] partial results enabled, scanning [{}] every {} sec", analysis.getId(), analysisDir, scanIntervalSec);
+            watch.future = scheduler.scheduleWithFixedDelay(watch::scan, scanIntervalSec, scanIntervalSec, TimeUnit.SECONDS);
+        }
+        return watch;
+    }
+
+    public class Watch {
+        private final AnalysisRequestDTO analysis;
+        private final File analysisDir;
+        private final Long chunkSize;
+        private final Set<File> shipped = new HashSet<>();
+        private final Set<Path> shippedDirs = new HashSet<>();
+        private ScheduledFuture<?> future;
+        private int part;
+        private boolean stopped;
+        /**
+         * Number of parts being packed or submitted. Packing is done without holding the lock, so that it does not
+         * block {@link #isRemaining} or {@link #stop} for the time of compression.
+         */
+        private int packing;
+
+        private Watch(AnalysisRequestDTO analysis, File analysisDir, Long chunkSize) {
+            this.analysis = analysis;
+            this.analysisDir = analysisDir;
+            this.chunkSize = chunkSize;
+        }
+
+        /**
+         * @return true if the file has not been sent as a part yet, and has to be included into the final result.
+         */
+        public synchronized boolean isRemaining(File file) {
+            return !shipped.contains(file) && !FINAL_MARKER.equals(file.getName());
+        }
+
+        /**
+         * Stops watching. No new parts are started after this. If a part is being packed at the moment, waits until
+         * it is submitted, so that the part goes before the final result and the final result does not include
+         * the same files.
+         */
+        public synchronized void stop() {
+            stopped = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+            while (packing > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (future != null) {
+                log.info("Execution [{}] sent {} parts of results, {} files in total", analysis.getId(), part, shipped.size());
+            }
+        }
+
+        void scan() {
+            Set<Path> seen;
+            synchronized (this) {
+                if (stopped) {
+                    return;
+                }
+                seen = new HashSet<>(shippedDirs);
+            }
+            Path root = analysisDir.toPath();
+            List<Path> marked;
+            try (Stream<Path> paths = Files.walk(root)) {
+                marked = paths.filter(path -> FINAL_MARKER.equals(path.getFileName().toString()) && Files.isRegularFile(path))
+                        .map(Path::getParent)
+                        .filter(dir -> !seen.contains(dir))
+                        .collect(Collectors.toList());
+            } catch (IOException | UncheckedIOException e) {
+                log.warn("Execution [{}] failed to scan [{}] for final results: {}", analysis.getId(), root, e.getMessage());
+                return;
+            }
+            marked.forEach(this::ship);
+        }
+
+        private void ship(Path dir) {
+            Long id = analysis.getId();
+            Set<File> files;
+            try (Stream<Path> paths = Files.walk(dir)) {
+                files = paths.filter(Files::isRegularFile).map(Path::toFile).filter(this::isRemaining).collect(Collectors.toSet());
+            } catch (IOException | UncheckedIOException e) {
+                log.warn("Execution [{}] failed to list final results in [{}]: {}", id, dir, e.getMessage());
+                return;
+            }
+            int next;
+            synchronized (this) {
+                if (stopped) {
+                    return;
+                }
+                shippedDirs.add(dir);
+                if (files.isEmpty()) {
+                    return;
+                }
+                next = part + 1;
+                packing++;
+            }
+            try {
+                AutoCloseWrapper<List<FileSystemResource>> packed = callbackService.packPartialResults(analysis, analysisDir, files, next, chunkSize);
+                AnalysisResultDTO result = new AnalysisResultDTO();
+                result.setId(id);
+                result.setRequested(analysis.getRequested());
+                result.setStage(Stage.EXECUTE);
+                log.info("Execution [{}] sending partial results #{} from [{}], {} files", id, next, dir, files.size());
+                callbackService.sendPartialResults(result, next, packed, analysis.getPartialResultCallback(), analysis.getCallbackPassword());
+                synchronized (this) {
+                    shipped.addAll(files);
+                    part = next;
+                }
+            } catch (ZipException | RuntimeException e) {
+                // Files stay in the final result
+                log.warn("Execution [{}] failed to pack partial results from [{}], they will be sent on completion: {}", id, dir, e.getMessage());
+            } finally {
+                synchronized (this) {
+                    packing--;
+                    notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.odysseusinc.arachne.executionengine.execution;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+/**
+ * Snapshot of processes running on the host, read from /proc.
+ */
+public class ProcessTable {
+    public static final Path PROC = Paths.get("/proc");
+
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final Map<Integer, List<Integer>> children = new HashMap<>();
+
+    private ProcessTable() {
+    }
+
+    public static ProcessTable read(Path proc) throws IOException {
+        ProcessTable table = new ProcessTable();
+        try (Stream<Path> paths = Files.list(proc)) {
+            paths.map(path -> path.getFileName().toString()).filter(NumberUtils::isDigits).forEach(name ->
+                    readEntry(proc, Integer.parseInt(name)).ifPresent(entry -> {
+                        table.entries.put(entry.pid, entry);
+                        table.children.computeIfAbsent(entry.ppid, ppid -> new ArrayList<>()).add(entry.pid);
+                    })
+            );
+        }
+        return table;
+    }
+
+    /**
+     * The process and all its descendants, parents before children.
+     * Empty if the process is not running.
+     */
+    public List<Entry> tree(int pid) {
+        List<Entry> tree = new ArrayList<>();
+        Deque<Integer> queue = new ArrayDeque<>();
+        if (entries.containsKey(pid)) {
+            queue.add(pid);
+        }
+        while (!queue.isEmpty()) {
+            Entry entry = entries.get(queue.poll());
+            tree.add(entry);
+            queue.addAll(children.getOrDefault(entry.pid, Collections.emptyList()));
+        }
+        return tree;
+    }
+
+    /**
+     * Checks that the very process is still running, rather than another one which got the same pid.
+     * Zombies are not running, even if nobody reaps them.
+     */
+    public static boolean isAlive(Path proc, Entry entry) {
+        return readEntry(proc, entry.pid).filter(current -> current.startTime == entry.startTime && !current.isDead()).isPresent();
+    }
+
+    /**
+     * Checks whether the process is the init of a pid namespace nested in the one of /proc, as the one started by
+     * unshare --pid --fork is. Killing it takes down every process in the namespace.
+     */
+    public static boolean isNamespaceInit(Path proc, Entry entry) {
+        try {
+            // NSpid lists the pid in each namespace the process is in, from the outermost to its own
+            return Files.readAllLines(proc.resolve(entry.pid + "/status"), StandardCharsets.UTF_8).stream()
+                    .filter(line -> line.startsWith("NSpid:"))
+                    .map(line -> StringUtils.split(line.substring("NSpid:".length())))
+                    .anyMatch(pids -> pids.length > 1 && "1".equals(pids[pids.length - 1]));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static Optional<Entry> readEntry(Path proc, int pid) {
+        try {
+            String stat = new String(Files.readAllBytes(proc.resolve(pid + "/stat")), StandardCharsets.UTF_8);
+            // Command name is in parentheses and may contain anything, fields are counted after it
+            String[] fields = StringUtils.split(stat.substring(stat.lastIndexOf(')') + 2));
+            return Optional.of(new Entry(
+                    pid, fields[0].charAt(0), Integer.parseInt(fields[1]), Long.parseLong(fields[11]) + Long.parseLong(fields[12]), Long.parseLong(fields[19])
+            ));
+        } catch (IOException | RuntimeException e) {
+            // Process is gone
+            return Optional.empty();
+        }
+    }
+
+    public static Optional<Integer> pid(Process process) {
+        try {
+            Method method = Process.class.getMethod("pid");
+            return Optional.of(((Long) method.invoke(process)).intValue());
+        } catch (NoSuchMethodException e) {
+            try {
+                // Java 8 on Unix
+                Field field = process.getClass().getDeclaredField("pid");
+                field.setAccessible(true);
+                return Optional.of(field.getInt(process));
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                return Optional.empty();
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    public static class Entry {
+        private final int pid;
+        private final char state;
+        private final int ppid;
+        /**
+         * User and system CPU time, in clock ticks
+         */
+        private final long cpuTicks;
+        private final long startTime;
+
+        private Entry(int pid, char state, int ppid, long cpuTicks, long startTime) {
+            this.pid = pid;
+            this.state = state;
+            this.ppid = ppid;
+            this.cpuTicks = cpuTicks;
+            this.startTime = startTime;
+        }
+
+        public int getPid() {
+            return pid;
+        }
+
+        private boolean isDead() {
+            return state == 'Z' || state == 'X';
+        }
+
+        public long getCpuTicks() {
+            return cpuTicks;
+        }
+
+        /**
+         * Pids are reused, so a process is identified by its start time as well
+         */
+        public String getKey() {
+            return pid + ":" + startTime;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.odysseusinc.arachne.executionengine.execution;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.ArrayUtils;
+
+/**
+ * Runs short external commands, such as tar, du, rm or kill, on behalf of runtime services.
+ * Commands which need root run under sudo, unless the engine runs as root already.
+ */
+@Slf4j
+public final class Processes {
+    private static final String[] SUDO = "root".equals(System.getProperty("user.name")) ? new String[0] : new String[]{"sudo", "-n"};
+
+    private Processes() {
+    }
+
+    /**
+     * Runs the command and waits for it to exit.
+     * @return output of the command, with stderr merged into it
+     * @throws IOException if the command cannot be started or exits with non-zero code
+     */
+    public static String exec(String... command) throws IOException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        try {
+            String output = IOUtils.toString(process.getInputStream(), StandardCharsets.UTF_8);
+            int exitValue = process.waitFor();
+            if (exitValue != 0) {
+                throw new IOException("Command " + Arrays.toString(command) + " failed with exit code " + exitValue + ": " + output);
+            }
+            return output;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroy();
+            throw new IOException("Interrupted while running " + Arrays.toString(command), e);
+        }
+    }
+
+    /**
+     * Same as {@link #exec}, as root.
+     */
+    public static String execAsRoot(String... command) throws IOException {
+        return exec(ArrayUtils.addAll(SUDO, command));
+    }
+
+    /**
+     * Removes a file or a directory tree, which may be owned by root, as extracted bundles are.
+     */
+    public static void delete(Path path) {
+        if (Files.exists(path)) {
+            try {
+                execAsRoot("rm", "-rf", path.toString());
+            } catch (IOException e) {
+                log.error("Failed to remove [{}]: {}", path, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.odysseusinc.arachne.executionengine.execution;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Accounts resources used by process trees of running executions. All trees are sampled together from /proc on
+ * a single thread: parent links of all processes are read once per sample, and then CPU time, resident memory and
+ * storage I/O of every descendant of each execution process are added up.
+ * CPU time and I/O of a process are remembered once seen, so that they still count after the process exits.
+ * Processes which start and exit between two samples are not accounted, unless the execution runs in a cgroup, the
+ * counters of which are used instead.
+ */
+@Slf4j
+@Service
+@ManagedResource
+public class ResourceSampler {
+    /**
+     * USER_HZ, which is 100 on all supported architectures
+     */
+    private static final int CLOCK_TICKS = 100;
+
+    private final Path proc;
+    private final long intervalSec;
+    private final Map<Long, Tree> trees = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    @Autowired
+    public ResourceSampler(@Value("${runtime.resourceSampleSec:10}") long intervalSec) {
+        this(ProcessTable.PROC, intervalSec);
+    }
+
+    ResourceSampler(Path proc, long intervalSec) {
+        this.proc = proc;
+        this.intervalSec = intervalSec;
+        scheduler = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("resource-sampler-"));
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!isEnabled()) {
+            log.info("Resource accounting is not available, no [{}]", proc);
+            return;
+        }
+        scheduler.scheduleWithFixedDelay(this::sample, intervalSec, intervalSec, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return intervalSec > 0 && Files.isDirectory(proc);
+    }
+
+    /**
+     * Starts accounting resources of the process and all its descendants.
+     * @param cgroup cgroup v2 the processes run in. Its counters are used instead of those of single processes, as
+     *               they include processes which were never sampled, and are readable when processes are not.
+     */
+    public void watch(long id, Process process, Optional<Path> cgroup) {
+        if (isEnabled()) {
+            Optional<Integer> pid = ProcessTable.pid(process);
+            if (pid.isPresent()) {
+                trees.put(id, new Tree(id, pid.get(), cgroup));
+            } else {
+                log.info("Execution [{}] resources are not accounted, process id is not available", id);
+            }
+        }
+    }
+
+    /**
+     * Usage as of the last sample.
+     */
+    public Optional<ResourceUsage> getUsage(long id) {
+        return Optional.ofNullable(trees.get(id)).map(Tree::getUsage);
+    }
+
+    public Map<Long, ResourceUsage> getAll() {
+        return trees.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().getUsage()));
+    }
+
+    /**
+     * Stops accounting.
+     * @return final usage, if accounting was on for the execution.
+     */
+    public Optional<ResourceUsage> stop(long id) {
+        return Optional.ofNullable(trees.remove(id)).map(Tree::getUsage);
+    }
+
+    void sample() {
+        if (trees.isEmpty()) {
+            return;
+        }
+        ProcessTable table;
+        try {
+            table = ProcessTable.read(proc);
+        } catch (IOException e) {
+            log.warn("Failed to list processes in [{}]: {}", proc, e.getMessage());
+            return;
+        }
+        trees.values().forEach(tree -> tree.sample(table));
+    }
+
+    /**
+     * Reads "key: value" or "key value" lines with numeric values
+     */
+    private static Map<String, Long> readFields(Path file) throws IOException {
+        Map<String, Long> values = new HashMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String[] parts = StringUtils.split(line, ": \t");
+            if (parts.length >= 2 && NumberUtils.isDigits(parts[1])) {
+                values.put(parts[0], Long.parseLong(parts[1]));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Adds up bytes read and written on all devices, as listed in io.stat of a cgroup
+     */
+    private static long[] readIoStat(Path file) throws IOException {
+        long[] io = new long[2];
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            for (String field : StringUtils.split(line)) {
+                String value = StringUtils.substringAfter(field, "=");
+                if (field.startsWith("rbytes=") && NumberUtils.isDigits(value)) {
+                    io[0] += Long.parseLong(value);
+                } else if (field.startsWith("wbytes=") && NumberUtils.isDigits(value)) {
+                    io[1] += Long.parseLong(value);
+                }
+            }
+        }
+        return io;
+    }
+
+    @ManagedAttribute
+    public List<String> getReport() {
+        return getAll().entrySet().stream().sorted(Map.Entry.comparingByKey()).map(entry -> {
+            ResourceUsage usage = entry.getValue();
+            return String.format("[%d] cpu %.1f s, rss %d MB (peak %d MB), read %s MB, written %s MB, %d processes",
+                    entry.getKey(), usage.getCpuSeconds(), usage.getRssBytes() >> 20, usage.getPeakRssBytes() >> 20,
+                    megabytes(usage.getReadBytes()), megabytes(usage.getWriteBytes()), usage.getProcessCount()
+            );
+        }).collect(Collectors.toList());
+    }
+
+    private static String megabytes(Long bytes) {
+        return bytes == null ? "n/a" : String.valueOf(bytes >> 20);
+    }
+
+    private class Tree {
+        private final long id;
+        private final int root;
+        private final Optional<Path> cgroup;
+        /**
+         * CPU ticks, bytes read and written last seen for every running process of the tree
+         */
+        private final Map<String, long[]> seen = new HashMap<>();
+        /**
+         * Same, added up for processes which have exited. Their keys include start time, so they never come back.
+         */
+        private final long[] exited = new long[3];
+        /**
+         * Set once I/O of a process is not readable, as it runs as another user. Partial sums would only mislead.
+         */
+        private boolean ioUnavailable;
+        /**
+         * Counters of the cgroup last read, null until it is readable. The cgroup is created by jail.sh after the
+         * process starts and removed by cleanup, so the last values read are kept.
+         */
+        private Long cgroupCpuUsec;
+        private long[] cgroupIo;
+        private Long cgroupMemoryPeak;
+        private volatile ResourceUsage usage = new ResourceUsage(0, 0, 0, 0L, 0L, 0, 0, 0);
+
+        private Tree(long id, int root, Optional<Path> cgroup) {
+            this.id = id;
+            this.root = root;
+            this.cgroup = cgroup;
+        }
+
+        private ResourceUsage getUsage() {
+            return usage;
+        }
+
+        private void sample(ProcessTable table) {
+            long rss = 0;
+            int count = 0;
+            Set<String> running = new HashSet<>();
+            for (ProcessTable.Entry entry : table.tree(root)) {
+                count++;
+                running.add(entry.getKey());
+                long[] last = seen.computeIfAbsent(entry.getKey(), key -> new long[3]);
+                last[0] = entry.getCpuTicks();
+                if (!ioUnavailable) {
+                    try {
+                        Map<String, Long> io = readFields(proc.resolve(entry.getPid() + "/io"));
+                        last[1] = io.getOrDefault("read_bytes", last[1]);
+                        last[2] = io.getOrDefault("write_bytes", last[2]);
+                    } catch (AccessDeniedException e) {
+                        ioUnavailable = true;
+                        log.info("Execution [{}] I/O of processes is not readable{}", id, cgroup.isPresent() ? ", using cgroup counters" : "");
+                    } catch (IOException e) {
+                        // Process is gone
+                    }
+                }
+                try {
+                    rss += readFields(proc.resolve(entry.getPid() + "/status")).getOrDefault("VmRSS", 0L) << 10;
+                } catch (IOException e) {
+                    // Process is gone
+                }
+            }
+            seen.entrySet().removeIf(entry -> {
+                if (running.contains(entry.getKey())) {
+                    return false;
+                }
+                for (int i = 0; i < exited.length; i++) {
+                    exited[i] += entry.getValue()[i];
+                }
+                return true;
+            });
+            long[] total = exited.clone();
+            for (long[] values : seen.values()) {
+                for (int i = 0; i < total.length; i++) {
+                    total[i] += values[i];
+                }
+            }
+            cgroup.ifPresent(this::readCgroup);
+            ResourceUsage previous = usage;
+            double cpuSeconds = cgroupCpuUsec != null ? cgroupCpuUsec / 1e6 : (double) total[0] / CLOCK_TICKS;
+            long peakRss = cgroupMemoryPeak != null ? cgroupMemoryPeak : Math.max(rss, previous.getPeakRssBytes());
+            Long read = cgroupIo != null ? Long.valueOf(cgroupIo[0]) : ioUnavailable ? null : Long.valueOf(total[1]);
+            Long written = cgroupIo != null ? Long.valueOf(cgroupIo[1]) : ioUnavailable ? null : Long.valueOf(total[2]);
+            usage = new ResourceUsage(
+                    cpuSeconds, rss, peakRss, read, written, count, Math.max(count, previous.getPeakProcessCount()), previous.getSamples() + 1
+            );
+        }
+
+        private void readCgroup(Path dir) {
+            try {
+                Long usec = readFields(dir.resolve("cpu.stat")).get("usage_usec");
+                if (usec != null) {
+                    cgroupCpuUsec = usec;
+                }
+            } catch (IOException e) {
+                // Not created yet, or removed already
+            }
+            try {
+                cgroupIo = readIoStat(dir.resolve("io.stat"));
+            } catch (IOException e) {
+                // Same, or the io controller is not enabled
+            }
+            try {
+                // Available since Linux 5.19
+                String peak = new String(Files.readAllBytes(dir.resolve("memory.peak")), StandardCharsets.UTF_8).trim();
+                if (NumberUtils.isDigits(peak)) {
+                    cgroupMemoryPeak = Long.parseLong(peak);
+                }
+            } catch (IOException e) {
+                // Same, or the kernel does not track the peak
+            }
+        }
+    }
+}
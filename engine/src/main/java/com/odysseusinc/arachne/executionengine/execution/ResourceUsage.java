@@ -0,0 +1,42 @@
+package com.odysseusinc.arachne.executionengine.execution;
+
+import lombok.Getter;
+
+/**
+ * Resources used by the process tree of an execution, as of the last sample.
+ */
+@Getter
+public class ResourceUsage {
+    /**
+     * User and system CPU time of all processes seen in the tree
+     */
+    private final double cpuSeconds;
+    private final long rssBytes;
+    /**
+     * Largest total resident memory of the tree over all samples, or the peak memory charged to the cgroup of the
+     * execution, if it has one
+     */
+    private final long peakRssBytes;
+    /**
+     * Storage I/O of the cgroup of the execution, or of all processes seen in the tree.
+     * Null if the execution has no cgroup and /proc/[pid]/io of its processes is not readable, as they run as root.
+     */
+    private final Long readBytes;
+    private final Long writeBytes;
+    private final int processCount;
+    private final int peakProcessCount;
+    private final int samples;
+
+    public ResourceUsage(
+            double cpuSeconds, long rssBytes, long peakRssBytes, Long readBytes, Long writeBytes, int processCount, int peakProcessCount, int samples
+    ) {
+        this.cpuSeconds = cpuSeconds;
+        this.rssBytes = rssBytes;
+        this.peakRssBytes = peakRssBytes;
+        this.readBytes = readBytes;
+        this.writeBytes = writeBytes;
+        this.processCount = processCount;
+        this.peakProcessCount = peakProcessCount;
+        this.samples = samples;
+    }
+}
@@ -0,0 +1,128 @@
+package com.odysseusinc.arachne.executionengine.execution;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisRequestDTO;
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.ResultManifestDTO;
+import com.odysseusinc.arachne.execution_engine_common.util.NestedZipFilter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Offers a manifest of result files to the receiver, so that content it already has is not uploaded again.
+ * Any failure of the exchange, including receivers which do not support it, results in a full upload.
+ */
+@Slf4j
+@Service
+public class ResultManifestService {
+    private final RestTemplate nodeRestTemplate;
+    private final ObjectMapper mapper;
+
+    @Autowired
+    public ResultManifestService(@Qualifier("nodeRestTemplate") RestTemplate nodeRestTemplate, ObjectMapper mapper) {
+        this.nodeRestTemplate = nodeRestTemplate;
+        this.mapper = mapper;
+    }
+
+    public Optional<ResultManifestDTO> negotiate(AnalysisRequestDTO analysis, File resultDir, Collection<File> files) {
+        return negotiate(analysis, resultDir, files, NestedZipFilter.none());
+    }
+
+    /**
+     * Hashes the files and offers the manifest to the receiver.
+     * @param nestedZipFilter applied to the files before hashing, the same way as when they are packed,
+     * so that hashes and sizes describe the content which is actually shipped.
+     * @return the manifest, with files the receiver already has marked as not uploaded,
+     * or empty if the analysis did not ask for a manifest or the receiver did not accept it.
+     */
+    public Optional<ResultManifestDTO> negotiate(
+            AnalysisRequestDTO analysis, File resultDir, Collection<File> files, NestedZipFilter nestedZipFilter
+    ) {
+        Long id = analysis.getId();
+        String url = analysis.getResultManifestCallback();
+        if (StringUtils.isBlank(url)) {
+            return Optional.empty();
+        }
+        long started = System.currentTimeMillis();
+        ResultManifestDTO manifest = new ResultManifestDTO();
+        manifest.setId(id);
+        Path root = resultDir.toPath();
+        Path tempDir = null;
+        try {
+            tempDir = Files.createTempDirectory("manifest");
+            for (File file : files) {
+                ResultManifestDTO.ResultFileDTO entry = new ResultManifestDTO.ResultFileDTO();
+                entry.setPath(root.relativize(file.toPath()).toString().replace(File.separatorChar, '/'));
+                File shipped = nestedZipFilter.filter(file, tempDir);
+                try (InputStream in = Files.newInputStream(shipped.toPath())) {
+                    entry.setSize(shipped.length());
+                    entry.setHash(DigestUtils.sha256Hex(in));
+                } finally {
+                    if (!shipped.equals(file)) {
+                        FileUtils.deleteQuietly(shipped);
+                    }
+                }
+                manifest.getFiles().add(entry);
+            }
+        } catch (IOException e) {
+            log.warn("Execution [{}] failed to hash result files, uploading all of them: {}", id, e.getMessage());
+            return Optional.empty();
+        } finally {
+            if (tempDir != null) {
+                FileUtils.deleteQuietly(tempDir.toFile());
+            }
+        }
+        long hashed = System.currentTimeMillis();
+        String[] missing;
+        try {
+            ResponseEntity<String[]> response = nodeRestTemplate.exchange(
+                    url, HttpMethod.POST, new HttpEntity<>(manifest), String[].class, id, analysis.getCallbackPassword()
+            );
+            missing = response.getBody();
+        } catch (RestClientException e) {
+            log.info("Execution [{}] result manifest not accepted by [{}], uploading all files: {}", id, url, e.getMessage());
+            return Optional.empty();
+        }
+        if (missing == null) {
+            log.info("Execution [{}] result manifest got no response from [{}], uploading all files", id, url);
+            return Optional.empty();
+        }
+        Set<String> needed = new HashSet<>(Arrays.asList(missing));
+        manifest.getFiles().forEach(entry -> entry.setUploaded(needed.contains(entry.getHash())));
+        long skippedBytes = manifest.getFiles().stream().filter(entry -> !entry.isUploaded()).mapToLong(ResultManifestDTO.ResultFileDTO::getSize).sum();
+        log.info("Execution [{}] receiver already has {} of {} result files, skipping {} bytes. Hashed in {} ms, negotiated in {} ms",
+                id, manifest.getFiles().stream().filter(entry -> !entry.isUploaded()).count(), manifest.getFiles().size(), skippedBytes,
+                hashed - started, System.currentTimeMillis() - hashed
+        );
+        return Optional.of(manifest);
+    }
+
+    public File write(ResultManifestDTO manifest, File dir) throws IOException {
+        return write(manifest, dir, ResultManifestDTO.FILE_NAME);
+    }
+
+    public File write(ResultManifestDTO manifest, File dir, String name) throws IOException {
+        File file = new File(dir, name);
+        mapper.writeValue(file, manifest);
+        return file;
+    }
+}
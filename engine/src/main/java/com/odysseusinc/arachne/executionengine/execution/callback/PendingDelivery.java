@@ -0,0 +1,117 @@
+package com.odysseusinc.arachne.executionengine.execution.callback;
+
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisResultDTO;
+import com.odysseusinc.arachne.executionengine.util.AutoCloseWrapper;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * Describes a result callback that has not been delivered yet.
+ * Holds only what is needed to repeat the send: references to the packed files, the callback coordinates
+ * and a way to obtain the result DTO. File contents are never kept in memory, and for durable deliveries
+ * the DTO itself is re-read from the outbox journal on each attempt.
+ */
+@Getter
+public class PendingDelivery {
+    /**
+     * Identifies the delivery, a newer delivery with the same key supersedes the older one.
+     * Equals to execution id for the final result, and {@code <id>.<part>} for partial results.
+     */
+    private final String key;
+    private final Long id;
+    private final String url;
+    private final String password;
+    private final List<FileSystemResource> resources;
+    /**
+     * Full process log, sent as a separate part when it does not fit into the result DTO. May be null.
+     */
+    private final FileSystemResource stdout;
+    /**
+     * True if the delivery is backed by the outbox and survives engine restart.
+     */
+    private final boolean durable;
+    private final Instant created;
+    private volatile int attempts;
+    /**
+     * Rounds of attempts started after the first one was exhausted, since the engine started
+     */
+    private volatile int rounds;
+    private volatile Instant nextAttempt;
+    @Getter(AccessLevel.NONE)
+    private final Supplier<AnalysisResultDTO> result;
+    @Getter(AccessLevel.NONE)
+    private final Runnable dispose;
+
+    public PendingDelivery(AnalysisResultDTO result, AutoCloseWrapper<List<FileSystemResource>> files, String url, String password) {
+        this(String.valueOf(result.getId()), result, files, url, password);
+    }
+
+    public PendingDelivery(
+            String key, AnalysisResultDTO result, AutoCloseWrapper<List<FileSystemResource>> files, String url, String password
+    ) {
+        this(key, result, files, null, url, password);
+    }
+
+    public PendingDelivery(
+            String key, AnalysisResultDTO result, AutoCloseWrapper<List<FileSystemResource>> files,
+            AutoCloseWrapper<FileSystemResource> stdout, String url, String password
+    ) {
+        this(
+                key, result.getId(), url, password, files != null ? files.getValue() : Collections.emptyList(),
+                stdout != null ? stdout.getValue() : null, false, Instant.now(), () -> result, () -> {
+                    if (files != null) {
+                        files.close();
+                    }
+                    if (stdout != null) {
+                        stdout.close();
+                    }
+                }
+        );
+    }
+
+    PendingDelivery(
+            String key, Long id, String url, String password, List<FileSystemResource> resources, FileSystemResource stdout,
+            boolean durable, Instant created, Supplier<AnalysisResultDTO> result, Runnable dispose
+    ) {
+        this.key = key;
+        this.id = id;
+        this.url = url;
+        this.password = password;
+        this.resources = resources;
+        this.stdout = stdout;
+        this.durable = durable;
+        this.created = created;
+        this.nextAttempt = created;
+        this.result = result;
+        this.dispose = dispose;
+    }
+
+    public AnalysisResultDTO getResult() {
+        return result.get();
+    }
+
+    /**
+     * Releases the packed files. Must be called exactly once, when the delivery is either done or superseded.
+     */
+    public void dispose() {
+        dispose.run();
+    }
+
+    int startAttempt() {
+        return ++attempts;
+    }
+
+    void startRound() {
+        attempts = 0;
+        rounds++;
+    }
+
+    void scheduleAt(Instant when) {
+        nextAttempt = when;
+    }
+}
@@ -0,0 +1,276 @@
+package com.odysseusinc.arachne.executionengine.execution.callback;
+
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisResultDTO;
+import com.odysseusinc.arachne.executionengine.config.properties.CallbackRetryProperties;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Delivers analysis results to the central node without blocking the caller.
+ * Each failed attempt is rescheduled with exponential backoff on a small shared scheduler,
+ * so that an unavailable central node does not hold analysis or request threads.
+ * Deliveries are backed by {@link ResultOutbox}, so they are not lost on restart or when retries are exhausted.
+ * Once retries of a delivery backed by the outbox are exhausted, another round is started every resume interval,
+ * until the delivery gets too old or has had too many rounds. A delivery rejected by the central node with a client
+ * error other than timeout or rate limit is dropped at once, as sending it again would not change the answer.
+ */
+@Slf4j
+@Service
+@ManagedResource
+public class ResultDeliveryService {
+    private final RestTemplate uploadRestTemplate;
+    private final ResultOutbox outbox;
+    private final CallbackRetryProperties.RetryPolicyProperties policy;
+    private final long resumeIntervalMs;
+    private final long maxAgeHours;
+    private final int maxResumeRounds;
+    private final ScheduledThreadPoolExecutor scheduler;
+    /**
+     * Moves packed files into the outbox, which may take a while when the outbox is on another file system
+     */
+    private final ScheduledThreadPoolExecutor storing;
+    private final ConcurrentMap<String, PendingDelivery> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failedAttempts = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    @Autowired
+    public ResultDeliveryService(
+            @Qualifier("uploadRestTemplate") RestTemplate uploadRestTemplate, ResultOutbox outbox, CallbackRetryProperties properties
+    ) {
+        this.uploadRestTemplate = uploadRestTemplate;
+        this.outbox = outbox;
+        this.policy = properties.getSuccess();
+        this.resumeIntervalMs = properties.getResumeIntervalMs();
+        this.maxAgeHours = properties.getMaxAgeHours();
+        this.maxResumeRounds = properties.getMaxResumeRounds();
+        scheduler = new ScheduledThreadPoolExecutor(properties.getSchedulerPoolSize(), new CustomizableThreadFactory("result-delivery-"));
+        scheduler.setRemoveOnCancelPolicy(true);
+        // A single thread, so that deliveries with the same key are enqueued in the order they were submitted
+        storing = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("result-outbox-"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        storing.shutdownNow();
+        scheduler.shutdownNow();
+        if (!pending.isEmpty()) {
+            log.warn("Shutting down with {} result deliveries pending, outbox entries will be resumed on next start: {}", pending.size(), pending.keySet());
+        }
+    }
+
+    /**
+     * Resumes deliveries left in the outbox by a previous run of the engine.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void replay() {
+        List<PendingDelivery> stored = outbox.restore();
+        if (!stored.isEmpty()) {
+            log.info("Resuming {} result deliveries from outbox: {}", stored.size(),
+                    stored.stream().map(PendingDelivery::getKey).collect(Collectors.toList())
+            );
+            // Anything submitted since startup is newer than what was stored before
+            stored.stream().filter(delivery -> !pending.containsKey(delivery.getKey())).forEach(this::enqueue);
+        }
+    }
+
+    /**
+     * Accepts the delivery and returns immediately. The delivery is journaled in the outbox in background first,
+     * and the first attempt is made as soon as it is stored and a scheduler thread is free.
+     * From now on, the service owns the delivery and disposes its files once it is sent.
+     */
+    public void submit(PendingDelivery delivery) {
+        storing.execute(() -> enqueue(outbox.store(delivery)));
+    }
+
+    private void enqueue(PendingDelivery delivery) {
+        PendingDelivery previous = pending.put(delivery.getKey(), delivery);
+        if (previous != null) {
+            log.warn("Execution [{}] pending result delivery [{}] superseded by a new one", delivery.getId(), delivery.getKey());
+            previous.dispose();
+        }
+        schedule(delivery, 0);
+    }
+
+    private void schedule(PendingDelivery delivery, long delayMs) {
+        delivery.scheduleAt(Instant.now().plusMillis(delayMs));
+        scheduler.schedule(() -> attempt(delivery), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void attempt(PendingDelivery delivery) {
+        Long id = delivery.getId();
+        if (pending.get(delivery.getKey()) != delivery) {
+            log.debug("Execution [{}] skipped superseded result delivery", id);
+            return;
+        }
+        int attempt = delivery.startAttempt();
+        try {
+            if (attempt == 1) {
+                AnalysisResultDTO result = delivery.getResult();
+                log.warn("Execution [{}], send result: {} - {}", id, result.getStage(), result.getError());
+            } else {
+                log.info("Execution [{}], retry send result, attempt {}", id, attempt);
+            }
+            ResponseEntity<String> sent = executeSend(delivery);
+            log.info("Execution [{}] result status sent, response HTTP {}", id, sent.getStatusCode());
+            delivered.incrementAndGet();
+            complete(delivery);
+        } catch (RestClientException e) {
+            failedAttempts.incrementAndGet();
+            if (isRejected(e)) {
+                log.error("Execution [{}] results rejected with HTTP {}, delivery dropped: {}", id, ((HttpClientErrorException) e).getRawStatusCode(), e.getMessage());
+                drop(delivery);
+            } else if (attempt >= policy.getMaxAttempts()) {
+                log.error("Execution [{}] failed to send results after {} attempts: {}", id, attempt, e.getMessage());
+                abandon(delivery);
+            } else {
+                long delay = backoff(attempt);
+                log.info("Execution [{}] send result attempt {} failed: {}, next attempt in {} ms", id, attempt, e.getMessage(), delay);
+                schedule(delivery, delay);
+            }
+        } catch (RuntimeException e) {
+            log.error("Execution [{}] failed to send results", id, e);
+            abandon(delivery);
+        }
+    }
+
+    private void abandon(PendingDelivery delivery) {
+        abandoned.incrementAndGet();
+        if (!delivery.isDurable()) {
+            complete(delivery);
+            return;
+        }
+        long ageHours = Duration.between(delivery.getCreated(), Instant.now()).toHours();
+        if (maxAgeHours > 0 && ageHours >= maxAgeHours) {
+            log.error("Execution [{}] results undelivered for {} hours, delivery dropped", delivery.getId(), ageHours);
+            drop(delivery);
+        } else if (maxResumeRounds > 0 && delivery.getRounds() >= maxResumeRounds) {
+            log.error("Execution [{}] results undelivered after {} rounds of attempts, delivery dropped", delivery.getId(), delivery.getRounds() + 1);
+            drop(delivery);
+        } else {
+            // The outbox entry is kept, so the delivery survives restart meanwhile
+            log.warn("Execution [{}] results are kept in outbox, delivery is resumed in {} min", delivery.getId(), TimeUnit.MILLISECONDS.toMinutes(resumeIntervalMs));
+            delivery.startRound();
+            schedule(delivery, resumeIntervalMs);
+        }
+    }
+
+    private void drop(PendingDelivery delivery) {
+        dropped.incrementAndGet();
+        complete(delivery);
+    }
+
+    /**
+     * Client errors are the answer of the central node to this very request, except for timeout and rate limiting
+     */
+    static boolean isRejected(RestClientException e) {
+        if (!(e instanceof HttpClientErrorException)) {
+            return false;
+        }
+        int status = ((HttpClientErrorException) e).getRawStatusCode();
+        return status != HttpStatus.REQUEST_TIMEOUT.value() && status != HttpStatus.TOO_MANY_REQUESTS.value();
+    }
+
+    private void complete(PendingDelivery delivery) {
+        pending.remove(delivery.getKey(), delivery);
+        delivery.dispose();
+    }
+
+    long backoff(int attempt) {
+        CallbackRetryProperties.ExponentialBackoffPolicyProperties backoff = policy.getBackoffPolicy();
+        double delay = backoff.getInitialIntervalMs() * Math.pow(backoff.getMultiplier(), attempt - 1);
+        return (long) Math.min(delay, backoff.getMaxIntervalMs());
+    }
+
+    private ResponseEntity<String> executeSend(PendingDelivery delivery) {
+        HttpHeaders jsonHeader = new HttpHeaders();
+        jsonHeader.setContentType(MediaType.APPLICATION_JSON);
+        HttpEntity<AnalysisResultDTO> analysisRequestHttpEntity = new HttpEntity<>(delivery.getResult(), jsonHeader);
+        LinkedMultiValueMap<String, Object> multipartRequest = new LinkedMultiValueMap<>();
+        multipartRequest.add("analysisResult", analysisRequestHttpEntity);
+        delivery.getResources().forEach(f -> multipartRequest.add("file", f));
+        if (delivery.getStdout() != null) {
+            multipartRequest.add("stdout", delivery.getStdout());
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+        HttpEntity<LinkedMultiValueMap<String, Object>> entity = new HttpEntity<>(multipartRequest, headers);
+        return uploadRestTemplate.exchange(delivery.getUrl(), HttpMethod.POST, entity, String.class, delivery.getId(), delivery.getPassword());
+    }
+
+    @ManagedAttribute
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    @ManagedAttribute
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    @ManagedAttribute
+    public long getFailedAttemptCount() {
+        return failedAttempts.get();
+    }
+
+    @ManagedAttribute
+    public long getAbandonedCount() {
+        return abandoned.get();
+    }
+
+    @ManagedAttribute
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Age of the oldest delivery still waiting, i.e. how much the results are currently delayed.
+     */
+    @ManagedAttribute
+    public long getOldestPendingAgeSec() {
+        Instant now = Instant.now();
+        return pending.values().stream().mapToLong(delivery ->
+                Duration.between(delivery.getCreated(), now).getSeconds()
+        ).max().orElse(0);
+    }
+
+    /**
+     * The longest time any pending delivery still has to wait for its next attempt.
+     */
+    @ManagedAttribute
+    public long getMaxNextAttemptDelayMs() {
+        Instant now = Instant.now();
+        return pending.values().stream().mapToLong(delivery ->
+                Math.max(0, Duration.between(now, delivery.getNextAttempt()).toMillis())
+        ).max().orElse(0);
+    }
+}
@@ -0,0 +1,389 @@
+package com.odysseusinc.arachne.executionengine.execution.callback;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisResultDTO;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * A journaled on-disk store of undelivered results.
+ * Every entry is a directory named {@code <key>-<timestamp>} holding the journal record (result DTO plus callback
+ * coordinates), the packed result files and the process log moved out of the temporary directories. An entry is
+ * removed only once the delivery succeeds, so results survive both engine restarts and exhausted retries.
+ * Callback passwords are journaled encrypted with a key kept in a separate file, outside of the outbox.
+ * The outbox is kept under the user home by default, as temporary directories are often wiped on reboot.
+ * Results which would take the outbox over its size limit are not stored, and are delivered from memory only.
+ */
+@Slf4j
+@Service
+@ManagedResource
+public class ResultOutbox {
+    private static final String JOURNAL = "delivery.json";
+    private static final String FILES = "files";
+    private static final String STDOUT = "stdout";
+    private static final String STAGING_SUFFIX = ".staging";
+    private static final Pattern KEY = Pattern.compile("\\d+(\\.\\d+)?");
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Path dir;
+    private final Path keyFile;
+    private final long maxSizeMb;
+    private final ObjectMapper mapper;
+    /**
+     * Names of staging entries being written by this process, which must not be taken for leftovers of a crash
+     */
+    private final Set<String> writing = ConcurrentHashMap.newKeySet();
+    private volatile SecretKey key;
+
+    public ResultOutbox(String dir, ObjectMapper mapper) {
+        this(dir, null, 0, mapper);
+    }
+
+    @Autowired
+    public ResultOutbox(
+            @Value("${callback.outbox.dir:}") String dir, @Value("${callback.outbox.keyFile:}") String keyFile,
+            @Value("${callback.outbox.maxSizeMb:0}") long maxSizeMb, ObjectMapper mapper
+    ) {
+        this.dir = StringUtils.isBlank(dir) ? Paths.get(System.getProperty("user.home"), ".execution-engine", "outbox") : Paths.get(dir);
+        this.keyFile = StringUtils.isBlank(keyFile) ? this.dir.resolveSibling(this.dir.getFileName() + ".key") : Paths.get(keyFile);
+        this.maxSizeMb = maxSizeMb;
+        this.mapper = mapper;
+    }
+
+    /**
+     * Persists the delivery, moving its files into the outbox.
+     * @return a durable delivery backed by the outbox entry, or the original delivery if it cannot be persisted.
+     */
+    public PendingDelivery store(PendingDelivery delivery) {
+        Long id = delivery.getId();
+        String key = delivery.getKey();
+        long size = delivery.getResources().stream().mapToLong(resource -> resource.getFile().length()).sum()
+                + (delivery.getStdout() != null ? delivery.getStdout().getFile().length() : 0);
+        long used = getSizeBytes();
+        if (maxSizeMb > 0 && used + size > maxSizeMb << 20) {
+            log.error("Execution [{}] results of {} MB do not fit into outbox [{}], {} of {} MB used, delivering from memory only",
+                    id, size >> 20, dir, used >> 20, maxSizeMb
+            );
+            return delivery;
+        }
+        Path entry = dir.resolve(key + "-" + delivery.getCreated().toEpochMilli());
+        Path staging = dir.resolve(entry.getFileName() + STAGING_SUFFIX);
+        Map<Path, Path> moved = new LinkedHashMap<>();
+        writing.add(staging.getFileName().toString());
+        try {
+            createPrivateDirectories(staging.resolve(FILES));
+            Record record = new Record();
+            record.setId(id);
+            record.setKey(key);
+            record.setUrl(delivery.getUrl());
+            record.setEncryptedPassword(encrypt(delivery.getPassword()));
+            record.setCreated(delivery.getCreated().toEpochMilli());
+            record.setResult(delivery.getResult());
+            List<String> files = new ArrayList<>();
+            List<FileSystemResource> resources = delivery.getResources();
+            for (int i = 0; i < resources.size(); i++) {
+                Path source = resources.get(i).getFile().toPath();
+                // Keep original name, as it is used as a file name for the multipart upload
+                Path target = staging.resolve(FILES).resolve(String.valueOf(i)).resolve(source.getFileName().toString());
+                Files.createDirectories(target.getParent());
+                Files.move(source, target);
+                moved.put(source, target);
+                files.add(staging.relativize(target).toString());
+            }
+            record.setFiles(files);
+            if (delivery.getStdout() != null) {
+                Path source = delivery.getStdout().getFile().toPath();
+                Path target = staging.resolve(STDOUT).resolve(source.getFileName().toString());
+                Files.createDirectories(target.getParent());
+                Files.move(source, target);
+                moved.put(source, target);
+                record.setStdout(staging.relativize(target).toString());
+            }
+            writeRecord(staging, record);
+            moveAtomically(staging, entry);
+        } catch (IOException | RuntimeException e) {
+            log.error("Execution [{}] failed to store results in outbox [{}], delivering from memory only: {}", id, dir, e.getMessage());
+            rollback(moved);
+            FileUtils.deleteQuietly(staging.toFile());
+            return delivery;
+        } finally {
+            writing.remove(staging.getFileName().toString());
+        }
+        // Packed files have been moved out, so the temporary directories are no longer needed
+        delivery.dispose();
+        removeOlder(key, entry);
+        log.info("Execution [{}] results stored in outbox [{}]", id, entry);
+        return load(entry);
+    }
+
+    /**
+     * Loads all stored deliveries, removing incomplete entries and keeping only the latest entry per delivery key.
+     */
+    public List<PendingDelivery> restore() {
+        if (!Files.isDirectory(dir)) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> entries = Files.list(dir)) {
+            Map<String, List<Path>> byKey = entries.filter(entry -> {
+                String name = entry.getFileName().toString();
+                if (writing.contains(name)) {
+                    return false;
+                }
+                if (name.endsWith(STAGING_SUFFIX) || !Files.isRegularFile(entry.resolve(JOURNAL))) {
+                    log.info("Removing incomplete outbox entry [{}]", entry);
+                    FileUtils.deleteQuietly(entry.toFile());
+                    return false;
+                }
+                return parseKey(entry) != null;
+            }).collect(Collectors.groupingBy(ResultOutbox::parseKey));
+            return byKey.entrySet().stream().map(group -> {
+                List<Path> sorted = group.getValue().stream().sorted(Comparator.comparing(ResultOutbox::parseCreated).reversed()).collect(Collectors.toList());
+                sorted.stream().skip(1).forEach(duplicate -> {
+                    log.info("Delivery [{}] removing superseded outbox entry [{}]", group.getKey(), duplicate);
+                    FileUtils.deleteQuietly(duplicate.toFile());
+                });
+                return sorted.get(0);
+            }).map(entry -> {
+                try {
+                    return load(entry);
+                } catch (UncheckedIOException | IllegalStateException e) {
+                    log.error("Outbox entry [{}] is unreadable and will be skipped: {}", entry, e.getMessage());
+                    return null;
+                }
+            }).filter(Objects::nonNull).collect(Collectors.toList());
+        } catch (IOException e) {
+            log.error("Error reading outbox [{}]: {}", dir, e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    @ManagedAttribute
+    public int getEntryCount() {
+        String[] entries = dir.toFile().list((parent, name) -> !name.endsWith(STAGING_SUFFIX));
+        return entries != null ? entries.length : 0;
+    }
+
+    @ManagedAttribute
+    public long getSizeMb() {
+        return getSizeBytes() >> 20;
+    }
+
+    private long getSizeBytes() {
+        try {
+            return Files.isDirectory(dir) ? FileUtils.sizeOfDirectory(dir.toFile()) : 0;
+        } catch (UncheckedIOException | IllegalArgumentException e) {
+            // Entry removed while the outbox was walked
+            return 0;
+        }
+    }
+
+    private PendingDelivery load(Path entry) {
+        Record record = readRecord(entry);
+        List<FileSystemResource> resources = record.getFiles().stream().map(file ->
+                new FileSystemResource(entry.resolve(file).toFile())
+        ).collect(Collectors.toList());
+        // The result DTO is not retained, it is read from the journal for every attempt
+        Supplier<AnalysisResultDTO> result = () -> readRecord(entry).getResult();
+        // Entries written before partial deliveries were introduced have no key
+        String key = record.getKey() != null ? record.getKey() : String.valueOf(record.getId());
+        FileSystemResource stdout = record.getStdout() != null ? new FileSystemResource(entry.resolve(record.getStdout()).toFile()) : null;
+        // Entries written before passwords were encrypted have them in plain text
+        String password = record.getEncryptedPassword() != null ? decrypt(record.getEncryptedPassword()) : record.getPassword();
+        return new PendingDelivery(
+                key, record.getId(), record.getUrl(), password, resources, stdout, true, Instant.ofEpochMilli(record.getCreated()),
+                result, () -> FileUtils.deleteQuietly(entry.toFile())
+        );
+    }
+
+    private Record readRecord(Path entry) {
+        try {
+            return mapper.readValue(entry.resolve(JOURNAL).toFile(), Record.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeRecord(Path entry, Record record) throws IOException {
+        Path tmp = entry.resolve(JOURNAL + ".tmp");
+        Files.createFile(tmp);
+        setOwnerOnly(tmp, "rw-------");
+        mapper.writeValue(tmp.toFile(), record);
+        moveAtomically(tmp, entry.resolve(JOURNAL));
+    }
+
+    private String encrypt(String password) throws IOException {
+        if (password == null) {
+            return null;
+        }
+        try {
+            byte[] iv = new byte[IV_BYTES];
+            RANDOM.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.ENCRYPT_MODE, getKey(true), new GCMParameterSpec(TAG_BITS, iv));
+            byte[] encrypted = cipher.doFinal(password.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(ByteBuffer.allocate(iv.length + encrypted.length).put(iv).put(encrypted).array());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to encrypt callback password", e);
+        }
+    }
+
+    private String decrypt(String encrypted) {
+        try {
+            byte[] bytes = Base64.getDecoder().decode(encrypted);
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.DECRYPT_MODE, getKey(false), new GCMParameterSpec(TAG_BITS, bytes, 0, IV_BYTES));
+            return new String(cipher.doFinal(bytes, IV_BYTES, bytes.length - IV_BYTES), StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException | IOException | IllegalArgumentException e) {
+            throw new IllegalStateException("Failed to decrypt callback password with key [" + keyFile + "]: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the key, generating it on the first store
+     */
+    private synchronized SecretKey getKey(boolean create) throws IOException, GeneralSecurityException {
+        if (key == null) {
+            if (Files.isRegularFile(keyFile)) {
+                key = new SecretKeySpec(Files.readAllBytes(keyFile), "AES");
+            } else if (create) {
+                KeyGenerator generator = KeyGenerator.getInstance("AES");
+                generator.init(256);
+                SecretKey generated = generator.generateKey();
+                Files.createDirectories(keyFile.toAbsolutePath().getParent());
+                Path tmp = keyFile.resolveSibling(keyFile.getFileName() + ".tmp");
+                Files.deleteIfExists(tmp);
+                Files.createFile(tmp);
+                setOwnerOnly(tmp, "rw-------");
+                Files.write(tmp, generated.getEncoded());
+                moveAtomically(tmp, keyFile);
+                log.info("Generated outbox key [{}]", keyFile);
+                key = generated;
+            } else {
+                throw new IOException("Key file [" + keyFile + "] not found");
+            }
+        }
+        return key;
+    }
+
+    private void removeOlder(String key, Path current) {
+        try (Stream<Path> entries = Files.list(dir)) {
+            entries.filter(entry -> !entry.equals(current) && key.equals(parseKey(entry))).forEach(entry -> {
+                log.info("Delivery [{}] removing superseded outbox entry [{}]", key, entry);
+                FileUtils.deleteQuietly(entry.toFile());
+            });
+        } catch (IOException e) {
+            log.warn("Delivery [{}] failed to clean up superseded outbox entries: {}", key, e.getMessage());
+        }
+    }
+
+    private void createPrivateDirectories(Path path) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            Files.createDirectories(dir);
+            // The journal keeps callback passwords, so the outbox should not be readable by anyone else
+            setOwnerOnly(dir, "rwx------");
+        }
+        Files.createDirectories(path);
+    }
+
+    private static void setOwnerOnly(Path path, String permissions) throws IOException {
+        if (path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString(permissions));
+        }
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void rollback(Map<Path, Path> moved) {
+        moved.forEach((source, target) -> {
+            try {
+                Files.move(target, source);
+            } catch (IOException e) {
+                log.error("Failed to move [{}] back to [{}]: {}", target, source, e.getMessage());
+            }
+        });
+    }
+
+    private static String parseKey(Path entry) {
+        String name = entry.getFileName().toString();
+        String key = StringUtils.substringBefore(name, "-");
+        boolean valid = !name.endsWith(STAGING_SUFFIX) && KEY.matcher(key).matches() && NumberUtils.isDigits(StringUtils.substringAfter(name, "-"));
+        return valid ? key : null;
+    }
+
+    private static Long parseCreated(Path entry) {
+        return Long.valueOf(StringUtils.substringAfter(entry.getFileName().toString(), "-"));
+    }
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Record {
+        private Long id;
+        private String key;
+        private String url;
+        /**
+         * Plain text password of entries stored by earlier versions, only read
+         */
+        private String password;
+        private String encryptedPassword;
+        private long created;
+        private List<String> files = new ArrayList<>();
+        private String stdout;
+        private AnalysisResultDTO result;
+    }
+}
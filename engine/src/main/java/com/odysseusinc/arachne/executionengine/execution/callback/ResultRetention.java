@@ -0,0 +1,253 @@
+package com.odysseusinc.arachne.executionengine.execution.callback;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.ResultManifestDTO;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps packed results of analyses which requested them to be pulled, instead of uploading.
+ * Every execution has a directory named by its id, holding the files and a record with a SHA-256 digest of the
+ * callback password and expiration time. Files are served until the receiver acknowledges them or the retention period is over.
+ * Retained results are kept under the user home by default, so that they are not lost when temporary files are wiped.
+ */
+@Slf4j
+@Service
+@ManagedResource
+public class ResultRetention {
+    private static final String RECORD = "retention.json";
+    private static final long SWEEP_INTERVAL_MIN = 15;
+
+    private final Path dir;
+    private final long ttlMs;
+    private final ObjectMapper mapper;
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    @Autowired
+    public ResultRetention(
+            @Value("${callback.retention.dir:}") String dir, @Value("${callback.retention.ttlHours:72}") long ttlHours, ObjectMapper mapper
+    ) {
+        this.dir = StringUtils.isBlank(dir) ? Paths.get(System.getProperty("user.home"), ".execution-engine", "retained") : Paths.get(dir);
+        this.ttlMs = TimeUnit.HOURS.toMillis(ttlHours);
+        this.mapper = mapper;
+        scheduler = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("result-retention-"));
+    }
+
+    @PostConstruct
+    public void init() {
+        scheduler.scheduleWithFixedDelay(this::sweep, 0, SWEEP_INTERVAL_MIN, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Moves the packed files into the retention directory, replacing anything kept for the same execution before.
+     * @return manifest of the retained files, to be sent to the receiver instead of the files.
+     */
+    public ResultManifestDTO retain(Long id, String password, List<FileSystemResource> files) throws IOException {
+        Path entry = dir.resolve(String.valueOf(id));
+        FileUtils.deleteQuietly(entry.toFile());
+        ResultManifestDTO manifest = new ResultManifestDTO();
+        manifest.setId(id);
+        manifest.setRetainedUntil(System.currentTimeMillis() + ttlMs);
+        Map<Path, Path> moved = new LinkedHashMap<>();
+        try {
+            createPrivateDirectories(entry);
+            Set<String> names = new HashSet<>();
+            for (FileSystemResource resource : files) {
+                Path source = resource.getFile().toPath();
+                String name = source.getFileName().toString();
+                // Uncompressed results may have files with the same name in different directories
+                for (int i = 1; name.startsWith(RECORD) || !names.add(name); i++) {
+                    name = i + "_" + source.getFileName();
+                }
+                Path target = entry.resolve(name);
+                Files.move(source, target);
+                moved.put(source, target);
+                ResultManifestDTO.ResultFileDTO file = new ResultManifestDTO.ResultFileDTO();
+                file.setPath(name);
+                file.setSize(Files.size(target));
+                try (InputStream in = Files.newInputStream(target)) {
+                    file.setHash(DigestUtils.sha256Hex(in));
+                }
+                file.setUploaded(false);
+                manifest.getFiles().add(file);
+            }
+            Record record = new Record();
+            record.setPasswordHash(DigestUtils.sha256Hex(password));
+            record.setExpires(manifest.getRetainedUntil());
+            Path tmp = entry.resolve(RECORD + ".tmp");
+            Files.createFile(tmp);
+            setOwnerOnly(tmp, "rw-------");
+            mapper.writeValue(tmp.toFile(), record);
+            Files.move(tmp, entry.resolve(RECORD));
+        } catch (IOException | RuntimeException e) {
+            // Give the files back, so that they can be uploaded instead
+            moved.forEach((source, target) -> {
+                try {
+                    Files.move(target, source);
+                } catch (IOException ex) {
+                    log.error("Failed to move [{}] back to [{}]: {}", target, source, ex.getMessage());
+                }
+            });
+            FileUtils.deleteQuietly(entry.toFile());
+            throw e;
+        }
+        log.info("Execution [{}] retained {} result files in [{}] for pulling", id, files.size(), entry);
+        return manifest;
+    }
+
+    /**
+     * @return the retained file, or empty if there is no such file, it has expired, or the password does not match.
+     */
+    public Optional<File> find(Long id, String name, String password) {
+        if (!isValidName(name)) {
+            return Optional.empty();
+        }
+        return authorize(id, password).map(entry -> entry.resolve(name).toFile()).filter(File::isFile);
+    }
+
+    /**
+     * Removes files of the execution once the receiver has downloaded them.
+     * @return false if nothing is retained for the execution, or the password does not match.
+     */
+    public boolean release(Long id, String password) {
+        return authorize(id, password).map(entry -> {
+            log.info("Execution [{}] retained results acknowledged, removing [{}]", id, entry);
+            return FileUtils.deleteQuietly(entry.toFile());
+        }).orElse(false);
+    }
+
+    @ManagedAttribute
+    public int getEntryCount() {
+        String[] entries = dir.toFile().list((parent, name) -> NumberUtils.isDigits(name));
+        return entries != null ? entries.length : 0;
+    }
+
+    private Optional<Path> authorize(Long id, String password) {
+        Path entry = dir.resolve(String.valueOf(id));
+        return readRecord(entry).filter(record ->
+                record.getExpires() > System.currentTimeMillis() && password != null && record.getPasswordHash() != null && MessageDigest.isEqual(
+                        DigestUtils.sha256Hex(password).getBytes(StandardCharsets.US_ASCII), record.getPasswordHash().getBytes(StandardCharsets.US_ASCII)
+                )
+        ).map(record -> entry);
+    }
+
+    private Optional<Record> readRecord(Path entry) {
+        File file = entry.resolve(RECORD).toFile();
+        if (!file.isFile()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(mapper.readValue(file, Record.class));
+        } catch (IOException e) {
+            log.warn("Retained results [{}] have unreadable record: {}", entry, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    void sweep() {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<Path> expired = new ArrayList<>();
+        try (Stream<Path> entries = Files.list(dir)) {
+            entries.forEach(entry -> {
+                Optional<Record> record = readRecord(entry);
+                // Entries without a record are either being written, or left by a failed write
+                boolean stale = record.map(r -> r.getExpires() <= now).orElseGet(() -> isOlderThanTtl(entry, now));
+                if (stale) {
+                    expired.add(entry);
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Error reading retained results [{}]: {}", dir, e.getMessage());
+            return;
+        }
+        expired.forEach(entry -> {
+            log.info("Removing expired retained results [{}]", entry);
+            FileUtils.deleteQuietly(entry.toFile());
+        });
+    }
+
+    private boolean isOlderThanTtl(Path entry, long now) {
+        // An entry being written must not be swept even with a short TTL, and writing never takes a sweep interval
+        long grace = Math.max(ttlMs, TimeUnit.MINUTES.toMillis(SWEEP_INTERVAL_MIN));
+        try {
+            return Files.getLastModifiedTime(entry).toMillis() + grace <= now;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void createPrivateDirectories(Path entry) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            Files.createDirectories(dir);
+            // Results are only served to the holder of the callback password, so nobody else should read them here
+            setOwnerOnly(dir, "rwx------");
+        }
+        Files.createDirectories(entry);
+    }
+
+    private static void setOwnerOnly(Path path, String permissions) throws IOException {
+        if (path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString(permissions));
+        }
+    }
+
+    private static boolean isValidName(String name) {
+        return StringUtils.isNotBlank(name) && !RECORD.equals(name) && !name.startsWith(RECORD)
+                && !name.contains("/") && !name.contains("\\") && !".".equals(name) && !"..".equals(name);
+    }
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Record {
+        /**
+         * SHA-256 of the callback password, hex encoded. The password itself is not kept
+         */
+        private String passwordHash;
+        private long expires;
+    }
+}
@@ -0,0 +1,326 @@
+package com.odysseusinc.arachne.executionengine.execution.r;
+
+import com.odysseusinc.arachne.executionengine.config.runtimeservice.RIsolatedRuntimeProperties;
+import com.odysseusinc.arachne.executionengine.execution.Processes;
+import com.odysseusinc.arachne.executionengine.model.descriptor.DescriptorBundle;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps runtime bundles extracted on disk, so that a jail can be built as an overlay on top of the extracted tree
+ * instead of unpacking the whole bundle for every execution.
+ * Entries are keyed by descriptor id and the archive path, size and modification time, which survive restarts
+ * without reading the archive, and are never modified once extracted. When the cache grows over the disk budget,
+ * least recently used entries which are not in use by any jail are removed.
+ * Bundles are extracted in background: an execution which misses the cache unpacks the bundle in its jail as before.
+ */
+@Slf4j
+@Service
+@ManagedResource
+public class BundleCache {
+    private static final String STAGING_SUFFIX = ".staging";
+    private static final String SIZE_SUFFIX = ".size";
+
+    private final RIsolatedRuntimeProperties properties;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Keys of bundles waiting for extraction, so that a burst of misses extracts a bundle once
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    private final ScheduledThreadPoolExecutor extractor;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Autowired
+    public BundleCache(RIsolatedRuntimeProperties properties) {
+        this.properties = properties;
+        extractor = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("bundle-cache-"));
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        Path dir = getDir();
+        try {
+            Files.createDirectories(dir);
+            try (Stream<Path> paths = Files.list(dir)) {
+                paths.forEach(path -> {
+                    String name = path.getFileName().toString();
+                    if (name.endsWith(STAGING_SUFFIX)) {
+                        log.info("Removing incomplete bundle extraction [{}]", path);
+                        Processes.delete(path);
+                    } else if (Files.isDirectory(path)) {
+                        Optional<Long> size = readSize(path);
+                        if (size.isPresent()) {
+                            Entry entry = new Entry(path);
+                            entry.size = size.get();
+                            entry.lastUsed = lastModified(path);
+                            entries.put(name, entry);
+                        } else {
+                            log.info("Removing bundle [{}] of unknown size", path);
+                            Processes.delete(path);
+                        }
+                    }
+                });
+            }
+            log.info("Bundle cache [{}] has {} bundles, {} MB", dir, entries.size(), getSizeMb());
+        } catch (IOException e) {
+            log.error("Bundle cache [{}] is not available: {}", dir, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        extractor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return StringUtils.isNotBlank(properties.getCacheDir());
+    }
+
+    /**
+     * Provides extracted tree of the bundle, if it is cached. Otherwise, the bundle is queued to be extracted
+     * in background and the caller is expected to unpack it on its own.
+     * The tree must not be modified, and the lease must be closed once the jail no longer uses it.
+     * @return empty if the cache is disabled or does not have the bundle yet.
+     */
+    public Optional<Lease> acquire(Long id, DescriptorBundle bundle) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        String key = key(new File(bundle.getPath()), bundle);
+        Entry entry = entries.get(key);
+        Optional<Lease> lease = Optional.empty();
+        // An entry being extracted is locked for the whole extraction, so its size is checked before taking the lock
+        if (entry != null && entry.size >= 0) {
+            synchronized (entry) {
+                if (entries.get(key) == entry && entry.size >= 0) {
+                    hits.incrementAndGet();
+                    entry.leases++;
+                    entry.lastUsed = System.currentTimeMillis();
+                    log.info("Execution [{}] using cached bundle [{}]", id, entry.dir);
+                    lease = Optional.of(new Lease(entry));
+                }
+            }
+        }
+        if (lease.isPresent()) {
+            evict();
+            return lease;
+        }
+        misses.incrementAndGet();
+        if (queued.add(key)) {
+            log.info("Execution [{}] bundle [{}] is not cached yet, queued for extraction", id, bundle.getPath());
+            extractor.execute(() -> {
+                try {
+                    fill(bundle);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Failed to extract bundle [{}] into cache: {}", bundle.getPath(), e.getMessage());
+                } finally {
+                    queued.remove(key);
+                }
+            });
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Extracts the bundle into the cache unless it is there already. Takes as long as tar does, so it must not be
+     * called on the execution path.
+     */
+    public void fill(DescriptorBundle bundle) throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        File archive = new File(bundle.getPath());
+        String key = key(archive, bundle);
+        while (true) {
+            Entry entry = entries.computeIfAbsent(key, k -> new Entry(getDir().resolve(k)));
+            synchronized (entry) {
+                if (entries.get(key) != entry) {
+                    // Evicted while waiting for the lock
+                    continue;
+                }
+                if (entry.size >= 0) {
+                    return;
+                }
+                long started = System.currentTimeMillis();
+                log.info("Extracting bundle [{}] into cache [{}]", archive, entry.dir);
+                try {
+                    extract(archive, entry);
+                } catch (IOException | RuntimeException e) {
+                    entries.remove(key, entry);
+                    throw e;
+                }
+                // Counts as used, so that it is not the first to be evicted before any jail gets it
+                entry.lastUsed = System.currentTimeMillis();
+                log.info("Extracted bundle [{}], {} MB in {} sec", key, entry.size >> 20,
+                        TimeUnit.MILLISECONDS.toSeconds(entry.lastUsed - started)
+                );
+                break;
+            }
+        }
+        evict();
+    }
+
+    private void extract(File archive, Entry entry) throws IOException {
+        Path staging = Paths.get(entry.dir + STAGING_SUFFIX);
+        Processes.delete(staging);
+        Files.createDirectories(staging);
+        // Bundles hold a root file system, so ownership and device files have to be preserved
+        Processes.execAsRoot("tar", "xzf", archive.getAbsolutePath(), "-C", staging.toString());
+        String du = Processes.execAsRoot("du", "-sb", staging.toString());
+        long size = NumberUtils.toLong(StringUtils.substringBefore(du.trim(), "\t"), 0);
+        Processes.delete(entry.dir);
+        Files.move(staging, entry.dir);
+        Files.write(sizeFile(entry.dir), String.valueOf(size).getBytes(StandardCharsets.UTF_8));
+        entry.size = size;
+    }
+
+    private void evict() {
+        long budget = properties.getCacheMaxSizeMb() << 20;
+        if (budget <= 0) {
+            return;
+        }
+        List<Entry> candidates = new ArrayList<>(entries.values());
+        candidates.sort(Comparator.comparingLong(entry -> entry.lastUsed));
+        long total = candidates.stream().mapToLong(entry -> Math.max(entry.size, 0)).sum();
+        for (Entry entry : candidates) {
+            if (total <= budget) {
+                break;
+            }
+            synchronized (entry) {
+                if (entry.leases == 0 && entry.size >= 0) {
+                    log.info("Evicting bundle [{}] of {} MB from cache, last used {}", entry.dir, entry.size >> 20, FileTime.fromMillis(entry.lastUsed));
+                    entries.remove(entry.dir.getFileName().toString(), entry);
+                    total -= entry.size;
+                    entry.size = -1;
+                    Processes.delete(sizeFile(entry.dir));
+                    Processes.delete(entry.dir);
+                }
+            }
+        }
+        if (total > budget) {
+            log.warn("Bundle cache is {} MB over the budget, all remaining bundles are in use", (total - budget) >> 20);
+        }
+    }
+
+    static String key(File archive, DescriptorBundle bundle) {
+        String stamp = DigestUtils.sha256Hex(archive.getAbsolutePath() + ":" + archive.length() + ":" + archive.lastModified());
+        return bundle.getDescriptor().getId().replaceAll("[^A-Za-z0-9_.]", "_") + "-" + stamp.substring(0, 16);
+    }
+
+    @ManagedAttribute
+    public int getBundleCount() {
+        return entries.size();
+    }
+
+    @ManagedAttribute
+    public long getSizeMb() {
+        return entries.values().stream().mapToLong(entry -> Math.max(entry.size, 0)).sum() >> 20;
+    }
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @ManagedAttribute
+    public int getLeaseCount() {
+        return entries.values().stream().mapToInt(entry -> entry.leases).sum();
+    }
+
+    private Path getDir() {
+        return Paths.get(properties.getCacheDir());
+    }
+
+    private static Path sizeFile(Path dir) {
+        return Paths.get(dir + SIZE_SUFFIX);
+    }
+
+    private static Optional<Long> readSize(Path dir) {
+        try {
+            return Optional.of(Long.valueOf(new String(Files.readAllBytes(sizeFile(dir)), StandardCharsets.UTF_8).trim()));
+        } catch (IOException | NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static class Entry {
+        private final Path dir;
+        /**
+         * Size in bytes, negative until extracted
+         */
+        private volatile long size = -1;
+        private volatile long lastUsed;
+        private volatile int leases;
+
+        private Entry(Path dir) {
+            this.dir = dir;
+        }
+    }
+
+    public static class Lease implements AutoCloseable {
+        private final Entry entry;
+        private boolean closed;
+
+        private Lease(Entry entry) {
+            this.entry = entry;
+        }
+
+        public Path getDir() {
+            return entry.dir;
+        }
+
+        @Override
+        public void close() {
+            synchronized (entry) {
+                if (!closed) {
+                    closed = true;
+                    entry.leases--;
+                    entry.lastUsed = System.currentTimeMillis();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.odysseusinc.arachne.executionengine.execution.r;
+
+import com.odysseusinc.arachne.executionengine.config.runtimeservice.RIsolatedRuntimeProperties;
+import com.odysseusinc.arachne.executionengine.model.descriptor.Descriptor;
+import com.odysseusinc.arachne.executionengine.model.descriptor.ResourceLimits;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import javax.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * Places each isolated execution into its own cgroup v2 with memory, CPU and I/O limits.
+ * The engine only decides the cgroup and its limits, jail.sh creates the cgroup and moves the jail into it,
+ * and cleanup.sh removes it. On hosts without cgroup v2 nothing is done.
+ */
+@Slf4j
+@Service
+@ManagedResource
+public class CgroupManager {
+    private static final long CPU_PERIOD_US = 100_000;
+    private static final String MAX = "max";
+
+    private final RIsolatedRuntimeProperties properties;
+    private final Path root;
+    private volatile boolean available;
+
+    private final AtomicLong oomKilled = new AtomicLong();
+
+    @Autowired
+    public CgroupManager(RIsolatedRuntimeProperties properties) {
+        this(properties, Paths.get("/sys/fs/cgroup"));
+    }
+
+    CgroupManager(RIsolatedRuntimeProperties properties, Path root) {
+        this.properties = properties;
+        this.root = root;
+    }
+
+    @PostConstruct
+    public void init() {
+        available = Files.isRegularFile(root.resolve("cgroup.controllers"));
+        if (StringUtils.isBlank(properties.getCgroupParent())) {
+            return;
+        }
+        if (available) {
+            log.info("Executions run in cgroups under [{}], default limits: memory {}, cpu {}, io {}", properties.getCgroupParent(),
+                    memoryMax(null), cpuMax(null), StringUtils.defaultIfEmpty(ioMax(null), "none")
+            );
+        } else {
+            log.info("Executions run without resource limits, cgroup v2 is not available");
+        }
+    }
+
+    public boolean isEnabled() {
+        return available && StringUtils.isNotBlank(properties.getCgroupParent());
+    }
+
+    /**
+     * Provides cgroup settings for jail.sh, with the limits requested by descriptor applied within the ceilings.
+     * @return empty if cgroups are not used.
+     */
+    public Optional<Cgroup> forExecution(Long id, Descriptor descriptor) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        ResourceLimits limits = descriptor.getLimits();
+        Cgroup cgroup = new Cgroup(Paths.get(properties.getCgroupParent(), "analysis-" + id), memoryMax(limits), cpuMax(limits), ioMax(limits));
+        log.info("Execution [{}] limits: memory {}, cpu {}, io {}", id, cgroup.memoryMax, cgroup.cpuMax, StringUtils.defaultIfEmpty(cgroup.ioMax, "none"));
+        return Optional.of(cgroup);
+    }
+
+    String memoryMax(ResourceLimits limits) {
+        long mb = limit(limits, ResourceLimits::getMemoryMb, properties.getCgroupMemoryMb(), properties.getCgroupMaxMemoryMb());
+        return mb > 0 ? String.valueOf(mb << 20) : MAX;
+    }
+
+    String cpuMax(ResourceLimits limits) {
+        double cpus = Optional.ofNullable(limits).map(ResourceLimits::getCpus).orElse(properties.getCgroupCpus());
+        if (properties.getCgroupMaxCpus() > 0) {
+            cpus = cpus > 0 ? Math.min(cpus, properties.getCgroupMaxCpus()) : properties.getCgroupMaxCpus();
+        }
+        return (cpus > 0 ? String.valueOf(Math.max(1000, Math.round(cpus * CPU_PERIOD_US))) : MAX) + " " + CPU_PERIOD_US;
+    }
+
+    String ioMax(ResourceLimits limits) {
+        if (StringUtils.isBlank(properties.getCgroupIoDevice())) {
+            return "";
+        }
+        long read = limit(limits, ResourceLimits::getIoReadBps, properties.getCgroupIoReadBps(), properties.getCgroupMaxIoBps());
+        long write = limit(limits, ResourceLimits::getIoWriteBps, properties.getCgroupIoWriteBps(), properties.getCgroupMaxIoBps());
+        return properties.getCgroupIoDevice() + " rbps=" + (read > 0 ? read : MAX) + " wbps=" + (write > 0 ? write : MAX);
+    }
+
+    private static long limit(ResourceLimits limits, Function<ResourceLimits, Long> requested, long defaultValue, long ceiling) {
+        long value = Optional.ofNullable(limits).map(requested).orElse(defaultValue);
+        if (ceiling > 0) {
+            return value > 0 ? Math.min(value, ceiling) : ceiling;
+        }
+        return value;
+    }
+
+    /**
+     * Number of processes of the execution killed by the kernel for running out of the memory limit.
+     * Must be read before the cgroup is removed by cleanup.
+     */
+    public long getOomKills(Long id, Cgroup cgroup) {
+        Map<String, Long> events = new HashMap<>();
+        try {
+            for (String line : Files.readAllLines(cgroup.getDir().resolve("memory.events"), StandardCharsets.UTF_8)) {
+                String[] parts = StringUtils.split(line);
+                if (parts.length == 2 && NumberUtils.isDigits(parts[1])) {
+                    events.put(parts[0], Long.parseLong(parts[1]));
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Execution [{}] memory events are not available: {}", id, e.getMessage());
+        }
+        long kills = events.getOrDefault("oom_kill", 0L);
+        if (kills > 0) {
+            oomKilled.incrementAndGet();
+            log.info("Execution [{}] had {} processes killed for exceeding memory limit {}", id, kills, cgroup.memoryMax);
+        }
+        return kills;
+    }
+
+    @ManagedAttribute
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Number of executions which ran out of memory
+     */
+    @ManagedAttribute
+    public long getOomKilledCount() {
+        return oomKilled.get();
+    }
+
+    public static class Cgroup {
+        private final Path dir;
+        private final String memoryMax;
+        private final String cpuMax;
+        private final String ioMax;
+
+        private Cgroup(Path dir, String memoryMax, String cpuMax, String ioMax) {
+            this.dir = dir;
+            this.memoryMax = memoryMax;
+            this.cpuMax = cpuMax;
+            this.ioMax = ioMax;
+        }
+
+        public Path getDir() {
+            return dir;
+        }
+
+        public String getMemoryMax() {
+            return memoryMax;
+        }
+
+        /**
+         * Environment for jail.sh
+         */
+        public Map<String, String> getEnv() {
+            Map<String, String> env = new HashMap<>();
+            env.put("CGROUP_DIR", dir.toString());
+            env.put("CGROUP_MEMORY_MAX", memoryMax);
+            env.put("CGROUP_CPU_MAX", cpuMax);
+            env.put("CGROUP_IO_MAX", ioMax);
+            return env;
+        }
+    }
+}
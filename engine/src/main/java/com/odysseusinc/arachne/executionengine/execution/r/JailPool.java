@@ -0,0 +1,230 @@
+package com.odysseusinc.arachne.executionengine.execution.r;
+
+import com.odysseusinc.arachne.executionengine.config.runtimeservice.RIsolatedRuntimeProperties;
+import com.odysseusinc.arachne.executionengine.execution.Processes;
+import com.odysseusinc.arachne.executionengine.model.descriptor.DescriptorBundle;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps jails prepared in background for the most requested runtime bundles, so that an execution does not
+ * wait for the bundle to be unpacked. A prepared jail is a directory with the bundle unpacked, which jail.sh moves
+ * into the analysis dir. The number of prepared jails for a bundle follows the number of its requests over the
+ * recent demand window, limited by the pool size.
+ * When {@link BundleCache} is enabled, jails are overlays which take no time to prepare, and the pool keeps the
+ * cached bundles of the most requested descriptors extracted instead.
+ */
+@Slf4j
+@Service
+@ManagedResource
+public class JailPool {
+    private static final long REFILL_INTERVAL_SEC = 60;
+
+    private final RIsolatedRuntimeProperties properties;
+    private final BundleCache bundleCache;
+    private final Map<String, Demand> demand = new ConcurrentHashMap<>();
+    private final Map<String, Deque<Path>> ready = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong prepared = new AtomicLong();
+    private final AtomicLong prepTimeMs = new AtomicLong();
+
+    @Autowired
+    public JailPool(RIsolatedRuntimeProperties properties, BundleCache bundleCache) {
+        this.properties = properties;
+        this.bundleCache = bundleCache;
+        scheduler = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("jail-pool-"));
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        // Jails prepared by a previous run cannot be matched to bundles reliably
+        try (Stream<Path> paths = Files.list(Files.createDirectories(getDir()))) {
+            paths.forEach(Processes::delete);
+        } catch (IOException e) {
+            log.error("Jail pool [{}] is not available: {}", getDir(), e.getMessage());
+            return;
+        }
+        log.info("Jail pool enabled in [{}], up to {} jails for {} most requested bundles", getDir(), properties.getPoolSize(), properties.getPoolBundles());
+        scheduler.scheduleWithFixedDelay(this::refill, REFILL_INTERVAL_SEC, REFILL_INTERVAL_SEC, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return properties.getPoolSize() > 0;
+    }
+
+    /**
+     * Records the demand for the bundle and takes a jail prepared for it, if there is one.
+     * The jail directory is handed over to the caller, and is expected to be emptied and removed by jail.sh.
+     */
+    public Optional<Path> claim(Long id, DescriptorBundle bundle) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        String key = key(bundle);
+        demand.computeIfAbsent(key, k -> new Demand(bundle)).record(bundle);
+        Optional<Path> jail = Optional.ofNullable(ready.get(key)).map(Deque::pollFirst);
+        if (jail.isPresent()) {
+            hits.incrementAndGet();
+            log.info("Execution [{}] claimed prepared jail [{}]", id, jail.get());
+        } else if (!bundleCache.isEnabled()) {
+            misses.incrementAndGet();
+        }
+        scheduler.execute(this::refill);
+        return jail;
+    }
+
+    private void refill() {
+        long windowStart = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(properties.getPoolDemandWindowMin());
+        List<Map.Entry<String, Demand>> popular = demand.entrySet().stream()
+                .filter(entry -> entry.getValue().count(windowStart) > 0)
+                .sorted(Comparator.comparingInt((Map.Entry<String, Demand> entry) -> entry.getValue().count(windowStart)).reversed())
+                .limit(properties.getPoolBundles())
+                .collect(Collectors.toList());
+        List<String> keys = popular.stream().map(Map.Entry::getKey).collect(Collectors.toList());
+        // Jails of bundles which are no longer popular, or have been replaced, take disk space for nothing
+        ready.keySet().stream().filter(key -> !keys.contains(key)).collect(Collectors.toList()).forEach(key ->
+                Optional.ofNullable(ready.remove(key)).ifPresent(jails -> jails.forEach(Processes::delete))
+        );
+        for (Map.Entry<String, Demand> entry : popular) {
+            DescriptorBundle bundle = entry.getValue().getBundle();
+            if (bundleCache.isEnabled()) {
+                try {
+                    bundleCache.fill(bundle);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Failed to extract bundle [{}] into cache: {}", bundle.getPath(), e.getMessage());
+                }
+                continue;
+            }
+            Deque<Path> jails = ready.computeIfAbsent(entry.getKey(), k -> new ConcurrentLinkedDeque<>());
+            int target = Math.min(properties.getPoolSize(), entry.getValue().count(windowStart));
+            while (jails.size() < target && !Thread.currentThread().isInterrupted()) {
+                try {
+                    jails.addLast(prepare(bundle));
+                } catch (IOException e) {
+                    log.warn("Failed to prepare jail for bundle [{}]: {}", bundle.getPath(), e.getMessage());
+                    break;
+                }
+            }
+        }
+    }
+
+    private Path prepare(DescriptorBundle bundle) throws IOException {
+        long started = System.currentTimeMillis();
+        Path jail = Files.createTempDirectory(getDir(), "jail");
+        try {
+            Processes.execAsRoot("tar", "xzf", new File(bundle.getPath()).getAbsolutePath(), "-C", jail.toString());
+        } catch (IOException e) {
+            Processes.delete(jail);
+            throw e;
+        }
+        long elapsed = System.currentTimeMillis() - started;
+        prepared.incrementAndGet();
+        prepTimeMs.addAndGet(elapsed);
+        log.info("Prepared jail [{}] for bundle [{}] in {} ms", jail, bundle.getPath(), elapsed);
+        return jail;
+    }
+
+    private Path getDir() {
+        return StringUtils.isBlank(properties.getPoolDir())
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "execution-engine", "jails")
+                : Paths.get(properties.getPoolDir());
+    }
+
+    private static String key(DescriptorBundle bundle) {
+        File archive = new File(bundle.getPath());
+        return bundle.getDescriptor().getId() + ":" + archive.getAbsolutePath() + ":" + archive.length() + ":" + archive.lastModified();
+    }
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @ManagedAttribute
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    @ManagedAttribute
+    public int getReadyCount() {
+        return ready.values().stream().mapToInt(Deque::size).sum();
+    }
+
+    @ManagedAttribute
+    public long getPreparedCount() {
+        return prepared.get();
+    }
+
+    @ManagedAttribute
+    public long getAveragePrepTimeMs() {
+        long count = prepared.get();
+        return count == 0 ? 0 : prepTimeMs.get() / count;
+    }
+
+    private static class Demand {
+        private final Deque<Long> requests = new ArrayDeque<>();
+        private volatile DescriptorBundle bundle;
+
+        private Demand(DescriptorBundle bundle) {
+            this.bundle = bundle;
+        }
+
+        private synchronized void record(DescriptorBundle bundle) {
+            this.bundle = bundle;
+            requests.addLast(System.currentTimeMillis());
+        }
+
+        private synchronized int count(long since) {
+            while (!requests.isEmpty() && requests.peekFirst() < since) {
+                requests.pollFirst();
+            }
+            return requests.size();
+        }
+
+        private DescriptorBundle getBundle() {
+            return bundle;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.odysseusinc.arachne.executionengine.execution.r;
+
+import com.odysseusinc.arachne.executionengine.config.runtimeservice.RIsolatedRuntimeProperties;
+import com.odysseusinc.arachne.executionengine.execution.Processes;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Deletes jail file systems in background. cleanup.sh only moves the jail directories into the trash dir, which is a
+ * rename on the same file system, and the actual deletion is done here in batches on a single thread, so that the
+ * results are sent without waiting for it and a burst of completions does not start many concurrent deletions.
+ */
+@Slf4j
+@Service
+@ManagedResource
+public class JailReaper {
+    private static final int BATCH_SIZE = 32;
+    private static final long REAP_INTERVAL_SEC = 60;
+
+    private final RIsolatedRuntimeProperties properties;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final AtomicBoolean requested = new AtomicBoolean();
+
+    private final AtomicLong reaped = new AtomicLong();
+    private final AtomicLong reapTimeMs = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile double lastBatchRate;
+
+    @Autowired
+    public JailReaper(RIsolatedRuntimeProperties properties) {
+        this.properties = properties;
+        scheduler = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("jail-reaper-"));
+    }
+
+    @PostConstruct
+    public void init() {
+        // Also picks up whatever was left in trash by a previous run
+        scheduler.scheduleWithFixedDelay(this::reap, 0, REAP_INTERVAL_SEC, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    public Path getTrashDir() {
+        return StringUtils.isBlank(properties.getTrashDir())
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "execution-engine", "trash")
+                : Paths.get(properties.getTrashDir());
+    }
+
+    /**
+     * Schedules deletion of the trash contents, without waiting for the next periodic run.
+     */
+    public void request() {
+        if (requested.compareAndSet(false, true)) {
+            scheduler.execute(() -> {
+                requested.set(false);
+                reap();
+            });
+        }
+    }
+
+    private void reap() {
+        List<Path> entries = list();
+        for (int from = 0; from < entries.size() && !Thread.currentThread().isInterrupted(); from += BATCH_SIZE) {
+            List<Path> batch = entries.subList(from, Math.min(from + BATCH_SIZE, entries.size()));
+            List<String> command = new ArrayList<>();
+            command.add("rm");
+            command.add("-rf");
+            batch.stream().map(Path::toString).forEach(command::add);
+            long started = System.currentTimeMillis();
+            try {
+                Processes.execAsRoot(command.toArray(new String[0]));
+                long elapsed = System.currentTimeMillis() - started;
+                reaped.addAndGet(batch.size());
+                reapTimeMs.addAndGet(elapsed);
+                lastBatchRate = batch.size() * 1000.0 / Math.max(elapsed, 1);
+                log.debug("Reaped {} jails in {} ms", batch.size(), elapsed);
+            } catch (IOException e) {
+                failed.addAndGet(batch.size());
+                log.error("Failed to delete jails {}: {}", batch, e.getMessage());
+            }
+        }
+    }
+
+    private List<Path> list() {
+        Path dir = getTrashDir();
+        if (!Files.isDirectory(dir)) {
+            return new ArrayList<>();
+        }
+        long staleBefore = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+        try (Stream<Path> paths = Files.list(dir)) {
+            // Hidden entries are still being filled by cleanup.sh, unless left by a failed cleanup long ago
+            return paths.filter(path -> !path.getFileName().toString().startsWith(".") || lastModified(path) < staleBefore)
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            log.error("Error reading trash [{}]: {}", dir, e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Number of jails waiting to be deleted
+     */
+    @ManagedAttribute
+    public int getBacklog() {
+        String[] entries = getTrashDir().toFile().list();
+        return entries != null ? entries.length : 0;
+    }
+
+    @ManagedAttribute
+    public long getReapedCount() {
+        return reaped.get();
+    }
+
+    @ManagedAttribute
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    @ManagedAttribute
+    public long getAverageReapMs() {
+        long count = reaped.get();
+        return count == 0 ? 0 : reapTimeMs.get() / count;
+    }
+
+    /**
+     * Jails deleted per second in the last batch
+     */
+    @ManagedAttribute
+    public double getLastBatchRate() {
+        return lastBatchRate;
+    }
+}
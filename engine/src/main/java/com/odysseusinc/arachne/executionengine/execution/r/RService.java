@@ -52,6 +52,8 @@ public abstract class RService implements ExecutionService {
     protected int killTimeoutSec;
     @Value("${runtime.timeOutSec}")
     protected int runtimeTimeOutSec;
+    @Value("${runtime.inactivityTimeOutSec:0}")
+    protected int inactivityTimeOutSec;
 
     @Autowired
     private DescriptorService descriptorService;
@@ -143,7 +145,7 @@ public abstract class RService implements ExecutionService {
 
     private String getUserHome() {
         String userHome = System.getProperty("user.home");
-        return StringUtils.defaultString(userHome, RUNTIME_ENV_HOME_VALUE);
+        return Objects.toString(userHome, RUNTIME_ENV_HOME_VALUE);
     }
 
     private String getBigQueryKeyFile(DataSourceUnsecuredDTO dataSource) {
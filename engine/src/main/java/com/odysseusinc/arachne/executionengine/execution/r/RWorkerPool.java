@@ -0,0 +1,452 @@
+package com.odysseusinc.arachne.executionengine.execution.r;
+
+import com.odysseusinc.arachne.executionengine.execution.ProcessTable;
+import com.odysseusinc.arachne.executionengine.execution.Processes;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.NullInputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps R processes started in advance, with the libraries of .Rprofile loaded, so that short analyses do not pay for
+ * R startup. Workers are kept per descriptor, and run one analysis at a time in its own dir, see worker.R.
+ * A worker is replaced after a number of runs, and as soon as an analysis fails, is aborted or times out, or leaves
+ * state the worker can not reset, such as a loaded namespace.
+ * Only analyses run by Rscript directly can use workers. An isolated analysis needs a jail of its own, which a worker
+ * shared by analyses can not provide.
+ */
+@Slf4j
+@Service
+@ManagedResource
+public class RWorkerPool {
+    private static final String WORKER_SCRIPT = "worker.R";
+    private static final String READY = "READY";
+    private static final String DONE = "DONE ";
+    private static final String STALE = "STALE";
+
+    private final String[] command;
+    private final int size;
+    private final int maxRuns;
+    private final int startupTimeoutSec;
+    private final ResourceLoader resourceLoader;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final CustomizableThreadFactory readers = new CustomizableThreadFactory("r-worker-");
+    /**
+     * Workers ready to take an analysis, by descriptor id
+     */
+    private final Map<String, Deque<Worker>> idle = new ConcurrentHashMap<>();
+    private final Set<Worker> workers = ConcurrentHashMap.newKeySet();
+    private volatile Path dir;
+
+    private final AtomicLong warmRuns = new AtomicLong();
+    private final AtomicLong coldRuns = new AtomicLong();
+    private final AtomicLong retired = new AtomicLong();
+
+    @Autowired
+    public RWorkerPool(
+            @Value("${runtime.warmPool.command:Rscript}") String[] command,
+            @Value("${runtime.warmPool.size:0}") int size,
+            @Value("${runtime.warmPool.maxRuns:20}") int maxRuns,
+            @Value("${runtime.warmPool.startupTimeoutSec:120}") int startupTimeoutSec,
+            ResourceLoader resourceLoader
+    ) {
+        this.command = command;
+        this.size = size;
+        this.maxRuns = maxRuns;
+        this.startupTimeoutSec = startupTimeoutSec;
+        this.resourceLoader = resourceLoader;
+        readers.setDaemon(true);
+        scheduler = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("r-worker-pool-"));
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        // Workers start in this dir, so that R loads the same .Rprofile as for analyses
+        dir = Files.createTempDirectory("r-workers");
+        copy("classpath:/Rprofile", dir.resolve(".Rprofile"));
+        copy("classpath:/" + WORKER_SCRIPT, dir.resolve(WORKER_SCRIPT));
+        log.info("Keeping {} warm R workers per descriptor, each replaced after {} runs", size, maxRuns);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        workers.forEach(Worker::kill);
+        if (dir != null) {
+            FileUtils.deleteQuietly(dir.toFile());
+        }
+    }
+
+    public boolean isEnabled() {
+        return size > 0;
+    }
+
+    /**
+     * Starts the analysis on a warm worker of the descriptor, if there is an idle one.
+     * Workers for the descriptor are started in background for the following analyses.
+     * @param logFile file to write the analysis output to
+     * @return process representing the analysis run, or empty if the analysis should be started as usual.
+     */
+    public Optional<Process> submit(Long id, String descriptorId, File workDir, String file, File logFile, Map<String, String> env) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        Deque<Worker> queue = idle.computeIfAbsent(descriptorId, key -> new ConcurrentLinkedDeque<>());
+        Worker worker;
+        do {
+            worker = queue.poll();
+        } while (worker != null && !worker.process.isAlive());
+        replenish(descriptorId);
+        if (worker == null) {
+            coldRuns.incrementAndGet();
+            log.info("Execution [{}] has no warm R worker for descriptor [{}] available", id, descriptorId);
+            return Optional.empty();
+        }
+        try {
+            Job job = worker.run(id, workDir, file, logFile, env);
+            warmRuns.incrementAndGet();
+            log.info("Execution [{}] runs on warm R worker [{}], run {} of {}", id, worker.name, worker.runs, maxRuns);
+            return Optional.of(job);
+        } catch (IOException e) {
+            log.warn("Execution [{}] failed to start on R worker [{}]: {}", id, worker.name, e.getMessage());
+            retire(worker);
+            coldRuns.incrementAndGet();
+            return Optional.empty();
+        }
+    }
+
+    private void replenish(String descriptorId) {
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        // Workers are started one at a time, so that a burst of analyses does not start R many times at once
+        scheduler.execute(() -> {
+            Deque<Worker> queue = idle.computeIfAbsent(descriptorId, key -> new ConcurrentLinkedDeque<>());
+            while (workers.stream().filter(worker -> worker.descriptorId.equals(descriptorId)).count() < size) {
+                try {
+                    queue.offer(start(descriptorId));
+                } catch (IOException | RuntimeException e) {
+                    // Tried again on the next analysis of the descriptor
+                    log.warn("Failed to start R worker for descriptor [{}]: {}", descriptorId, e.getMessage());
+                    return;
+                }
+            }
+        });
+    }
+
+    private Worker start(String descriptorId) throws IOException {
+        Process process = new ProcessBuilder(ArrayUtils.add(command, dir.resolve(WORKER_SCRIPT).toString()))
+                .directory(dir.toFile()).redirectErrorStream(true).start();
+        Worker worker = new Worker(descriptorId, process);
+        workers.add(worker);
+        try {
+            worker.ready.get(startupTimeoutSec, TimeUnit.SECONDS);
+            log.info("R worker [{}] for descriptor [{}] is ready", worker.name, descriptorId);
+            return worker;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            worker.kill();
+            throw new IOException("Interrupted waiting for R worker to start");
+        } catch (ExecutionException | TimeoutException e) {
+            worker.kill();
+            throw new IOException("R worker did not start in " + startupTimeoutSec + " sec: " + e.getMessage());
+        }
+    }
+
+    private void release(Worker worker, int status) {
+        if (status == 0 && !worker.stale && worker.runs < maxRuns && worker.process.isAlive()) {
+            idle.computeIfAbsent(worker.descriptorId, key -> new ConcurrentLinkedDeque<>()).offer(worker);
+        } else {
+            log.info("Retiring R worker [{}] after {} runs, last exit code {}{}", worker.name, worker.runs, status, worker.stale ? ", state not reset" : "");
+            retire(worker);
+        }
+    }
+
+    /**
+     * The worker is replaced once its process is gone
+     */
+    private void retire(Worker worker) {
+        retired.incrementAndGet();
+        worker.kill();
+    }
+
+    private void copy(String resource, Path target) throws IOException {
+        try (InputStream in = resourceLoader.getResource(resource).getInputStream()) {
+            FileUtils.copyToFile(in, target.toFile());
+        }
+    }
+
+    /**
+     * Values are passed to R percent-encoded, as they may have any characters
+     */
+    static String encode(String value) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '.' || c == '_' || c == '-') {
+                sb.append(c);
+            } else {
+                sb.append(String.format("%%%02X", b & 0xFF));
+            }
+        }
+        return sb.toString();
+    }
+
+    @ManagedAttribute
+    public int getWorkerCount() {
+        return workers.size();
+    }
+
+    @ManagedAttribute
+    public int getIdleCount() {
+        return idle.values().stream().mapToInt(Deque::size).sum();
+    }
+
+    @ManagedAttribute
+    public long getWarmRunCount() {
+        return warmRuns.get();
+    }
+
+    @ManagedAttribute
+    public long getColdRunCount() {
+        return coldRuns.get();
+    }
+
+    @ManagedAttribute
+    public long getRetiredCount() {
+        return retired.get();
+    }
+
+    private class Worker {
+        private final String descriptorId;
+        private final Process process;
+        private final String name;
+        private final Writer input;
+        private final CompletableFuture<Void> ready = new CompletableFuture<>();
+        private volatile Job job;
+        private volatile int runs;
+        /**
+         * Set once an analysis left state which the worker could not reset
+         */
+        private volatile boolean stale;
+
+        private Worker(String descriptorId, Process process) {
+            this.descriptorId = descriptorId;
+            this.process = process;
+            this.name = descriptorId + ":" + ProcessTable.pid(process).map(String::valueOf).orElse("?");
+            this.input = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+            readers.newThread(this::read).start();
+        }
+
+        private synchronized Job run(Long id, File workDir, String file, File logFile, Map<String, String> env) throws IOException {
+            List<String> fields = Arrays.asList(workDir.getAbsolutePath(), file, logFile.getAbsolutePath());
+            if (fields.stream().anyMatch(field -> StringUtils.containsAny(field, '\t', '\n', '\r'))) {
+                throw new IOException("Paths with tabs or line breaks are not supported");
+            }
+            // Holds credentials, so it is only readable by the engine. Removed by the worker once read
+            Path envFile = Files.createTempFile(dir, "job-" + id + "-", ".env", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            List<String> lines = env.entrySet().stream().map(entry -> entry.getKey() + "=" + encode(entry.getValue())).collect(Collectors.toList());
+            Files.write(envFile, lines, StandardCharsets.UTF_8);
+            Job job = new Job(this);
+            this.job = job;
+            runs++;
+            try {
+                List<String> request = new ArrayList<>(fields);
+                request.add(envFile.toString());
+                input.write(String.join("\t", request) + "\n");
+                input.flush();
+            } catch (IOException e) {
+                this.job = null;
+                FileUtils.deleteQuietly(envFile.toFile());
+                throw e;
+            }
+            job.status.whenComplete((status, throwable) -> {
+                FileUtils.deleteQuietly(envFile.toFile());
+                release(this, status);
+            });
+            return job;
+        }
+
+        private void read() {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (READY.equals(line)) {
+                        ready.complete(null);
+                    } else if (line.startsWith(DONE)) {
+                        String[] fields = StringUtils.split(line.substring(DONE.length()));
+                        stale |= ArrayUtils.contains(fields, STALE);
+                        complete(fields.length > 0 ? NumberUtils.toInt(fields[0], 1) : 1);
+                    } else {
+                        // Analysis output goes to its own log, this is the worker startup
+                        log.debug("R worker [{}]: {}", name, line);
+                    }
+                }
+            } catch (IOException e) {
+                log.debug("R worker [{}] output is closed: {}", name, e.getMessage());
+            }
+            int exitValue;
+            try {
+                exitValue = process.waitFor();
+            } catch (InterruptedException e) {
+                exitValue = 1;
+            }
+            workers.remove(this);
+            idle.getOrDefault(descriptorId, new ConcurrentLinkedDeque<>()).remove(this);
+            // A worker which failed to start is not replaced until the next analysis
+            boolean started = ready.isDone();
+            ready.completeExceptionally(new IOException("R worker exited with code " + exitValue));
+            // An analysis calling quit() takes the worker down with it
+            complete(exitValue);
+            if (started) {
+                replenish(descriptorId);
+            }
+        }
+
+        private void complete(int status) {
+            Job current = job;
+            job = null;
+            if (current != null) {
+                current.status.complete(status);
+            }
+        }
+
+        private void kill() {
+            List<ProcessTable.Entry> tree = ProcessTable.pid(process).map(pid -> {
+                try {
+                    return ProcessTable.read(ProcessTable.PROC).tree(pid);
+                } catch (IOException e) {
+                    return new ArrayList<ProcessTable.Entry>();
+                }
+            }).orElseGet(ArrayList::new);
+            process.destroyForcibly();
+            // Processes started by the analysis are not taken down with R
+            if (tree.size() > 1) {
+                try {
+                    Processes.exec(ArrayUtils.addAll(new String[]{"kill", "-KILL"},
+                            tree.subList(1, tree.size()).stream().map(entry -> String.valueOf(entry.getPid())).toArray(String[]::new)
+                    ));
+                } catch (IOException e) {
+                    log.debug("R worker [{}] killing processes: {}", name, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Analysis run on a worker, represented as a process for the overseer.
+     * Destroying it takes the worker down, as the analysis can not be stopped otherwise.
+     */
+    static class Job extends Process {
+        private final Worker worker;
+        private final CompletableFuture<Integer> status = new CompletableFuture<>();
+
+        private Job(Worker worker) {
+            this.worker = worker;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return NullOutputStream.INSTANCE;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new NullInputStream(0);
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return new NullInputStream(0);
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            try {
+                return status.get();
+            } catch (ExecutionException e) {
+                return 1;
+            }
+        }
+
+        @Override
+        public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+            try {
+                status.get(timeout, unit);
+                return true;
+            } catch (TimeoutException e) {
+                return false;
+            } catch (ExecutionException e) {
+                return true;
+            }
+        }
+
+        @Override
+        public int exitValue() {
+            Integer value = status.getNow(null);
+            if (value == null) {
+                throw new IllegalThreadStateException("Analysis is running on R worker " + worker.name);
+            }
+            return value;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return !status.isDone();
+        }
+
+        @Override
+        public void destroy() {
+            worker.kill();
+        }
+
+        @Override
+        public Process destroyForcibly() {
+            worker.kill();
+            return this;
+        }
+    }
+}
@@ -0,0 +1,550 @@
+package com.odysseusinc.arachne.executionengine.execution.r;
+
+import com.odysseusinc.arachne.executionengine.config.runtimeservice.RIsolatedRuntimeProperties;
+import com.odysseusinc.arachne.executionengine.execution.Processes;
+import com.odysseusinc.arachne.executionengine.model.descriptor.DescriptorBundle;
+import com.odysseusinc.arachne.executionengine.model.descriptor.r.RDependency;
+import com.odysseusinc.arachne.executionengine.model.descriptor.r.RDependencySourceType;
+import com.odysseusinc.arachne.executionengine.model.descriptor.r.RExecutionRuntime;
+import com.odysseusinc.arachne.executionengine.service.impl.DescriptorServiceImpl;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps R packages required by renv on the host, so that they are not installed again in every jail.
+ * Packages of the analysis renv.lock which the runtime environment lacks are looked up in the cache and linked into
+ * the renv project library, where renv finds them installed. The cache is bind-mounted read-only into the jail by
+ * jail.sh for the links to resolve.
+ * The cache never takes anything written in a jail, which is under control of the analysis. Packages renv had to
+ * install are installed again by the engine in background with renv-install.sh, in a clean root unpacked from the
+ * bundle, and published only if renv hash of the result matches the Hash in renv.lock. Only the location of the
+ * project library is taken from the jail.
+ * Entries are keyed by package name, version, source, R version and hash, and are never modified once published. When
+ * the cache grows over the disk budget, least recently used entries which are not linked by a running execution are
+ * removed.
+ */
+@Slf4j
+@Service
+@ManagedResource
+public class RenvCache {
+    /**
+     * Location of the cache in the jail, see jail.sh
+     */
+    static final String MOUNT_POINT = "/renv-cache";
+    private static final String RENV_LOCK = "renv.lock";
+    private static final String LIBRARY = "renv/library";
+    private static final String DESCRIPTION = "DESCRIPTION";
+    private static final String PACKAGES = "packages";
+    private static final String STAGING = "staging";
+    private static final String META_SUFFIX = ".meta";
+    private static final String HASH_SUFFIX = ".hash";
+    private static final String LOG_SUFFIX = ".log";
+    private static final Pattern COMMIT = Pattern.compile("[0-9a-f]{40}");
+
+    private final RIsolatedRuntimeProperties properties;
+    private final ResourceLoader resourceLoader;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Keys of packages waiting for install, so that a burst of misses installs a package once
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    @Autowired
+    public RenvCache(RIsolatedRuntimeProperties properties, ResourceLoader resourceLoader) {
+        this.properties = properties;
+        this.resourceLoader = resourceLoader;
+        executor = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("renv-cache-"));
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            Files.createDirectories(getDir());
+            Path staging = getStagingDir();
+            // Whatever was staged by a previous run has not been verified
+            Processes.delete(staging);
+            Files.createDirectories(staging);
+            try (Stream<Path> paths = Files.list(getDir())) {
+                paths.filter(Files::isDirectory).forEach(path -> {
+                    Optional<Entry> entry = readMeta(path);
+                    if (entry.isPresent()) {
+                        entries.put(path.getFileName().toString(), entry.get());
+                    } else {
+                        log.info("Removing package [{}] of unknown size", path);
+                        Processes.delete(path);
+                    }
+                });
+            }
+            log.info("renv cache [{}] has {} packages, {} MB", getDir(), entries.size(), getSizeMb());
+        } catch (IOException e) {
+            log.error("renv cache [{}] is not available: {}", getDir(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return StringUtils.isNotBlank(properties.getRenvCacheDir());
+    }
+
+    /**
+     * Links cached packages required by the analysis renv.lock into its project library.
+     * The lease must be completed once the jail is cleaned up, see {@link #complete(Lease)}.
+     * @return empty if the cache is disabled, or the analysis has no renv.lock.
+     */
+    public Optional<Lease> acquire(Long id, File workDir, DescriptorBundle bundle) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        return readLock(id, workDir).map(requested -> {
+            Set<RDependency> provided = bundle.getDescriptor().getExecutionRuntimes().stream()
+                    .filter(RExecutionRuntime.class::isInstance).map(RExecutionRuntime.class::cast)
+                    .flatMap(runtime -> Optional.ofNullable(runtime.getDependencies()).orElse(Collections.emptyList()).stream())
+                    .collect(Collectors.toSet());
+            Lease lease = new Lease(id, workDir.toPath(), getDir(), bundle.getPath());
+            for (RDependency dependency : Optional.ofNullable(requested.getDependencies()).orElse(Collections.emptyList())) {
+                if (!provided.contains(dependency) && isCacheable(dependency)) {
+                    String key = key(dependency, requested.getVersion());
+                    if (link(lease, key, dependency)) {
+                        hits.incrementAndGet();
+                    } else {
+                        misses.incrementAndGet();
+                        lease.missing.put(key, dependency);
+                    }
+                }
+            }
+            log.info("Execution [{}] linked {} cached packages, {} packages are not cached", id, lease.entries.size(), lease.missing.size());
+            return lease;
+        });
+    }
+
+    /**
+     * Releases the cached packages and queues packages renv had to install, to be installed into the cache in
+     * background. The jail must be unmounted by now.
+     */
+    public void complete(Lease lease) {
+        lease.missing.forEach((key, dependency) -> {
+            if (!entries.containsKey(key)) {
+                // Packages which renv did not get to install are left for another execution
+                findLibrary(lease.workDir, dependency.getName()).filter(library -> queued.add(key)).ifPresent(library ->
+                        executor.execute(() -> {
+                            try {
+                                install(lease.id, key, dependency, lease.archive, library);
+                            } finally {
+                                queued.remove(key);
+                            }
+                        })
+                );
+            }
+        });
+        lease.close();
+    }
+
+    private boolean link(Lease lease, String key, RDependency dependency) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return false;
+        }
+        synchronized (entry) {
+            if (entries.get(key) != entry) {
+                // Evicted meanwhile
+                return false;
+            }
+            entry.leases++;
+            entry.lastUsed = System.currentTimeMillis();
+        }
+        Path link = lease.workDir.resolve(entry.library).resolve(dependency.getName());
+        try {
+            if (Files.exists(link, LinkOption.NOFOLLOW_LINKS)) {
+                // Analysis ships its own copy
+                entry.release();
+                return false;
+            }
+            Files.createDirectories(link.getParent());
+            Files.createSymbolicLink(link, Paths.get(MOUNT_POINT, key, dependency.getName()));
+        } catch (IOException e) {
+            log.warn("Execution [{}] failed to link cached package [{}]: {}", lease.id, key, e.getMessage());
+            entry.release();
+            return false;
+        }
+        lease.entries.add(entry);
+        lease.links.add(link);
+        return true;
+    }
+
+    private void install(Long id, String key, RDependency dependency, String archive, String library) {
+        if (entries.containsKey(key)) {
+            return;
+        }
+        Path staging = getStagingDir().resolve(key);
+        Path hashFile = Paths.get(staging + HASH_SUFFIX);
+        Path logFile = Paths.get(staging + LOG_SUFFIX);
+        File script = new File(StringUtils.defaultString(properties.getRenvInstallSh()));
+        boolean isExternal = script.isFile();
+        Process p = null;
+        try {
+            Processes.delete(staging);
+            Files.deleteIfExists(hashFile);
+            Files.createDirectories(staging);
+            if (!isExternal) {
+                script = extractToTempFile("classpath:/renv-install.sh");
+            }
+            long started = System.currentTimeMillis();
+            log.info("Execution [{}] missed package [{}], installing it into cache", id, key);
+            p = new ProcessBuilder((String[]) ArrayUtils.addAll(properties.getRunCmd(), new String[]{
+                    script.getAbsolutePath(), archive, staging.toString(), dependency.getName(), spec(dependency), properties.getRenvCacheRepo()
+            })).redirectErrorStream(true).redirectOutput(logFile.toFile()).start();
+            if (!p.waitFor(properties.getRenvInstallTimeoutSec(), TimeUnit.SECONDS)) {
+                log.warn("Install of package [{}] did not finish in {} sec, see [{}]", key, properties.getRenvInstallTimeoutSec(), logFile);
+                p.destroyForcibly();
+                Processes.delete(staging);
+                return;
+            }
+            if (p.exitValue() != 0 || !Files.isRegularFile(hashFile)) {
+                log.warn("Install of package [{}] failed with exit code {}, see [{}]", key, p.exitValue(), logFile);
+                Processes.delete(staging);
+                return;
+            }
+            String hash = new String(Files.readAllBytes(hashFile), StandardCharsets.UTF_8).trim();
+            Map<String, String> description = readDescription(staging.resolve(dependency.getName()).resolve(DESCRIPTION));
+            if (!dependency.getHash().equals(hash) || !matches(dependency, description)) {
+                rejected.incrementAndGet();
+                log.warn("Installed package [{}] does not match renv.lock, not cached: hash {}, {}", key, hash, description);
+                Processes.delete(staging);
+                return;
+            }
+            String du = Processes.execAsRoot("du", "-sb", staging.toString());
+            long size = NumberUtils.toLong(StringUtils.substringBefore(du.trim(), "\t"), 0);
+            Path target = getDir().resolve(key);
+            Processes.delete(target);
+            Files.move(staging, target);
+            Entry entry = new Entry(target, library, size);
+            writeMeta(entry);
+            entries.put(key, entry);
+            published.incrementAndGet();
+            log.info("Published package [{}] of {} KB to cache in {} sec", key, size >> 10,
+                    TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - started)
+            );
+            Files.deleteIfExists(logFile);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to install package [{}] into cache: {}", key, e.getMessage());
+            Processes.delete(staging);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Optional.ofNullable(p).ifPresent(Process::destroyForcibly);
+            Processes.delete(staging);
+        } finally {
+            if (!isExternal) {
+                FileUtils.deleteQuietly(script);
+            }
+            FileUtils.deleteQuietly(hashFile.toFile());
+        }
+        evict();
+    }
+
+    private void evict() {
+        long budget = properties.getRenvCacheMaxSizeMb() << 20;
+        if (budget <= 0) {
+            return;
+        }
+        List<Entry> candidates = new ArrayList<>(entries.values());
+        candidates.sort(Comparator.comparingLong(entry -> entry.lastUsed));
+        long total = candidates.stream().mapToLong(entry -> entry.size).sum();
+        for (Entry entry : candidates) {
+            if (total <= budget) {
+                break;
+            }
+            synchronized (entry) {
+                if (entry.leases == 0) {
+                    log.info("Evicting package [{}] of {} KB from cache, last used {}", entry.dir, entry.size >> 10, FileTime.fromMillis(entry.lastUsed));
+                    entries.remove(entry.dir.getFileName().toString(), entry);
+                    total -= entry.size;
+                    Processes.delete(metaFile(entry.dir));
+                    Processes.delete(entry.dir);
+                }
+            }
+        }
+        if (total > budget) {
+            log.warn("renv cache is {} MB over the budget, all remaining packages are in use", (total - budget) >> 20);
+        }
+    }
+
+    private Optional<RExecutionRuntime> readLock(Long id, File workDir) {
+        File lock = new File(workDir, RENV_LOCK);
+        if (!lock.isFile()) {
+            return Optional.empty();
+        }
+        try (InputStream is = Files.newInputStream(lock.toPath())) {
+            return DescriptorServiceImpl.getRuntime(lock.getPath(), is)
+                    .filter(RExecutionRuntime.class::isInstance).map(RExecutionRuntime.class::cast).findFirst();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Execution [{}] renv.lock is not readable, cache is not used: {}", id, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * GitHub refs other than commits move, so the package behind them may change. Packages without a Hash in renv.lock
+     * can not be verified
+     */
+    static boolean isCacheable(RDependency dependency) {
+        RDependencySourceType source = dependency.getDependencySourceType();
+        return StringUtils.isNotBlank(dependency.getName()) && StringUtils.isNotBlank(dependency.getVersion())
+                && StringUtils.isNotBlank(dependency.getHash())
+                && (source == RDependencySourceType.CRAN || (source == RDependencySourceType.GITHUB && COMMIT.matcher(dependency.getVersion()).matches()));
+    }
+
+    static String key(RDependency dependency, String rVersion) {
+        return Stream.of(dependency.getName(), dependency.getVersion(), dependency.getDependencySourceType().name(), dependency.getOwner(), "R" + rVersion, dependency.getHash())
+                .filter(Objects::nonNull).collect(Collectors.joining("_"))
+                .replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+
+    /**
+     * Package as taken by renv::install
+     */
+    static String spec(RDependency dependency) {
+        return dependency.getDependencySourceType() == RDependencySourceType.GITHUB
+                ? dependency.getOwner() + "/" + dependency.getName() + "@" + dependency.getVersion()
+                : dependency.getName() + "@" + dependency.getVersion();
+    }
+
+    static boolean matches(RDependency dependency, Map<String, String> description) {
+        if (!dependency.getName().equals(description.get("Package"))) {
+            return false;
+        }
+        if (dependency.getDependencySourceType() == RDependencySourceType.GITHUB) {
+            return dependency.getVersion().equals(description.get("RemoteSha"))
+                    && Objects.equals(dependency.getOwner(), description.get("RemoteUsername"));
+        }
+        return dependency.getVersion().equals(description.get("Version"));
+    }
+
+    /**
+     * Location of the project library renv installed the package into, relative to the analysis dir. Packages in it
+     * are not looked at, but it is where packages are linked into for later executions.
+     */
+    private static Optional<String> findLibrary(Path workDir, String name) {
+        Path library = workDir.resolve(LIBRARY);
+        if (!Files.isDirectory(library, LinkOption.NOFOLLOW_LINKS)) {
+            return Optional.empty();
+        }
+        // renv/library/R-4.1/x86_64-pc-linux-gnu/<package>, or with one more level for platform in recent renv
+        try (Stream<Path> paths = Files.walk(library, 4)) {
+            return paths.filter(path -> path.getFileName().toString().equals(name))
+                    .filter(path -> Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS))
+                    .map(path -> workDir.relativize(path.getParent()).toString())
+                    .findFirst();
+        } catch (IOException e) {
+            log.warn("Failed to look for installed package [{}] in [{}]: {}", name, library, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private static Map<String, String> readDescription(Path file) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            // Continuation lines start with whitespace and are of no interest
+            int colon = line.indexOf(':');
+            if (colon > 0 && !Character.isWhitespace(line.charAt(0))) {
+                fields.put(line.substring(0, colon), line.substring(colon + 1).trim());
+            }
+        }
+        return fields;
+    }
+
+    private static Optional<Entry> readMeta(Path dir) {
+        Properties meta = new Properties();
+        try (InputStream is = Files.newInputStream(metaFile(dir))) {
+            meta.load(is);
+            Entry entry = new Entry(dir, meta.getProperty("library"), Long.parseLong(meta.getProperty("size")));
+            entry.lastUsed = Files.getLastModifiedTime(dir).toMillis();
+            return Optional.of(entry).filter(e -> e.library != null);
+        } catch (IOException | RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static void writeMeta(Entry entry) throws IOException {
+        Properties meta = new Properties();
+        meta.setProperty("library", entry.library);
+        meta.setProperty("size", String.valueOf(entry.size));
+        try (OutputStream os = Files.newOutputStream(metaFile(entry.dir))) {
+            meta.store(os, null);
+        }
+    }
+
+    @ManagedAttribute
+    public int getPackageCount() {
+        return entries.size();
+    }
+
+    @ManagedAttribute
+    public long getSizeMb() {
+        return entries.values().stream().mapToLong(entry -> entry.size).sum() >> 20;
+    }
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @ManagedAttribute
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    @ManagedAttribute
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    @ManagedAttribute
+    public int getQueuedCount() {
+        return queued.size();
+    }
+
+    private Path getDir() {
+        return Paths.get(properties.getRenvCacheDir(), PACKAGES);
+    }
+
+    private Path getStagingDir() {
+        return Paths.get(properties.getRenvCacheDir(), STAGING);
+    }
+
+    private File extractToTempFile(String resourceName) throws IOException {
+        File file = Files.createTempFile("ee", ".sh").toFile();
+        try (InputStream in = resourceLoader.getResource(resourceName).getInputStream()) {
+            FileUtils.copyToFile(in, file);
+        }
+        return file;
+    }
+
+    private static Path metaFile(Path dir) {
+        return Paths.get(dir + META_SUFFIX);
+    }
+
+    private static class Entry {
+        private final Path dir;
+        /**
+         * Project library the package was installed in, relative to the analysis dir
+         */
+        private final String library;
+        private final long size;
+        private volatile long lastUsed = System.currentTimeMillis();
+        private volatile int leases;
+
+        private Entry(Path dir, String library, long size) {
+            this.dir = dir;
+            this.library = library;
+            this.size = size;
+        }
+
+        private synchronized void release() {
+            leases--;
+            lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    public static class Lease implements AutoCloseable {
+        private final Long id;
+        private final Path workDir;
+        private final Path dir;
+        private final String archive;
+        private final List<Entry> entries = new ArrayList<>();
+        private final List<Path> links = new ArrayList<>();
+        /**
+         * Packages to be installed by renv, by cache key
+         */
+        private final Map<String, RDependency> missing = new LinkedHashMap<>();
+        private boolean closed;
+
+        private Lease(Long id, Path workDir, Path dir, String archive) {
+            this.id = id;
+            this.workDir = workDir;
+            this.dir = dir;
+            this.archive = archive;
+        }
+
+        /**
+         * Host dir to be mounted at {@link #MOUNT_POINT} in the jail
+         */
+        public Path getDir() {
+            return dir;
+        }
+
+        public boolean hasLinks() {
+            return !links.isEmpty();
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                // Links would dangle in the results once the cache is unmounted
+                links.forEach(link -> {
+                    try {
+                        Files.deleteIfExists(link);
+                    } catch (IOException e) {
+                        log.warn("Execution [{}] failed to remove link [{}]: {}", id, link, e.getMessage());
+                    }
+                });
+                entries.forEach(Entry::release);
+            }
+        }
+    }
+}
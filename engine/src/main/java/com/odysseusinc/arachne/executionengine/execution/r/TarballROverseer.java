@@ -4,55 +4,91 @@ import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisReques
 import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.ExecutionOutcome;
 import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.Stage;
 import com.odysseusinc.arachne.executionengine.execution.AbstractOverseer;
-import java.io.BufferedReader;
+import com.odysseusinc.arachne.executionengine.execution.LogStore;
+import com.odysseusinc.arachne.executionengine.execution.LogTailer;
+import com.odysseusinc.arachne.executionengine.execution.OverseerScheduler;
+import com.odysseusinc.arachne.executionengine.execution.ProcessTable;
+import com.odysseusinc.arachne.executionengine.execution.Processes;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class TarballROverseer extends AbstractOverseer {
-    private final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1) {{
-        setRemoveOnCancelPolicy(true);
-    }};
-
     private final Process process;
-    private final BufferedReader reader;
-    private final ScheduledFuture<?> logFlush;
+    private final LogTailer.Tail tail;
+    /**
+     * Log file of the completed process, until it is handed over
+     */
+    private final AtomicReference<File> detachedLog = new AtomicReference<>();
+    /**
+     * Output captured since the last callback
+     */
+    private final StringBuilder pending = new StringBuilder();
+    private final OverseerScheduler scheduler;
+    private final OverseerScheduler.Job watchdog;
+    private final OverseerScheduler.Job logFlush;
+    private final int inactivityTimeout;
+    /**
+     * Cgroup the jail runs in, if any
+     */
+    private final Optional<Path> cgroup;
+    private volatile long lastOutput = System.currentTimeMillis();
+    private final AtomicBoolean terminating = new AtomicBoolean();
+    /**
+     * Why the engine terminated the process, if it did
+     */
+    private volatile String terminationReason;
 
     /**
      * Creates a new process overseer.
      *  @param id             Execution identifier, for logging.
      * @param process        Process to manage
+     * @param tail           Log file the process output is redirected to. Kept once the process is gone, see {@link #detachStdout}.
+     * @param stdout         Store for the captured output.
      * @param timeout        Timeout (in seconds). Once this amount of time is passed, the process will be terminated.
+     * @param inactivityTimeout Timeout (in seconds) for the process to produce no output before it is terminated, 0 for none.
      * @param callback       Consumer to send progress. First argument is current stage, second is log.
-     * @param updateInterval Log polling interval, in milliseconds.
+     * @param updateInterval Interval of sending captured output to the callback, in milliseconds.
      * @param started        The moment when execution has been requested
      * @param environment    Id of the descriptor used for execution
      * @param killTimeout    Timeout (in seconds to wait for the process to die after trying to kill it).
+     * @param scheduler      Shared scheduler to run watchdog, log flushing and termination.
+     * @param cgroup         Cgroup v2 the analysis processes run in, to kill them all at once on termination.
      */
     public TarballROverseer(
-            long id, Process process, int timeout, BiConsumer<String, String> callback, int updateInterval, Instant started, String environment, int killTimeout
+            long id, Process process, LogTailer.Tail tail, LogStore stdout, int timeout, int inactivityTimeout, BiConsumer<String, String> callback, int updateInterval, Instant started, String environment, int killTimeout,
+            OverseerScheduler scheduler, Optional<Path> cgroup
     ) {
-        super(id, callback, started, environment, killTimeout, new CompletableFuture<ExecutionOutcome>());
+        super(id, stdout, callback, started, environment, killTimeout, new CompletableFuture<ExecutionOutcome>());
         this.process = process;
-
-        reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-        executor.schedule(() -> {
+        this.tail = tail;
+        this.inactivityTimeout = inactivityTimeout;
+        this.scheduler = scheduler;
+        this.cgroup = cgroup;
+        watchdog = scheduler.schedule(id, "watchdog", () -> {
             if (process.isAlive()) {
-                log.info("Terminating [{}] after {} seconds of inactivity", id, timeout);
-                terminate();
+                terminateOnTimeout("Runtime timeout of " + timeout + " seconds exceeded");
             }
         }, timeout, TimeUnit.SECONDS);
-        log.info("For [{}], initialized watchdog job with {} seconds timeout", id, timeout);
+        log.info("For [{}], initialized watchdog job with {} seconds timeout, {} seconds inactivity timeout", id, timeout, inactivityTimeout);
 
-        logFlush = executor.scheduleAtFixedRate(() -> writeLogs(Stage.EXECUTE), updateInterval, updateInterval, TimeUnit.MILLISECONDS);
+        logFlush = scheduler.scheduleAtFixedRate(id, "log flush", () -> writeLogs(Stage.EXECUTE), updateInterval, TimeUnit.MILLISECONDS);
+        tail.listen(this::capture);
     }
 
     @Override
@@ -62,84 +98,198 @@ public class TarballROverseer extends AbstractOverseer {
 
     @Override
     public CompletableFuture<ExecutionOutcome> abort() {
-        if (process.isAlive()) {
+        if (!process.isAlive()) {
+            log.info("Overseer [{}] received abort, but process exited already", id);
+        } else if (!terminating.compareAndSet(false, true)) {
+            log.info("Overseer [{}] received abort, but the process is being terminated already", id);
+        } else {
             log.info("Overseer [{}] processing abort request", id);
             if (terminate()) {
-                outcome.complete(new ExecutionOutcome(Stage.ABORTED, null, stdout.toString()));
+                detachLog();
+                outcome.complete(new ExecutionOutcome(Stage.ABORTED, null, stdout.getTail()));
             } else {
                 callback.accept(Stage.ABORT, "Timed out waiting for termination");
             }
-        } else {
-            log.info("Overseer [{}] received abort, but process exited already", id);
         }
         return result;
     }
 
+    private void capture(String delta) {
+        lastOutput = System.currentTimeMillis();
+        log.debug("STDOUT [{}]:\n{}", id, delta);
+        synchronized (pending) {
+            stdout.append(delta);
+            pending.append(delta);
+        }
+    }
+
     private void writeLogs(String stage) {
-        try {
-            char[] buffer = new char[1024];
-            StringBuilder sb = new StringBuilder();
-            while (reader.ready()) {
-                int read = reader.read(buffer);
-                sb.append(buffer, 0, read);
-            }
-            if (sb.length() != 0) {
-                String delta = sb.toString();
-                log.info("STDOUT [{}]:\n{}", id, delta);
-                stdout.append(delta);
-                callback.accept(stage, delta);
-            }
-            // Do this after flushing the log to ensure that end of log doesn't get lost
-            if (!process.isAlive()) {
-                log.info("Overseer [{}] shutdown", id);
-                complete(process.exitValue());
-            }
-        } catch (IOException e) {
-            if (process.isAlive()) {
-                log.error("Overseer [{}] unable to read log on a live process: {}", id, e.getMessage());
-                callback.accept(stage, "=== Error reading log ===");
-                logFlush.cancel(false);
-            } else {
-                log.warn("Overseer [{}] shutdown, dead process, read log error: {}", id, e.getMessage());
-                complete(process.exitValue());
-            }
+        // Checked before reading the log, so that the end of log doesn't get lost
+        boolean alive = process.isAlive();
+        if (alive) {
+            // Appends are normally picked by the tailer already, this only covers missed change events
+            tail.poll();
+        } else {
+            detachLog();
+        }
+        String delta;
+        synchronized (pending) {
+            delta = pending.toString();
+            pending.setLength(0);
+        }
+        if (!delta.isEmpty()) {
+            callback.accept(stage, delta);
+        }
+        if (!alive) {
+            log.info("Overseer [{}] shutdown", id);
+            complete(process.exitValue());
+        } else if (inactivityTimeout > 0 && System.currentTimeMillis() - lastOutput > TimeUnit.SECONDS.toMillis(inactivityTimeout)) {
+            terminateOnTimeout("No output for " + inactivityTimeout + " seconds");
+        }
+    }
+
+    private void terminateOnTimeout(String reason) {
+        if (terminating.compareAndSet(false, true)) {
+            terminationReason = reason;
+            log.info("Terminating [{}]: {}", id, reason);
+            // Termination waits for the processes to die, so it does not hold the timer or log pumping threads
+            scheduler.submit(id, "termination", () -> {
+                if (terminate()) {
+                    // Log flushing is cancelled by now, the final flush completes the overseer
+                    writeLogs(Stage.EXECUTE);
+                }
+            });
         }
     }
 
     private void complete(int exitValue) {
-        executor.shutdown();
+        watchdog.cancel();
+        logFlush.cancel();
+        String reason = terminationReason;
         ExecutionOutcome outcome = (exitValue == 0)
-                ? new ExecutionOutcome(Stage.COMPLETED, null, stdout.toString())
-                : new ExecutionOutcome(Stage.EXECUTE, "Exit code " + exitValue, stdout.toString());
+                ? new ExecutionOutcome(Stage.COMPLETED, null, stdout.getTail())
+                : new ExecutionOutcome(Stage.EXECUTE, (reason != null ? reason + ", exit code " : "Exit code ") + exitValue, stdout.getTail());
         this.outcome.complete(outcome);
     }
 
+    @Override
+    public Optional<File> detachStdout() {
+        return Optional.ofNullable(detachedLog.getAndSet(null));
+    }
+
+    /**
+     * Stops following the log of a dead process. The file is kept, as it holds the full log to be sent with results.
+     */
+    private void detachLog() {
+        File file = tail.detach();
+        if (file != null) {
+            detachedLog.set(file);
+        }
+    }
+
+    /**
+     * Kills the process tree. Only called by whoever set {@link #terminating}, so that it runs once.
+     */
     private boolean terminate() {
-        // TODO Can race with cancel?
         writeLogs(Stage.ABORT);
         boolean dead = waitForKill();
         if (dead) {
             log.info("Terminated [{}]", id);
-            executor.shutdownNow();
+            watchdog.cancel();
+            logFlush.cancel();
             log.info("Shut down overseer for [{}]", id);
         } else {
-            // We don't want to shut down executor in order to get some logs
+            // Log flushing is kept in order to get some logs, it completes the overseer once the process is gone
             log.error("Overseer [{}] failed to terminate analysis process", id);
         }
         return dead;
     }
 
     private boolean waitForKill() {
+        // Descendants are listed before killing, as they are reparented once their parent dies
+        List<ProcessTable.Entry> tree = listProcessTree();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(killTimeout);
+        process.destroyForcibly();
+        if (tree.size() > 1) {
+            List<ProcessTable.Entry> descendants = tree.subList(1, tree.size());
+            kill(alive(descendants));
+            // R runs in a pid namespace under sudo, so its processes cannot be signalled by the engine directly
+            List<ProcessTable.Entry> privileged = alive(descendants);
+            if (!privileged.isEmpty()) {
+                killAsRoot(privileged);
+            }
+        }
         try {
-            // Will not kill whole process tree on windows. The fundamental problem here is that (unlike Unix)
-            // Windows doesn't maintain parent-child relationships between processes. A process can kill
-            // its own immediate children, but not 'grand-children' because it has no way of finding them.
-            return process.destroyForcibly().waitFor(killTimeout, TimeUnit.SECONDS);
+            if (!process.waitFor(killTimeout, TimeUnit.SECONDS)) {
+                return false;
+            }
+            while (true) {
+                List<String> survivors = tree.stream().filter(entry -> ProcessTable.isAlive(ProcessTable.PROC, entry))
+                        .map(entry -> String.valueOf(entry.getPid())).collect(Collectors.toList());
+                if (survivors.isEmpty()) {
+                    return true;
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    log.error("Overseer [{}] processes {} are still running after termination", id, survivors);
+                    return false;
+                }
+                Thread.sleep(100);
+            }
         } catch (InterruptedException e) {
             log.info("Overseer [{}] interrupted waiting for process termination", id);
             return false;
         }
     }
 
+    private void kill(List<ProcessTable.Entry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        List<String> command = new ArrayList<>(Arrays.asList("kill", "-KILL"));
+        entries.stream().map(entry -> String.valueOf(entry.getPid())).forEach(command::add);
+        try {
+            Processes.exec(command.toArray(new String[0]));
+        } catch (IOException e) {
+            // Some of them are not permitted to signal, or have exited already
+            log.debug("Overseer [{}] killing process tree: {}", id, e.getMessage());
+        }
+    }
+
+    /**
+     * Root may signal any process, so a pid is never signalled as root once the process it was listed for may be gone
+     * and the pid reused. Processes of a cgroup are killed by the kernel. Otherwise, only the namespace init is killed,
+     * which takes down the whole namespace, and its start time is checked right before.
+     */
+    private void killAsRoot(List<ProcessTable.Entry> entries) {
+        try {
+            if (cgroup.isPresent() && Files.exists(cgroup.get().resolve("cgroup.kill"))) {
+                Processes.execAsRoot("sh", "-c", "echo 1 > \"$0\"", cgroup.get().resolve("cgroup.kill").toString());
+                return;
+            }
+            Optional<ProcessTable.Entry> init = entries.stream().filter(entry -> ProcessTable.isNamespaceInit(ProcessTable.PROC, entry)).findFirst();
+            if (!init.isPresent()) {
+                log.warn("Overseer [{}] found no pid namespace init among privileged processes, not killing them", id);
+            } else if (ProcessTable.isAlive(ProcessTable.PROC, init.get())) {
+                Processes.execAsRoot("kill", "-KILL", String.valueOf(init.get().getPid()));
+            }
+        } catch (IOException e) {
+            log.debug("Overseer [{}] killing privileged processes: {}", id, e.getMessage());
+        }
+    }
+
+    private static List<ProcessTable.Entry> alive(List<ProcessTable.Entry> entries) {
+        return entries.stream().filter(entry -> ProcessTable.isAlive(ProcessTable.PROC, entry)).collect(Collectors.toList());
+    }
 
+    private List<ProcessTable.Entry> listProcessTree() {
+        Optional<Integer> pid = ProcessTable.pid(process);
+        if (pid.isPresent() && Files.isDirectory(ProcessTable.PROC)) {
+            try {
+                return ProcessTable.read(ProcessTable.PROC).tree(pid.get());
+            } catch (IOException e) {
+                log.warn("Overseer [{}] failed to list processes, only the direct child will be killed: {}", id, e.getMessage());
+            }
+        }
+        return Collections.emptyList();
+    }
 }
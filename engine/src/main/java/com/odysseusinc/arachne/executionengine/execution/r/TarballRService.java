@@ -24,6 +24,7 @@ package com.odysseusinc.arachne.executionengine.execution.r;
 
 import static org.apache.commons.io.IOUtils.closeQuietly;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisSyncRequestDTO;
 import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.DataSourceUnsecuredDTO;
 import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.ExecutionOutcome;
@@ -31,6 +32,11 @@ import com.odysseusinc.arachne.executionengine.aspect.FileDescriptorCount;
 import com.odysseusinc.arachne.executionengine.config.runtimeservice.RIsolatedRuntimeProperties;
 import com.odysseusinc.arachne.executionengine.execution.ExecutionService;
 import com.odysseusinc.arachne.executionengine.execution.Overseer;
+import com.odysseusinc.arachne.executionengine.execution.LogStore;
+import com.odysseusinc.arachne.executionengine.execution.LogTailer;
+import com.odysseusinc.arachne.executionengine.execution.OverseerScheduler;
+import com.odysseusinc.arachne.executionengine.execution.ResourceSampler;
+import com.odysseusinc.arachne.executionengine.execution.ResourceUsage;
 import com.odysseusinc.arachne.executionengine.model.descriptor.Descriptor;
 import com.odysseusinc.arachne.executionengine.model.descriptor.DescriptorBundle;
 import com.odysseusinc.arachne.executionengine.model.descriptor.ExecutionRuntime;
@@ -49,13 +55,17 @@ import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import javax.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Service;
 
@@ -65,6 +75,10 @@ public class TarballRService extends RService implements ExecutionService {
     private static final String EXECUTION_COMMAND = "Rscript";
 
     private static final String RUNTIME_ANALYSIS_ID = "ANALYSIS_ID";
+    private static final String RUNTIME_BUNDLE_DIR = "BUNDLE_DIR";
+    private static final String RUNTIME_PREPARED_JAIL = "PREPARED_JAIL";
+    private static final String RUNTIME_RENV_CACHE_DIR = "RENV_CACHE_DIR";
+    private static final String RESOURCE_USAGE_FILE = "resource_usage.json";
 
     @Autowired
     private ResourceLoader resourceLoader;
@@ -72,6 +86,39 @@ public class TarballRService extends RService implements ExecutionService {
     @Autowired
     private RIsolatedRuntimeProperties rIsolatedRuntimeProps;
 
+    @Autowired
+    private BundleCache bundleCache;
+
+    @Autowired
+    private JailPool jailPool;
+
+    @Autowired
+    private JailReaper jailReaper;
+
+    @Autowired
+    private OverseerScheduler overseerScheduler;
+
+    @Autowired
+    private LogTailer logTailer;
+
+    @Autowired
+    private ResourceSampler resourceSampler;
+
+    @Autowired
+    private CgroupManager cgroupManager;
+
+    @Autowired
+    private RenvCache renvCache;
+
+    @Autowired
+    private RWorkerPool workerPool;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${runtime.stdoutMemoryChars:1048576}")
+    private int stdoutMemoryChars;
+
     @PostConstruct
     public void init() {
         if (RuntimeServiceMode.ISOLATED.equals(getRuntimeServiceMode())) {
@@ -101,14 +148,43 @@ public class TarballRService extends RService implements ExecutionService {
             prepareEnvironmentInfoFile(file, descriptorBundle.getDescriptor());
             prepareRprofile(file);
             envp.put(RUNTIME_ANALYSIS_ID, id.toString());
+            Optional<BundleCache.Lease> bundleLease = acquireBundle(id, descriptorBundle);
+            bundleLease.ifPresent(lease -> envp.put(RUNTIME_BUNDLE_DIR, lease.getDir().toString()));
+            Optional<CgroupManager.Cgroup> cgroup = Optional.empty();
+            Optional<RenvCache.Lease> renvLease = Optional.empty();
+            if (RuntimeServiceMode.ISOLATED == getRuntimeServiceMode()) {
+                jailPool.claim(id, descriptorBundle).ifPresent(jail -> envp.put(RUNTIME_PREPARED_JAIL, jail.toString()));
+                cgroup = cgroupManager.forExecution(id, descriptorBundle.getDescriptor());
+                cgroup.ifPresent(c -> envp.putAll(c.getEnv()));
+                renvLease = renvCache.acquire(id, file, descriptorBundle);
+                renvLease.filter(RenvCache.Lease::hasLinks).ifPresent(lease -> envp.put(RUNTIME_RENV_CACHE_DIR, lease.getDir().toString()));
+            }
+            Optional<CgroupManager.Cgroup> executionCgroup = cgroup;
+            Optional<RenvCache.Lease> executionRenvLease = renvLease;
             String[] command = buildRuntimeCommand(runFile, file, executableFileName, descriptorBundle.getPath());
-            ProcessBuilder pb = new ProcessBuilder(command).directory(file).redirectErrorStream(true);
+            LogTailer.Tail tail = logTailer.create(id);
+            // Output goes straight to the file, so the process never waits for it to be read
+            ProcessBuilder pb = new ProcessBuilder(command).directory(file).redirectErrorStream(true).redirectOutput(tail.getFile());
             pb.environment().putAll(envp);
             log.info("Execution [{}] start R process: {}", id, command);
-            Process process = pb.start();
+            Process process;
+            try {
+                Optional<Process> warm = RuntimeServiceMode.SINGLE == getRuntimeServiceMode()
+                        ? workerPool.submit(id, descriptorBundle.getDescriptor().getId(), file, executableFileName, tail.getFile(), envp)
+                        : Optional.empty();
+                process = warm.isPresent() ? warm.get() : pb.start();
+            } catch (IOException e) {
+                tail.close();
+                bundleLease.ifPresent(BundleCache.Lease::close);
+                renvLease.ifPresent(RenvCache.Lease::close);
+                throw e;
+            }
+            resourceSampler.watch(id, process, cgroup.map(CgroupManager.Cgroup::getDir));
             String descriptorId = descriptorBundle.getDescriptor().getId();
+            LogStore stdout = new LogStore(new File(tail.getFile().getPath() + ".spill"), stdoutMemoryChars);
             return new TarballROverseer(
-                    id, process, runtimeTimeOutSec, callback, updateInterval, started, descriptorId, killTimeoutSec
+                    id, process, tail, stdout, runtimeTimeOutSec, inactivityTimeOutSec, callback, updateInterval, started, descriptorId, killTimeoutSec, overseerScheduler,
+                    executionCgroup.map(CgroupManager.Cgroup::getDir)
             ).whenComplete((outcome, throwable) -> {
                 if (!externalJail) {
                     FileUtils.deleteQuietly(runFile);
@@ -117,7 +193,20 @@ public class TarballRService extends RService implements ExecutionService {
                 if (RuntimeServiceMode.ISOLATED == getRuntimeServiceMode()) {
                     FileUtils.deleteQuietly(krbConfig.getConfPath().toFile());
                 }
-                cleanupEnv(file, outcome);
+                // Memory events are gone once cleanup removes the cgroup
+                executionCgroup.filter(c -> outcome != null && cgroupManager.getOomKills(id, c) > 0).ifPresent(c ->
+                        outcome.addError(NumberUtils.isDigits(c.getMemoryMax())
+                                ? "Out of memory: the analysis exceeded the memory limit of " + (Long.parseLong(c.getMemoryMax()) >> 20) + " MB"
+                                : "Out of memory: analysis processes were killed by the kernel"
+                        )
+                );
+                cleanupEnv(file, outcome, executionCgroup);
+                // Packages renv installed in the jail are queued to be installed into the cache
+                executionRenvLease.ifPresent(renvCache::complete);
+                resourceSampler.stop(id).ifPresent(usage -> writeResourceUsage(id, file, usage));
+                // Overlay is unmounted by cleanup, so the cached tree is no longer used
+                bundleLease.ifPresent(BundleCache.Lease::close);
+                stdout.close();
             });
 
         } catch (IOException ex) {
@@ -127,6 +216,18 @@ public class TarballRService extends RService implements ExecutionService {
     }
 
 
+    private Optional<BundleCache.Lease> acquireBundle(Long id, DescriptorBundle descriptorBundle) {
+        if (RuntimeServiceMode.ISOLATED != getRuntimeServiceMode()) {
+            return Optional.empty();
+        }
+        try {
+            return bundleCache.acquire(id, descriptorBundle);
+        } catch (RuntimeException e) {
+            log.warn("Execution [{}] cached bundle not available, jail will unpack [{}]: {}", id, descriptorBundle.getPath(), e.getMessage());
+            return Optional.empty();
+        }
+    }
+
     private void prepareEnvironmentInfoFile(File workDir, Descriptor descriptor) {
         final String lineDelimiter = StringUtils.repeat("-", 32);
         try (FileWriter fw = new FileWriter(new File(workDir, "environment.txt")); PrintWriter pw = new PrintWriter(fw)) {
@@ -153,13 +254,21 @@ public class TarballRService extends RService implements ExecutionService {
         }
     }
 
+    private void writeResourceUsage(Long id, File workDir, ResourceUsage usage) {
+        try {
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(new File(workDir, RESOURCE_USAGE_FILE), usage);
+        } catch (IOException e) {
+            log.warn("Execution [{}] failed to write resource usage: {}", id, e.getMessage());
+        }
+    }
+
     private void prepareRprofile(File workDir) throws IOException {
         try (InputStream is = resourceLoader.getResource("classpath:/Rprofile").getInputStream()) {
             FileUtils.copyToFile(is, new File(workDir, ".Rprofile"));
         }
     }
 
-    private ExecutionOutcome cleanupEnv(File directory, ExecutionOutcome outcome) {
+    private ExecutionOutcome cleanupEnv(File directory, ExecutionOutcome outcome, Optional<CgroupManager.Cgroup> cgroup) {
         try {
             File cleanupScript = new File(rIsolatedRuntimeProps.getCleanupSh());
             boolean isExternal = true;
@@ -170,9 +279,18 @@ public class TarballRService extends RService implements ExecutionService {
             }
             Process p = null;
             try {
-                ProcessBuilder pb = new ProcessBuilder((String[]) ArrayUtils.addAll(rIsolatedRuntimeProps.getRunCmd(), new String[]{cleanupScript.getAbsolutePath(), directory.getAbsolutePath()}));
+                ProcessBuilder pb = new ProcessBuilder((String[]) ArrayUtils.addAll(rIsolatedRuntimeProps.getRunCmd(), new String[]{
+                        cleanupScript.getAbsolutePath(), directory.getAbsolutePath(), jailReaper.getTrashDir().toString(),
+                        cgroup.map(c -> c.getDir().toString()).orElse("")
+                }));
                 p = pb.start();
-                p.waitFor();
+                if (!p.waitFor(rIsolatedRuntimeProps.getCleanupTimeoutSec(), TimeUnit.SECONDS)) {
+                    log.error("Cleanup of [{}] did not finish in {} sec", directory.getPath(), rIsolatedRuntimeProps.getCleanupTimeoutSec());
+                    p.destroyForcibly();
+                    return outcome.addError("Timed out cleaning up environment");
+                }
+                // Jail directories have been moved to trash, deleting them does not hold the results
+                jailReaper.request();
             } catch (InterruptedException ignored) {
             } finally {
                 if (!isExternal) {
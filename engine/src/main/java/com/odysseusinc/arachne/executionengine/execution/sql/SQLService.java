@@ -60,6 +60,7 @@ import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import lombok.Getter;
+import org.apache.commons.lang3.StringUtils;
 import org.ohdsi.sql.SqlSplit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -251,7 +252,8 @@ public class SQLService implements ExecutionService {
         private final StringBuffer stdout;
 
         public SqlOverseer(long id, Instant started, StringBuffer stdout, CompletableFuture<ExecutionOutcome> result) {
-            super(id, (stage, out) -> {}, started, null, 0, result);
+            // SQL output is a few lines per file, so it is kept in a plain buffer rather than a log store
+            super(id, null, (stage, out) -> {}, started, null, 0, result);
             this.stdout = stdout;
         }
 
@@ -260,6 +262,11 @@ public class SQLService implements ExecutionService {
             return stdout.toString();
         }
 
+        @Override
+        public String getStdout(long offset, int length) {
+            return StringUtils.substring(getStdout(), (int) offset, (int) Math.min(offset + length, Integer.MAX_VALUE));
+        }
+
         @Override
         public CompletableFuture<ExecutionOutcome> abort() {
             return result.isDone() ? result : CompletableFuture.completedFuture(
@@ -1,5 +1,6 @@
 package com.odysseusinc.arachne.executionengine.model.descriptor;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.odysseusinc.arachne.execution_engine_common.descriptor.RuntimeType;
@@ -30,6 +31,9 @@ public class Descriptor {
     private List<String> osLibraries = new ArrayList<>();
     @JsonProperty
     private List<ExecutionRuntime> executionRuntimes = new ArrayList<>();
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private ResourceLimits limits;
 
     public String getId() {
         return id;
@@ -70,4 +74,12 @@ public class Descriptor {
     public void setExecutionRuntimes(List<ExecutionRuntime> executionRuntimes) {
         this.executionRuntimes = executionRuntimes;
     }
+
+    public ResourceLimits getLimits() {
+        return limits;
+    }
+
+    public void setLimits(ResourceLimits limits) {
+        this.limits = limits;
+    }
 }
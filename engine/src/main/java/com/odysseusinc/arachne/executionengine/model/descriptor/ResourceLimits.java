@@ -0,0 +1,52 @@
+package com.odysseusinc.arachne.executionengine.model.descriptor;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Resource limits requested by a runtime environment. Each of them overrides the engine default, within the engine
+ * ceiling. Limits which are not set are taken from the engine defaults.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ResourceLimits {
+    @JsonProperty
+    private Long memoryMb;
+    @JsonProperty
+    private Double cpus;
+    @JsonProperty
+    private Long ioReadBps;
+    @JsonProperty
+    private Long ioWriteBps;
+
+    public Long getMemoryMb() {
+        return memoryMb;
+    }
+
+    public void setMemoryMb(Long memoryMb) {
+        this.memoryMb = memoryMb;
+    }
+
+    public Double getCpus() {
+        return cpus;
+    }
+
+    public void setCpus(Double cpus) {
+        this.cpus = cpus;
+    }
+
+    public Long getIoReadBps() {
+        return ioReadBps;
+    }
+
+    public void setIoReadBps(Long ioReadBps) {
+        this.ioReadBps = ioReadBps;
+    }
+
+    public Long getIoWriteBps() {
+        return ioWriteBps;
+    }
+
+    public void setIoWriteBps(Long ioWriteBps) {
+        this.ioWriteBps = ioWriteBps;
+    }
+}
@@ -7,6 +7,8 @@ public class RDependency {
     private String name;
     private String version;
     private String owner;
+    // renv hash of the installed package DESCRIPTION, as recorded in renv.lock
+    private String hash;
     private RDependencySourceType dependencySourceType;
     private List<String> preInstallScripts;
     private List<String> postInstallScripts;
@@ -35,6 +37,14 @@ public class RDependency {
         this.owner = owner;
     }
 
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
     public RDependencySourceType getDependencySourceType() {
         return dependencySourceType;
     }
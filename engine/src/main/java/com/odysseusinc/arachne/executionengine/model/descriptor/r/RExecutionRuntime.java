@@ -6,7 +6,9 @@ import com.odysseusinc.arachne.executionengine.model.descriptor.ExecutionRuntime
 import com.odysseusinc.arachne.executionengine.model.descriptor.r.rEnv.REnvLock;
 import com.odysseusinc.arachne.executionengine.model.descriptor.r.rEnv.RPackage;
 import com.odysseusinc.arachne.executionengine.model.descriptor.r.rEnv.RPackageGitHub;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.apache.commons.lang3.NotImplementedException;
@@ -37,8 +39,9 @@ public class RExecutionRuntime implements ExecutionRuntime {
     }
 
     private Stream<String> calcDependencyMismatch(RExecutionRuntime other) {
+        Set<RDependency> present = new HashSet<>(dependencies);
         return other.dependencies.stream().filter(dependency ->
-                !dependencies.contains(dependency)
+                !present.contains(dependency)
         ).map(dependency ->
                 String.format("Missing dependency %s:%s via %s", dependency.getName(), dependency.getVersion(), dependency.getDependencySourceType())
         );
@@ -55,6 +58,7 @@ public class RExecutionRuntime implements ExecutionRuntime {
                     RPackage rPackage = entry.getValue();
                     dependency.setDependencySourceType(rPackage.getDependencySourceType());
                     dependency.setVersion(rPackage.getVersion());
+                    dependency.setHash(rPackage.getHash());
 
                     if (rPackage instanceof RPackageGitHub) {
                         dependency.setOwner(((RPackageGitHub) rPackage).getRemoteUsername());
@@ -75,6 +79,10 @@ public class RExecutionRuntime implements ExecutionRuntime {
         return version;
     }
 
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
     @Override
     public List<String> createInstallScripts() {
         throw new NotImplementedException();
@@ -25,6 +25,8 @@ public abstract class RPackage {
     private String name;
     @JsonProperty("Version")
     private String version;
+    @JsonProperty("Hash")
+    private String hash;
 
     public String getName() {
         return name;
@@ -34,5 +36,9 @@ public abstract class RPackage {
         return version;
     }
 
+    public String getHash() {
+        return hash;
+    }
+
     public abstract RDependencySourceType getDependencySourceType();
 }
@@ -0,0 +1,224 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.odysseusinc.arachne.executionengine.model.descriptor.Descriptor;
+import com.odysseusinc.arachne.executionengine.model.descriptor.DescriptorBundle;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable snapshot of the descriptors in the archive folder, with bundles of each descriptor checked to exist.
+ * A new snapshot is built by {@link #load}, which parses only descriptor files changed since the previous snapshot,
+ * so that lookups on submission do no I/O at all.
+ */
+public final class DescriptorIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DescriptorIndex.class);
+    private static final String DESCRIPTOR_PREFIX = "descriptor";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    static final DescriptorIndex EMPTY = new DescriptorIndex(
+            Collections.emptyMap(), Collections.emptyMap(), Collections.emptyList(), Collections.emptyMap(), Collections.emptyMap()
+    );
+
+    private final Map<String, ParsedFile> files;
+    private final Map<String, Archive> archives;
+    private final List<Descriptor> descriptors;
+    private final Map<String, List<Descriptor>> byId;
+    private final Map<Descriptor, DescriptorBundle> bundles;
+    private final RuntimeIndex runtimes;
+
+    private DescriptorIndex(
+            Map<String, ParsedFile> files, Map<String, Archive> archives, List<Descriptor> descriptors,
+            Map<String, List<Descriptor>> byId, Map<Descriptor, DescriptorBundle> bundles
+    ) {
+        this.files = files;
+        this.archives = archives;
+        this.descriptors = descriptors;
+        this.byId = byId;
+        this.bundles = bundles;
+        this.runtimes = new RuntimeIndex(descriptors);
+    }
+
+    /**
+     * Reads the folder, reusing whatever did not change since the previous snapshot.
+     */
+    public static DescriptorIndex load(Path folder, DescriptorIndex previous) throws IOException {
+        Map<String, ParsedFile> files = new LinkedHashMap<>();
+        try (Stream<Path> paths = Files.list(folder)) {
+            for (Path path : paths.sorted().collect(Collectors.toList())) {
+                String name = path.getFileName().toString();
+                Optional<Stamp> stamp = Stamp.of(path);
+                if (name.startsWith(DESCRIPTOR_PREFIX) && stamp.isPresent()) {
+                    ParsedFile parsed = Optional.ofNullable(previous.files.get(name)).filter(file -> file.stamp.equals(stamp.get()))
+                            .orElseGet(() -> parse(path, stamp.get()));
+                    files.put(name, parsed);
+                }
+            }
+        }
+        Map<String, Archive> archives = new HashMap<>();
+        List<Descriptor> descriptors = new ArrayList<>();
+        Map<String, List<Descriptor>> byId = new HashMap<>();
+        Map<Descriptor, DescriptorBundle> bundles = new IdentityHashMap<>();
+        for (ParsedFile file : files.values()) {
+            Descriptor descriptor = file.descriptor;
+            if (descriptor == null) {
+                continue;
+            }
+            descriptors.add(descriptor);
+            byId.computeIfAbsent(descriptor.getId(), id -> new ArrayList<>()).add(descriptor);
+            String bundleName = descriptor.getBundleName();
+            Archive archive = bundleName == null ? null : archives.computeIfAbsent(bundleName, name ->
+                    Archive.of(folder.resolve(name))
+            );
+            if (archive != null) {
+                bundles.put(descriptor, new DescriptorBundle(archive.path.toString(), descriptor));
+            }
+        }
+        byId.replaceAll((id, list) -> Collections.unmodifiableList(list));
+        return new DescriptorIndex(
+                Collections.unmodifiableMap(files), Collections.unmodifiableMap(archives), Collections.unmodifiableList(descriptors),
+                Collections.unmodifiableMap(byId), Collections.unmodifiableMap(bundles)
+        );
+    }
+
+    private static ParsedFile parse(Path path, Stamp stamp) {
+        try (InputStream is = Files.newInputStream(path)) {
+            return new ParsedFile(stamp, MAPPER.readValue(is, Descriptor.class));
+        } catch (IOException | RuntimeException e) {
+            // Kept, so that the file is not parsed again until it changes
+            LOGGER.error("Error getting descriptor from file [{}], skipped: {}", path, e.getMessage());
+            return new ParsedFile(stamp, null);
+        }
+    }
+
+    public List<Descriptor> getDescriptors() {
+        return descriptors;
+    }
+
+    public List<Descriptor> getDescriptors(String id) {
+        return byId.getOrDefault(id, Collections.emptyList());
+    }
+
+    public RuntimeIndex getRuntimes() {
+        return runtimes;
+    }
+
+    /**
+     * @return empty if the bundle of the descriptor was not found
+     */
+    public Optional<DescriptorBundle> getBundle(Descriptor descriptor) {
+        return Optional.ofNullable(bundles.get(descriptor));
+    }
+
+    /**
+     * Checks whether the folder content differs from this snapshot
+     */
+    public boolean isSameAs(DescriptorIndex other) {
+        return files.equals(other.files) && archives.equals(other.archives);
+    }
+
+    private static final class ParsedFile {
+        private final Stamp stamp;
+        /**
+         * Null if the file is not a valid descriptor
+         */
+        private final Descriptor descriptor;
+
+        private ParsedFile(Stamp stamp, Descriptor descriptor) {
+            this.stamp = stamp;
+            this.descriptor = descriptor;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ParsedFile && stamp.equals(((ParsedFile) o).stamp);
+        }
+
+        @Override
+        public int hashCode() {
+            return stamp.hashCode();
+        }
+    }
+
+    private static final class Archive {
+        private final Path path;
+        private final Stamp stamp;
+
+        private Archive(Path path, Stamp stamp) {
+            this.path = path;
+            this.stamp = stamp;
+        }
+
+        /**
+         * @return null if there is no such bundle
+         */
+        private static Archive of(Path path) {
+            Optional<Stamp> stamp = Stamp.of(path);
+            if (!stamp.isPresent()) {
+                LOGGER.warn("Bundle [{}] not found, its descriptors can not be used", path);
+                return null;
+            }
+            return new Archive(path, stamp.get());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Archive && stamp.equals(((Archive) o).stamp);
+        }
+
+        @Override
+        public int hashCode() {
+            return stamp.hashCode();
+        }
+    }
+
+    private static final class Stamp {
+        private final long size;
+        private final long lastModified;
+
+        private Stamp(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return empty unless it is a regular file
+         */
+        private static Optional<Stamp> of(Path path) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                return attributes.isRegularFile()
+                        ? Optional.of(new Stamp(attributes.size(), attributes.lastModifiedTime().toMillis()))
+                        : Optional.empty();
+            } catch (IOException e) {
+                return Optional.empty();
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Stamp && size == ((Stamp) o).size && lastModified == ((Stamp) o).lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, lastModified);
+        }
+    }
+}
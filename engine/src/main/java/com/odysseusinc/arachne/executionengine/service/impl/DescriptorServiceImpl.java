@@ -1,6 +1,5 @@
 package com.odysseusinc.arachne.executionengine.service.impl;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.odysseusinc.arachne.executionengine.config.runtimeservice.RIsolatedRuntimeProperties;
 import com.odysseusinc.arachne.executionengine.model.descriptor.DefaultDescriptor;
 import com.odysseusinc.arachne.executionengine.model.descriptor.Descriptor;
@@ -16,21 +15,21 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.AbstractMap;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
+import javax.annotation.PreDestroy;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -39,65 +38,95 @@ public class DescriptorServiceImpl implements DescriptorService {
     private static final List<ParseStrategy> STRATEGIES = Arrays.asList(
             new REnvParseStrategy()
     );
-    private static final String DESCRIPTOR_PREFIX = "descriptor";
-
-    private final ObjectMapper mapper = new ObjectMapper();
 
     private final DescriptorBundle defaultDescriptorBundle;
     private final Optional<Path> archiveFolder;
     // TODO Consider replacing this flag with a dedicated logger
     private final boolean dependencyMatching;
+    private final ScheduledThreadPoolExecutor scheduler;
+    /**
+     * Descriptors of the archive folder, replaced as a whole on refresh
+     */
+    private volatile DescriptorIndex index = DescriptorIndex.EMPTY;
 
     @Autowired
     public DescriptorServiceImpl(RIsolatedRuntimeProperties rIsolatedRuntimeProps) {
         this(
                 new DescriptorBundle(rIsolatedRuntimeProps.getArchive(), new DefaultDescriptor()),
                 Optional.ofNullable(rIsolatedRuntimeProps.getArchiveFolder()).map(name -> new File(name).toPath()),
-                rIsolatedRuntimeProps.isApplyRuntimeDependenciesComparisonLogic()
+                rIsolatedRuntimeProps.isApplyRuntimeDependenciesComparisonLogic(),
+                rIsolatedRuntimeProps.getDescriptorRefreshSec()
         );
     }
 
     public DescriptorServiceImpl(DescriptorBundle defaultDescriptorBundle, Optional<Path> archiveFolder, boolean dependencyMatching) {
+        this(defaultDescriptorBundle, archiveFolder, dependencyMatching, 0);
+    }
+
+    /**
+     * @param refreshSec how often the archive folder is rescanned for changes, 0 to read it once
+     */
+    public DescriptorServiceImpl(
+            DescriptorBundle defaultDescriptorBundle, Optional<Path> archiveFolder, boolean dependencyMatching, long refreshSec
+    ) {
         this.defaultDescriptorBundle = defaultDescriptorBundle;
         this.archiveFolder = archiveFolder;
         this.dependencyMatching = dependencyMatching;
+        refresh();
+        if (archiveFolder.isPresent() && refreshSec > 0) {
+            scheduler = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("descriptor-index-"));
+            scheduler.scheduleWithFixedDelay(this::refresh, refreshSec, refreshSec, TimeUnit.SECONDS);
+        } else {
+            scheduler = null;
+        }
     }
 
-    @Override
-    public Optional<List<Descriptor>> getDescriptors() {
-        return archiveFolder.map(dir -> {
-            try (Stream<Path> files = Files.list(dir)) {
-                return files.map(Path::toFile).filter(file ->
-                        file.getName().startsWith(DESCRIPTOR_PREFIX) && file.isFile()
-                ).map(file -> {
-                    try (InputStream is = new FileInputStream(file)) {
-                        return mapper.readValue(is, Descriptor.class);
-                    } catch (IOException e) {
-                        throw new RuntimeException("Error getting descriptor from file: " + file.getName(), e);
-                    }
-                }).collect(Collectors.toList());
-            } catch (IOException e) {
-                LOGGER.info("Error traversing [{}]: {}", dir, e.getMessage());
-                throw new RuntimeException("Error traversing [" + dir + "]: " + e.getMessage());
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Rescans the archive folder. Only descriptors and bundles which changed since the last scan are read.
+     * If the folder can not be read, the descriptors found last time are kept.
+     */
+    public synchronized void refresh() {
+        archiveFolder.ifPresent(folder -> {
+            DescriptorIndex previous = index;
+            try {
+                DescriptorIndex next = DescriptorIndex.load(folder, previous);
+                index = next;
+                if (!next.isSameAs(previous)) {
+                    LOGGER.info("Found {} descriptors in [{}]", next.getDescriptors().size(), folder);
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Error traversing [{}], keeping {} descriptors found before: {}", folder, previous.getDescriptors().size(), e.getMessage());
             }
         });
     }
 
+    @Override
+    public Optional<List<Descriptor>> getDescriptors() {
+        return archiveFolder.map(dir -> index.getDescriptors());
+    }
+
     @Override
     public List<Descriptor> getDescriptors(String id) {
-        return getDescriptors().map(Collection::stream).orElseGet(Stream::of)
-                .filter(descriptor -> Objects.equals(descriptor.getId(), id))
-                .collect(Collectors.toList());
+        return index.getDescriptors(id);
     }
 
     @Override
     public DescriptorBundle getDescriptorBundle(File dir, Long analysisId, String requestedDescriptorId) {
-        return getDescriptors().map(available ->
+        // A refresh may replace the index at any time, descriptors and bundles must come from the same snapshot
+        DescriptorIndex snapshot = index;
+        return archiveFolder.map(folder -> snapshot.getDescriptors()).map(available ->
                 Optional.ofNullable(StringUtils.defaultIfEmpty(requestedDescriptorId, null)).map(id ->
-                        findRequestedDescriptor(analysisId, available, id)
+                        findRequestedDescriptor(snapshot, analysisId, id)
                 ).orElseGet(() -> {
                     LOGGER.info("For analysis [{}] no descriptor is requested explicitly, fall back to dependency matching among {} present descriptors", analysisId, available.size());
-                    return findMatchingDescriptor(dir, analysisId, available);
+                    return findMatchingDescriptor(snapshot, dir, analysisId, available);
                 })
         ).orElseGet(() -> {
             LOGGER.info("For analysis [{}] using default descriptor (no descriptors configured). Requested [{}]", analysisId, requestedDescriptorId);
@@ -105,61 +134,54 @@ public class DescriptorServiceImpl implements DescriptorService {
         });
     }
 
-    private DescriptorBundle findRequestedDescriptor(Long analysisId, List<Descriptor> available, String id) {
-        return available.stream().filter(descriptor ->
-                descriptor.getId().equals(id)
-        ).reduce((a, b) -> {
+    private DescriptorBundle findRequestedDescriptor(DescriptorIndex snapshot, Long analysisId, String id) {
+        return snapshot.getDescriptors(id).stream().reduce((a, b) -> {
             LOGGER.error("For analysis [{}], multiple descriptors found for requested id [{}]: [{}] and [{}]",
                     analysisId, id, a.getBundleName(), b.getBundleName());
             throw new RuntimeException("For analysis [" + analysisId + "], multiple descriptors found for requested id [" + id + "]");
         }).map(descriptor -> {
             LOGGER.info("For analysis [{}]], using requested descriptor [{}] found under [{}]", analysisId, id, descriptor.getBundleName());
-            return toBundle(descriptor);
+            return toBundle(snapshot, descriptor);
         }).orElseGet(() -> {
             LOGGER.warn("For analysis [{}]], requested descriptor [{}] not found", analysisId, id);
             return null;
         });
     }
 
-    private DescriptorBundle findMatchingDescriptor(File dir, Long analysisId, List<Descriptor> available) {
+    private DescriptorBundle findMatchingDescriptor(DescriptorIndex snapshot, File dir, Long analysisId, List<Descriptor> available) {
+        RuntimeIndex runtimes = snapshot.getRuntimes();
         return getRuntime(dir).flatMap(runtime -> {
-            Map<Boolean, List<Map.Entry<Descriptor, String>>> results = available.stream().flatMap(descriptor ->
-                    descriptor.getExecutionRuntimes().stream().<Map.Entry<Descriptor, String>>map(runtime1 ->
-                            new AbstractMap.SimpleEntry<>(descriptor, runtime1.getMismatches(runtime))
-                    )
-            ).collect(Collectors.partitioningBy(entry -> entry.getValue() == null));
-            List<Map.Entry<Descriptor, String>> matched = results.get(true);
+            List<Descriptor> matched = runtimes.match(runtime);
             if (matched.isEmpty()) {
                 LOGGER.warn("For analysis [{}] of total [{}] descriptors none matched to requested. Fall back to default", analysisId, available.size());
+                runtimes.closest(runtime).ifPresent(closest ->
+                        LOGGER.info("For analysis [{}] closest descriptor is [{}]: {}", analysisId, closest.getKey().getLabel(), closest.getValue())
+                );
                 if (dependencyMatching) {
-                    List<Map.Entry<Descriptor, String>> notMatched = results.get(false);
-                    notMatched.forEach(mismatch -> {
-                        LOGGER.info("Descriptor [{}] not matched: {}", mismatch.getKey().getLabel(), mismatch.getValue());
-                    });
+                    available.forEach(descriptor -> descriptor.getExecutionRuntimes().forEach(runtime1 ->
+                            Optional.ofNullable(runtime1.getMismatches(runtime)).ifPresent(mismatch ->
+                                    LOGGER.info("Descriptor [{}] not matched: {}", descriptor.getLabel(), mismatch)
+                            )
+                    ));
                 }
                 return Optional.empty();
             } else {
                 return matched.stream().reduce((a, b) -> {
-                    LOGGER.info("For analysis [{}] multiple descriptors matched. Discarded extra [{}]", analysisId, b.getKey().getBundleName());
+                    LOGGER.info("For analysis [{}] multiple descriptors matched. Discarded extra [{}]", analysisId, b.getBundleName());
                     return a;
                 }).map(match -> {
-                    LOGGER.info("For analysis [{}] using matched descriptor [{}]", analysisId, match.getKey().getBundleName());
+                    LOGGER.info("For analysis [{}] using matched descriptor [{}]", analysisId, match.getBundleName());
                     return match;
                 });
             }
-        }).map(Map.Entry::getKey).map(this::toBundle).orElse(defaultDescriptorBundle);
+        }).map(descriptor -> toBundle(snapshot, descriptor)).orElse(defaultDescriptorBundle);
     }
 
-    private DescriptorBundle toBundle(Descriptor descriptor) {
-        String bundleName = descriptor.getBundleName();
-        String path = archiveFolder.map(folder -> folder.resolve(bundleName).toFile().getPath()).orElse(bundleName);
-        File bundle = new File(path);
-        if (bundle.exists() && bundle.isFile()) {
-            return new DescriptorBundle(path, descriptor);
-        } else {
-            LOGGER.info("Descriptor [{}] matched, but bundle [{}] not found", descriptor.getLabel(), path);
+    private static DescriptorBundle toBundle(DescriptorIndex snapshot, Descriptor descriptor) {
+        return snapshot.getBundle(descriptor).orElseGet(() -> {
+            LOGGER.info("Descriptor [{}] matched, but bundle [{}] not found", descriptor.getLabel(), descriptor.getBundleName());
             return null;
-        }
+        });
     }
 
     private Optional<ExecutionRuntime> getRuntime(File dir) {
@@ -0,0 +1,104 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import com.odysseusinc.arachne.executionengine.model.descriptor.Descriptor;
+import com.odysseusinc.arachne.executionengine.model.descriptor.ExecutionRuntime;
+import com.odysseusinc.arachne.executionengine.model.descriptor.r.RDependency;
+import com.odysseusinc.arachne.executionengine.model.descriptor.r.RExecutionRuntime;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Inverted index of descriptor runtimes by R version and by dependency (name, version and source). Each runtime gets
+ * a position, and every key maps to the set of positions of runtimes having it, so that matching a requested runtime
+ * is an intersection of a set per requested dependency instead of a comparison with every descriptor.
+ */
+public final class RuntimeIndex {
+    private static final BitSet NONE = new BitSet();
+
+    /**
+     * Descriptor of the runtime at each position
+     */
+    private final List<Descriptor> descriptors = new ArrayList<>();
+    private final List<RExecutionRuntime> runtimes = new ArrayList<>();
+    private final Map<String, BitSet> byVersion = new HashMap<>();
+    private final Map<RDependency, BitSet> byDependency = new HashMap<>();
+
+    public RuntimeIndex(List<Descriptor> available) {
+        for (Descriptor descriptor : available) {
+            for (ExecutionRuntime runtime : descriptor.getExecutionRuntimes()) {
+                if (runtime instanceof RExecutionRuntime) {
+                    RExecutionRuntime rRuntime = (RExecutionRuntime) runtime;
+                    int position = runtimes.size();
+                    descriptors.add(descriptor);
+                    runtimes.add(rRuntime);
+                    byVersion.computeIfAbsent(rRuntime.getVersion(), version -> new BitSet()).set(position);
+                    Optional.ofNullable(rRuntime.getDependencies()).orElse(Collections.emptyList()).forEach(dependency ->
+                            byDependency.computeIfAbsent(dependency, key -> new BitSet()).set(position)
+                    );
+                }
+            }
+        }
+    }
+
+    /**
+     * @return descriptors having a runtime which matches the requested, in the order they were indexed. A descriptor
+     * is listed once even if several of its runtimes match. Same as checking {@link ExecutionRuntime#getMismatches}
+     * of every runtime for null.
+     */
+    public List<Descriptor> match(ExecutionRuntime requested) {
+        if (!(requested instanceof RExecutionRuntime)) {
+            return Collections.emptyList();
+        }
+        RExecutionRuntime rRequested = (RExecutionRuntime) requested;
+        BitSet matched = (BitSet) byVersion.getOrDefault(rRequested.getVersion(), NONE).clone();
+        for (RDependency dependency : rRequested.getDependencies()) {
+            if (matched.isEmpty()) {
+                break;
+            }
+            matched.and(byDependency.getOrDefault(dependency, NONE));
+        }
+        Set<Descriptor> result = new LinkedHashSet<>();
+        for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+            result.add(descriptors.get(i));
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Finds the runtime closest to the requested, to tell what prevented it from matching. Runtimes are ranked by the
+     * number of requested dependencies they have, those having the requested R version going first among equals.
+     * @return descriptor with the description of mismatches, empty if there is no runtime of the requested type
+     */
+    public Optional<Map.Entry<Descriptor, String>> closest(ExecutionRuntime requested) {
+        if (!(requested instanceof RExecutionRuntime) || runtimes.isEmpty()) {
+            return Optional.empty();
+        }
+        RExecutionRuntime rRequested = (RExecutionRuntime) requested;
+        int[] present = new int[runtimes.size()];
+        for (RDependency dependency : rRequested.getDependencies()) {
+            BitSet having = byDependency.getOrDefault(dependency, NONE);
+            for (int i = having.nextSetBit(0); i >= 0; i = having.nextSetBit(i + 1)) {
+                present[i]++;
+            }
+        }
+        BitSet sameVersion = byVersion.getOrDefault(rRequested.getVersion(), NONE);
+        int best = 0;
+        for (int i = 1; i < present.length; i++) {
+            if (present[i] > present[best] || present[i] == present[best] && sameVersion.get(i) && !sameVersion.get(best)) {
+                best = i;
+            }
+        }
+        String mismatches = String.format("%d of %d dependencies present. %s",
+                present[best], rRequested.getDependencies().size(), runtimes.get(best).getMismatches(requested)
+        );
+        return Optional.of(new AbstractMap.SimpleEntry<>(descriptors.get(best), mismatches));
+    }
+}
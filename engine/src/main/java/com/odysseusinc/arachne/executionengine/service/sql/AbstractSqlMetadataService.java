@@ -45,7 +45,6 @@ import java.sql.SQLException;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
-import org.apache.commons.lang3.StringUtils;
 
 abstract class AbstractSqlMetadataService implements SqlMetadataService {
 
@@ -81,7 +80,7 @@ abstract class AbstractSqlMetadataService implements SqlMetadataService {
 
     String getSchema() {
 
-        return StringUtils.defaultString(dataSource.getCdmSchema(), getDefaultSchema());
+        return Objects.toString(dataSource.getCdmSchema(), getDefaultSchema());
     }
 
     public List<Vocabulary> getVocabularyVersions(final String cdmVersion) throws SQLException {
@@ -1,10 +1,60 @@
 #!/usr/bin/env bash
 
 jail=$1
-sudo umount $jail/proc
-dirs=( bin bigquery boot dev etc home hive impala lib lib32 libx32 lib64 libs.r media mnt mssql netezza opt oracle postgresql snowflake proc redshift root run sbin srv sys tmp usr var .Rhistory )
+# Optional. When given, jail directories are moved there to be deleted by the engine in background
+trash=$2
+# Optional. Cgroup the jail was running in, see jail.sh
+cgroup=$3
+if [ -d $jail.root ]
+then
+  # Jail was an overlay on top of a cached bundle, see jail.sh
+  sudo umount $jail.root/proc
+  if mountpoint -q $jail.root/renv-cache
+  then
+    sudo umount $jail.root/renv-cache
+  fi
+  sudo umount $jail.root
+  sudo rm -fr $jail.root $jail.work
+else
+  sudo umount $jail/proc
+  if mountpoint -q $jail/renv-cache
+  then
+    sudo umount $jail/renv-cache
+  fi
+fi
+dirs=( bin bigquery boot dev etc home hive impala lib lib32 libx32 lib64 libs.r media mnt mssql netezza opt oracle postgresql snowflake proc redshift renv-cache root run sbin srv sys tmp usr var .Rhistory )
 
+if [ -n "$trash" ] && sudo mkdir -p $trash
+then
+  # Trash is expected on the same file system, so moving is a rename.
+  # Entry is hidden from the reaper until filled
+  entry=$(sudo mktemp -d $trash/.jail.XXXXXX)
+fi
 for d in "${dirs[@]}"
 do
-    sudo rm -fr $jail/$d
+  if [ -e $jail/$d ] || [ -L $jail/$d ]
+  then
+    if [ -z "$entry" ] || ! sudo mv $jail/$d $entry/
+    then
+      sudo rm -fr $jail/$d
+    fi
+  fi
 done
+if [ -n "$entry" ]
+then
+  sudo mv $entry $trash/$(basename $entry | cut -c2-)
+fi
+if [ -n "$cgroup" ] && [ -d $cgroup ]
+then
+  # Anything still running in the jail has to go before the cgroup can be removed
+  if [ -f $cgroup/cgroup.kill ]
+  then
+    echo 1 | sudo tee $cgroup/cgroup.kill > /dev/null
+    for i in $(seq 50)
+    do
+      [ -z "$(cat $cgroup/cgroup.procs 2>/dev/null)" ] && break
+      sleep 0.1
+    done
+  fi
+  sudo rmdir $cgroup
+fi
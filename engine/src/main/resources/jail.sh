@@ -7,27 +7,66 @@ ANALYSIS_FILE=$2 #time.R
 
 DIST_ARCHIVE=$3
 
-sudo tar xzf $DIST_ARCHIVE -C $JAIL
+# When the engine provides an extracted bundle, the jail root is an overlay with the bundle as a read only lower layer.
+# Analysis files and everything written in the jail end up in $JAIL as the upper layer. Otherwise, unpack the bundle.
+ROOT=$JAIL
+if [ -n "$BUNDLE_DIR" ]
+then
+  sudo mkdir -p $JAIL.root $JAIL.work
+  if sudo mount -t overlay overlay -o lowerdir=$BUNDLE_DIR,upperdir=$JAIL,workdir=$JAIL.work $JAIL.root
+  then
+    ROOT=$JAIL.root
+  else
+    echo "Overlay mount failed, unpacking $DIST_ARCHIVE"
+    sudo rm -fr $JAIL.root $JAIL.work
+  fi
+fi
+if [ "$ROOT" = "$JAIL" ]
+then
+  # A jail prepared in advance by the engine only needs to be moved in, which is a rename on the same file system
+  if [ -n "$PREPARED_JAIL" ] && sudo find $PREPARED_JAIL -mindepth 1 -maxdepth 1 -exec mv -t $JAIL {} +
+  then
+    sudo rm -fr $PREPARED_JAIL
+  else
+    if [ -n "$PREPARED_JAIL" ]
+    then
+      echo "Prepared jail $PREPARED_JAIL is not usable, unpacking $DIST_ARCHIVE"
+      sudo rm -fr $PREPARED_JAIL
+    fi
+    sudo tar xzf $DIST_ARCHIVE -C $JAIL
+  fi
+fi
 
 export R_HOME=/usr/lib/R
-sudo cp /etc/resolv.conf $JAIL/etc/resolv.conf
+sudo cp /etc/resolv.conf $ROOT/etc/resolv.conf
 
 if [ -n "$KRB_CONF" ]
 then
-  sudo cp $KRB_CONF $JAIL/etc/krb5.conf
+  sudo cp $KRB_CONF $ROOT/etc/krb5.conf
 fi
 if [ -n "$KRB_KEYTAB" ]
 then
-  sudo cp $KRB_KEYTAB $JAIL/etc/krb.keytab
+  sudo cp $KRB_KEYTAB $ROOT/etc/krb.keytab
 fi
 if [ -n "$BQ_KEYFILE" ]
 then
-  sudo mkdir -p $(dirname $JAIL/$BQ_KEYFILE)
-  sudo cp $BQ_KEYFILE $JAIL/$BQ_KEYFILE
+  sudo mkdir -p $(dirname $ROOT/$BQ_KEYFILE)
+  sudo cp $BQ_KEYFILE $ROOT/$BQ_KEYFILE
 fi
 
-sudo cp -R /impala/. $JAIL/impala/
-CHROOT_DEF=$JAIL/etc/R-with-krb.sh
+sudo cp -R /impala/. $ROOT/impala/
+
+# Packages cached by the engine are linked into the renv project library and resolve through this read-only mount.
+# Without it, renv installs them as usual
+if [ -n "$RENV_CACHE_DIR" ]
+then
+  sudo mkdir -p $ROOT/renv-cache
+  if ! (sudo mount --bind $RENV_CACHE_DIR $ROOT/renv-cache && sudo mount -o remount,bind,ro $ROOT/renv-cache)
+  then
+    echo "renv cache $RENV_CACHE_DIR is not usable, packages will be installed"
+  fi
+fi
+CHROOT_DEF=$ROOT/etc/R-with-krb.sh
 sudo touch $CHROOT_DEF
 printf "#!/usr/bin/env bash\n " | sudo tee -a $CHROOT_DEF > /dev/null
 printf "	export DATA_SOURCE_NAME=%q \n" "${DATA_SOURCE_NAME}" | sudo tee -a $CHROOT_DEF > /dev/null
@@ -47,7 +86,37 @@ sudo tail --lines=+2 /etc/R-with-krb.sh  | sudo tee -a $CHROOT_DEF  > /dev/null
 
 sudo chmod +x $CHROOT_DEF
 
-sudo unshare --fork --pid -- chroot $JAIL /bin/bash -c " \
+# When the engine asks for a cgroup v2, the jail runs in it with the given limits, and everything started from here on
+# stays in it. Without a cgroup, the analysis runs with no limits.
+if [ -n "$CGROUP_DIR" ]
+then
+  CGROUP_PARENT=$(dirname $CGROUP_DIR)
+  sudo mkdir -p $CGROUP_DIR
+  # Controllers have to be enabled for children on every level below the root
+  for level in $(dirname $CGROUP_PARENT) $CGROUP_PARENT
+  do
+    if [ -f $level/cgroup.subtree_control ]
+    then
+      echo "+memory +cpu +io" | sudo tee $level/cgroup.subtree_control > /dev/null 2>&1
+    fi
+  done
+  echo "$CGROUP_MEMORY_MAX" | sudo tee $CGROUP_DIR/memory.max > /dev/null
+  if [ "$CGROUP_MEMORY_MAX" != "max" ] && [ -f $CGROUP_DIR/memory.swap.max ]
+  then
+    echo 0 | sudo tee $CGROUP_DIR/memory.swap.max > /dev/null
+  fi
+  echo "$CGROUP_CPU_MAX" | sudo tee $CGROUP_DIR/cpu.max > /dev/null
+  if [ -n "$CGROUP_IO_MAX" ]
+  then
+    echo "$CGROUP_IO_MAX" | sudo tee $CGROUP_DIR/io.max > /dev/null
+  fi
+  if ! echo $$ | sudo tee $CGROUP_DIR/cgroup.procs > /dev/null
+  then
+    echo "Cgroup $CGROUP_DIR is not usable, running without resource limits"
+  fi
+fi
+
+sudo unshare --fork --pid -- chroot $ROOT /bin/bash -c " \
     mount -t proc proc /proc && \
     ./etc/R-with-krb.sh \"$KINIT_PARAMS\" \"$ANALYSIS_FILE\" \"$KRB_PASSWORD\" \
 "
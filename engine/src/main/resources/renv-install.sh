@@ -0,0 +1,34 @@
+#!/usr/bin/env bash
+
+# Installs an R package for the renv cache of the engine. Nothing of any analysis is involved: the package is installed
+# in a clean root unpacked from the runtime bundle, from the repository configured for the engine. The engine verifies
+# the renv hash written next to the staging dir against renv.lock before publishing the package.
+DIST_ARCHIVE=$1
+# Installed package ends up in $STAGING/$PACKAGE, and its hash in $STAGING.hash
+STAGING=$2
+PACKAGE=$3
+# As taken by renv::install, e.g. SqlRender@1.9.0 or ohdsi/Tools@<commit>
+SPEC=$4
+REPO=$5
+
+ROOT=$STAGING.root
+trap 'mountpoint -q $ROOT/proc && sudo umount $ROOT/proc; sudo rm -fr --one-file-system $ROOT' EXIT
+sudo rm -fr --one-file-system $ROOT
+sudo mkdir -p $ROOT $STAGING
+sudo tar xzf $DIST_ARCHIVE -C $ROOT || exit 1
+sudo cp /etc/resolv.conf $ROOT/etc/resolv.conf
+sudo tee $ROOT/renv-install.R > /dev/null << 'SCRIPT'
+args <- commandArgs(trailingOnly = TRUE)
+library <- "/renv-install"
+dir.create(library)
+options(repos = c(CRAN = args[3]))
+# Dependencies get into the same library, only the package itself is cached
+renv::install(args[2], library = library, prompt = FALSE)
+writeLines(renv:::renv_hash_description(file.path(library, args[1], "DESCRIPTION")), "/renv-install.hash")
+SCRIPT
+
+sudo unshare --fork --pid -- chroot $ROOT /bin/bash -c " \
+    mount -t proc proc /proc && \
+    Rscript --vanilla /renv-install.R \"\$0\" \"\$1\" \"\$2\" \
+" "$PACKAGE" "$SPEC" "$REPO" || exit 1
+sudo mv $ROOT/renv-install/$PACKAGE $STAGING/$PACKAGE && sudo cp $ROOT/renv-install.hash $STAGING.hash
@@ -0,0 +1,101 @@
+package com.odysseusinc.arachne.executionengine.config;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+public class CompressingClientHttpRequestFactoryTest {
+    private static final String LOG = String.join("\n", Collections.nCopies(1000, "Executing SQL: SELECT * FROM cdm.person"));
+
+    private HttpServer server;
+    private final List<String> encodings = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> bodies = Collections.synchronizedList(new ArrayList<>());
+    private volatile boolean acceptGzip = true;
+    private RestTemplate restTemplate;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/status", exchange -> {
+            String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+            encodings.add(encoding);
+            int status = 200;
+            if ("gzip".equals(encoding) && !acceptGzip) {
+                IOUtils.consume(exchange.getRequestBody());
+                status = 415;
+            } else {
+                InputStream body = "gzip".equals(encoding) ? new GZIPInputStream(exchange.getRequestBody()) : exchange.getRequestBody();
+                bodies.add(IOUtils.toString(body, StandardCharsets.UTF_8));
+            }
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        server.start();
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(HttpClients.createDefault());
+        requestFactory.setBufferRequestBody(false);
+        restTemplate = new RestTemplate(new CompressingClientHttpRequestFactory(requestFactory, 6));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void bodyIsCompressed() {
+        restTemplate.postForEntity(url(), LOG, String.class);
+
+        Assertions.assertEquals(Collections.singletonList("gzip"), encodings);
+        Assertions.assertEquals(Collections.singletonList(LOG), bodies);
+    }
+
+    @Test
+    public void fallsBackToUncompressedWhenRejected() {
+        acceptGzip = false;
+        // Rejected request is repeated uncompressed
+        restTemplate.postForEntity(url(), LOG, String.class);
+        restTemplate.postForEntity(url(), LOG, String.class);
+
+        Assertions.assertEquals(Arrays.asList("gzip", null, null), encodings);
+        Assertions.assertEquals(Arrays.asList(LOG, LOG), bodies);
+    }
+
+    @Test
+    public void multipartUploadsAreSentAsIs() {
+        acceptGzip = false;
+        MultiValueMap<String, Object> parts = new LinkedMultiValueMap<>();
+        parts.add("file", new ByteArrayResource(LOG.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public String getFilename() {
+                return "result.zip";
+            }
+        });
+        restTemplate.postForEntity(url(), parts, String.class);
+
+        // Not compressed, so never rejected and repeated
+        Assertions.assertEquals(Collections.singletonList(null), encodings);
+        Assertions.assertTrue(bodies.get(0).contains(LOG));
+    }
+
+    private String url() {
+        return "http://localhost:" + server.getAddress().getPort() + "/status";
+    }
+}
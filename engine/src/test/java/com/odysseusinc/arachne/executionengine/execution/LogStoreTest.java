@@ -0,0 +1,44 @@
+package com.odysseusinc.arachne.executionengine.execution;
+
+import java.io.File;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LogStoreTest {
+    @TempDir
+    public Path dir;
+
+    @Test
+    public void spillsAllButTailAndReadsByOffset() {
+        File file = dir.resolve("1.spill").toFile();
+        StringBuilder expected = new StringBuilder();
+        try (LogStore store = new LogStore(file, 100, 64)) {
+            for (int i = 0; i < 200; i++) {
+                String line = "line " + i + " 😀\n";
+                expected.append(line);
+                store.append(line);
+            }
+            Assertions.assertTrue(file.isFile());
+            Assertions.assertTrue(store.getTail().length() < 100 + 64);
+            Assertions.assertEquals(expected.length(), store.length());
+            Assertions.assertEquals(expected.toString(), store.toString());
+            Assertions.assertEquals(expected.substring(50, 1550), store.read(50, 1500));
+            Assertions.assertEquals(expected.substring(expected.length() - 10), store.read(expected.length() - 10, 100));
+            Assertions.assertEquals("", store.read(expected.length() + 10, 100));
+        }
+        Assertions.assertFalse(file.exists());
+    }
+
+    @Test
+    public void keepsShortLogInMemory() {
+        File file = dir.resolve("2.spill").toFile();
+        try (LogStore store = new LogStore(file, 100, 64)) {
+            store.append("short");
+            Assertions.assertEquals("short", store.toString());
+            Assertions.assertEquals("or", store.read(2, 2));
+            Assertions.assertFalse(file.exists());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.odysseusinc.arachne.executionengine.execution;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LogTailerTest {
+    @TempDir
+    public Path dir;
+
+    private LogTailer tailer;
+
+    @BeforeEach
+    public void init() throws IOException {
+        tailer = new LogTailer(dir.toString());
+        tailer.init();
+    }
+
+    @AfterEach
+    public void shutdown() throws IOException {
+        tailer.shutdown();
+    }
+
+    @Test
+    public void appendsArePassedAsDeltas() throws IOException {
+        StringBuffer received = new StringBuffer();
+        LogTailer.Tail tail = tailer.create(1L);
+        byte[] text = "Prüfung\n".getBytes(StandardCharsets.UTF_8);
+        try (FileOutputStream out = new FileOutputStream(tail.getFile(), true)) {
+            // Split in the middle of a multi-byte character
+            out.write(text, 0, 3);
+            out.flush();
+            tail.listen(received::append);
+            Assertions.assertEquals("Pr", received.toString());
+
+            out.write(text, 3, text.length - 3);
+            out.flush();
+            tail.poll();
+            Assertions.assertEquals("Prüfung\n", received.toString());
+
+            out.write("done".getBytes(StandardCharsets.UTF_8));
+        }
+        Assertions.assertEquals(1, tailer.getFollowedCount());
+        tail.close();
+        Assertions.assertEquals("Prüfung\ndone", received.toString());
+        Assertions.assertEquals(0, tailer.getFollowedCount());
+        Assertions.assertFalse(tail.getFile().exists());
+    }
+}
@@ -0,0 +1,37 @@
+package com.odysseusinc.arachne.executionengine.execution;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class OverseerSchedulerTest {
+    private final OverseerScheduler scheduler = new OverseerScheduler(2);
+
+    @AfterEach
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void jobsAreVisibleUntilDoneOrCancelled() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        scheduler.schedule(1L, "watchdog", fired::countDown, 50, TimeUnit.MILLISECONDS);
+        OverseerScheduler.Job pump = scheduler.scheduleAtFixedRate(1L, "log flush", () -> {}, 10, TimeUnit.MILLISECONDS);
+        OverseerScheduler.Job timeout = scheduler.schedule(2L, "watchdog", () -> Assertions.fail("Cancelled"), 1, TimeUnit.HOURS);
+
+        Assertions.assertEquals(2, scheduler.getTimerCount());
+        Assertions.assertEquals(1, scheduler.getLogPumpCount());
+        Assertions.assertTrue(scheduler.getJobs().get(1).startsWith("[1] log flush"));
+
+        Assertions.assertTrue(fired.await(5, TimeUnit.SECONDS));
+        timeout.cancel();
+        pump.cancel();
+        // Let the timer thread finish deregistering the completed job
+        for (int i = 0; i < 100 && !scheduler.getJobs().isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(0, scheduler.getJobs().size());
+    }
+}
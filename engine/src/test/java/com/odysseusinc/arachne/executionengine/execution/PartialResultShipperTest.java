@@ -0,0 +1,100 @@
+package com.odysseusinc.arachne.executionengine.execution;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisRequestDTO;
+import com.odysseusinc.arachne.executionengine.util.AutoCloseWrapper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PartialResultShipperTest {
+    @TempDir
+    Path analysisDir;
+
+    private final CallbackService callbackService = mock(CallbackService.class);
+    // Scans are triggered by the tests
+    private final PartialResultShipper shipper = new PartialResultShipper(callbackService, 3600, 1);
+    private final AnalysisRequestDTO analysis = new AnalysisRequestDTO();
+    private File report;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        analysis.setId(1L);
+        analysis.setPartialResultCallback("http://localhost/partial");
+        Path done = Files.createDirectories(analysisDir.resolve("done"));
+        report = Files.write(done.resolve("report.csv"), "1,2,3".getBytes()).toFile();
+        Files.createFile(done.resolve(PartialResultShipper.FINAL_MARKER));
+    }
+
+    @AfterEach
+    public void shutdown() {
+        shipper.shutdown();
+    }
+
+    @Test
+    public void stopWaitsForPartBeingPacked() throws Exception {
+        CountDownLatch packing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(callbackService.packPartialResults(eq(analysis), any(), anySet(), eq(1), any())).thenAnswer(invocation -> {
+            packing.countDown();
+            release.await();
+            return AutoCloseWrapper.of(Collections.emptyList(), () -> {});
+        });
+        PartialResultShipper.Watch watch = shipper.watch(analysis, analysisDir.toFile(), null);
+
+        CompletableFuture<Void> scan = CompletableFuture.runAsync(watch::scan);
+        Assertions.assertTrue(packing.await(5, TimeUnit.SECONDS));
+        // Packing does not hold the lock
+        Assertions.assertTrue(watch.isRemaining(report));
+
+        CompletableFuture<Void> stop = CompletableFuture.runAsync(watch::stop);
+        Assertions.assertThrows(TimeoutException.class, () -> stop.get(200, TimeUnit.MILLISECONDS));
+        release.countDown();
+        stop.get(5, TimeUnit.SECONDS);
+        scan.get(5, TimeUnit.SECONDS);
+
+        verify(callbackService).sendPartialResults(any(), eq(1), any(), eq(analysis.getPartialResultCallback()), any());
+        Assertions.assertFalse(watch.isRemaining(report));
+    }
+
+    @Test
+    public void nothingIsShippedAfterStop() throws Exception {
+        PartialResultShipper.Watch watch = shipper.watch(analysis, analysisDir.toFile(), null);
+        watch.stop();
+        watch.scan();
+
+        verify(callbackService, never()).packPartialResults(any(), any(), anySet(), anyInt(), any());
+        Assertions.assertTrue(watch.isRemaining(report));
+    }
+
+    @Test
+    public void failedPartStaysInFinalResult() throws Exception {
+        when(callbackService.packPartialResults(eq(analysis), any(), anySet(), anyInt(), any())).thenThrow(new IllegalStateException("disk full"));
+        PartialResultShipper.Watch watch = shipper.watch(analysis, analysisDir.toFile(), null);
+        watch.scan();
+        watch.stop();
+
+        verify(callbackService, never()).sendPartialResults(any(), anyInt(), any(), any(), any());
+        Assertions.assertTrue(watch.isRemaining(report));
+        Assertions.assertFalse(watch.isRemaining(analysisDir.resolve("done").resolve(PartialResultShipper.FINAL_MARKER).toFile()));
+    }
+}
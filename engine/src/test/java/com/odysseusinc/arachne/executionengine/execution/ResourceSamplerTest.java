@@ -0,0 +1,148 @@
+package com.odysseusinc.arachne.executionengine.execution;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ResourceSamplerTest {
+    @TempDir
+    public Path proc;
+
+    @Test
+    public void aggregatesProcessTree() throws IOException, InterruptedException {
+        process(10, 1, "jail.sh", 100, 50, 1000, 200);
+        process(11, 10, "R (worker) x", 300, 100, 5000, 800);
+        process(12, 1, "other", 900, 900, 9000, 9000);
+        ResourceSampler sampler = new ResourceSampler(proc, 1);
+        Process process = new ProcessBuilder("true").start();
+        process.waitFor();
+        sampler.watch(1L, new FakePidProcess(process, 10), Optional.empty());
+        try {
+            sampler.sample();
+            ResourceUsage usage = sampler.getUsage(1L).get();
+            Assertions.assertEquals(5.5, usage.getCpuSeconds(), 0.001);
+            Assertions.assertEquals(6000L << 10, usage.getRssBytes());
+            Assertions.assertEquals(1000L, usage.getReadBytes());
+            Assertions.assertEquals(2, usage.getProcessCount());
+
+            // Exited worker still counts for CPU and I/O, but not for memory
+            FileUtils.deleteDirectory(proc.resolve("11").toFile());
+            sampler.sample();
+            usage = sampler.getUsage(1L).get();
+            Assertions.assertEquals(5.5, usage.getCpuSeconds(), 0.001);
+            Assertions.assertEquals(1000L << 10, usage.getRssBytes());
+            Assertions.assertEquals(6000L << 10, usage.getPeakRssBytes());
+            Assertions.assertEquals(1000L, usage.getWriteBytes());
+            Assertions.assertEquals(2, usage.getSamples());
+        } finally {
+            Assertions.assertTrue(sampler.stop(1L).isPresent());
+            sampler.shutdown();
+        }
+        Assertions.assertFalse(sampler.getUsage(1L).isPresent());
+    }
+
+    @Test
+    public void prefersCgroupCounters(@TempDir Path cgroup) throws IOException, InterruptedException {
+        process(10, 1, "jail.sh", 100, 50, 1000, 200);
+        ResourceSampler sampler = new ResourceSampler(proc, 1);
+        Process process = new ProcessBuilder("true").start();
+        process.waitFor();
+        sampler.watch(1L, new FakePidProcess(process, 10), Optional.of(cgroup));
+        try {
+            // Not created by jail.sh yet
+            sampler.sample();
+            Assertions.assertEquals(1.5, sampler.getUsage(1L).get().getCpuSeconds(), 0.001);
+
+            write(cgroup.resolve("cpu.stat"), "usage_usec 7500000\nuser_usec 5000000\nsystem_usec 2500000\n");
+            write(cgroup.resolve("io.stat"), "8:0 rbytes=4096 wbytes=1024 rios=1 wios=1 dbytes=0 dios=0\n8:16 rbytes=4096 wbytes=0 rios=1 wios=0 dbytes=0 dios=0\n");
+            write(cgroup.resolve("memory.peak"), "52428800\n");
+            sampler.sample();
+            ResourceUsage usage = sampler.getUsage(1L).get();
+            Assertions.assertEquals(7.5, usage.getCpuSeconds(), 0.001);
+            Assertions.assertEquals(8192L, usage.getReadBytes());
+            Assertions.assertEquals(1024L, usage.getWriteBytes());
+            Assertions.assertEquals(52428800L, usage.getPeakRssBytes());
+            Assertions.assertEquals(1000L << 10, usage.getRssBytes());
+
+            // Removed by cleanup before accounting stops
+            FileUtils.cleanDirectory(cgroup.toFile());
+            sampler.sample();
+            Assertions.assertEquals(7.5, sampler.getUsage(1L).get().getCpuSeconds(), 0.001);
+        } finally {
+            sampler.shutdown();
+        }
+    }
+
+    private void process(int pid, int ppid, String name, long utime, long stime, long rssKb, long ioBytes) throws IOException {
+        Path dir = Files.createDirectories(proc.resolve(String.valueOf(pid)));
+        StringBuilder stat = new StringBuilder(pid + " (" + name + ") S " + ppid);
+        for (int field = 5; field <= 52; field++) {
+            stat.append(' ').append(field == 14 ? utime : field == 15 ? stime : 0);
+        }
+        write(dir.resolve("stat"), stat.toString());
+        write(dir.resolve("status"), "Name:\t" + name + "\nVmRSS:\t" + rssKb + " kB\n");
+        write(dir.resolve("io"), "rchar: 1\nread_bytes: " + ioBytes + "\nwrite_bytes: " + ioBytes + "\n");
+    }
+
+    private static void write(Path path, String text) throws IOException {
+        Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Process which reports a pid from the fake /proc
+     */
+    public static class FakePidProcess extends Process {
+        private final Process delegate;
+        /**
+         * Same field as in the process implementation of Java 8
+         */
+        private final int pid;
+
+        FakePidProcess(Process delegate, int pid) {
+            this.delegate = delegate;
+            this.pid = pid;
+        }
+
+        public long pid() {
+            return pid;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return delegate.getOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return delegate.getInputStream();
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return delegate.getErrorStream();
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            return delegate.waitFor();
+        }
+
+        @Override
+        public int exitValue() {
+            return delegate.exitValue();
+        }
+
+        @Override
+        public void destroy() {
+            delegate.destroy();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.odysseusinc.arachne.executionengine.execution;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisRequestDTO;
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.ResultManifestDTO;
+import com.odysseusinc.arachne.execution_engine_common.util.CommonFileUtils;
+import com.odysseusinc.arachne.execution_engine_common.util.CompressionPolicy;
+import com.odysseusinc.arachne.execution_engine_common.util.NestedZipFilter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+public class ResultManifestServiceTest {
+    private static final String EXCLUSIONS = "**/*.log";
+
+    @TempDir
+    Path resultDir;
+    @TempDir
+    Path zipDir;
+
+    private final RestTemplate restTemplate = mock(RestTemplate.class);
+    private final ResultManifestService service = new ResultManifestService(restTemplate, new ObjectMapper());
+    private final AnalysisRequestDTO analysis = new AnalysisRequestDTO();
+    private File report;
+    private File nested;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        analysis.setId(1L);
+        analysis.setResultManifestCallback("http://localhost/manifest");
+        analysis.setResultExclusions(EXCLUSIONS);
+        report = Files.write(resultDir.resolve("report.csv"), "1,2,3".getBytes()).toFile();
+        nested = resultDir.resolve("nested.zip").toFile();
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(nested.toPath()))) {
+            entry(out, "data/cohort.csv", "id\n1\n2\n");
+            entry(out, "data/debug.log", "a long log, which is excluded from results");
+        }
+        // The receiver has nothing yet
+        when(restTemplate.exchange(eq(analysis.getResultManifestCallback()), eq(HttpMethod.POST), any(HttpEntity.class), eq(String[].class), any(), any()))
+                .thenAnswer(invocation -> {
+                    HttpEntity<ResultManifestDTO> request = invocation.getArgument(2);
+                    return ResponseEntity.ok(request.getBody().getFiles().stream().map(ResultManifestDTO.ResultFileDTO::getHash).toArray(String[]::new));
+                });
+    }
+
+    @Test
+    public void uncompressedResultsAreHashedAsIs() throws IOException {
+        List<ResultManifestDTO.ResultFileDTO> entries = negotiate(NestedZipFilter.none());
+
+        Assertions.assertEquals("nested.zip", entries.get(1).getPath());
+        Assertions.assertEquals(sha256(nested.toPath()), entries.get(1).getHash());
+        Assertions.assertEquals(nested.length(), entries.get(1).getSize());
+        Assertions.assertEquals(sha256(report.toPath()), entries.get(0).getHash());
+    }
+
+    @Test
+    public void compressedResultsAreHashedAsShipped() throws IOException {
+        List<ResultManifestDTO.ResultFileDTO> entries = negotiate(new NestedZipFilter(Collections.singletonList(EXCLUSIONS)));
+
+        File archive = zipDir.resolve("result.zip").toFile();
+        CommonFileUtils.compressAndSplit(resultDir.toFile(), archive, null, EXCLUSIONS, CompressionPolicy.fixed(6), 1);
+        try (ZipFile zip = new ZipFile(archive); InputStream shipped = zip.getInputStream(zip.getEntry("nested.zip"))) {
+            byte[] content = IOUtils.toByteArray(shipped);
+            Assertions.assertEquals(DigestUtils.sha256Hex(content), entries.get(1).getHash());
+            Assertions.assertEquals(content.length, entries.get(1).getSize());
+        }
+        Assertions.assertNotEquals(sha256(nested.toPath()), entries.get(1).getHash());
+        Assertions.assertEquals(sha256(report.toPath()), entries.get(0).getHash());
+    }
+
+    private List<ResultManifestDTO.ResultFileDTO> negotiate(NestedZipFilter filter) {
+        ResultManifestDTO manifest = service.negotiate(analysis, resultDir.toFile(), Arrays.asList(report, nested), filter)
+                .orElseThrow(AssertionError::new);
+        manifest.getFiles().forEach(entry -> Assertions.assertTrue(entry.isUploaded()));
+        return manifest.getFiles();
+    }
+
+    private static void entry(ZipOutputStream out, String name, String content) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(content.getBytes());
+        out.closeEntry();
+    }
+
+    private static String sha256(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return DigestUtils.sha256Hex(in);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.odysseusinc.arachne.executionengine.execution.callback;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisResultDTO;
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.Stage;
+import com.odysseusinc.arachne.execution_engine_common.util.CommonFileUtils;
+import com.odysseusinc.arachne.executionengine.util.AutoCloseWrapper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+
+public class ResultOutboxTest {
+    @TempDir
+    Path temp;
+
+    @Test
+    public void storedDeliveryIsRestored() throws IOException {
+        ResultOutbox outbox = new ResultOutbox(temp.resolve("outbox").toString(), new ObjectMapper());
+        AtomicBoolean disposed = new AtomicBoolean();
+        PendingDelivery stored = outbox.store(delivery(1L, file("1_result.zip"), disposed));
+
+        Assertions.assertTrue(stored.isDurable());
+        Assertions.assertTrue(disposed.get(), "Temporary files must be released once moved to outbox");
+        Assertions.assertEquals("1_result.zip", stored.getResources().get(0).getFilename());
+
+        List<PendingDelivery> restored = new ResultOutbox(temp.resolve("outbox").toString(), new ObjectMapper()).restore();
+        Assertions.assertEquals(1, restored.size());
+        PendingDelivery delivery = restored.get(0);
+        Assertions.assertEquals(1L, delivery.getId());
+        Assertions.assertEquals("http://central/result", delivery.getUrl());
+        Assertions.assertEquals(Stage.COMPLETED, delivery.getResult().getStage());
+        Assertions.assertEquals("content", new String(Files.readAllBytes(delivery.getResources().get(0).getFile().toPath()), StandardCharsets.UTF_8));
+
+        delivery.dispose();
+        Assertions.assertEquals(0, outbox.getEntryCount());
+    }
+
+    @Test
+    public void onlyLatestEntryPerExecutionIsKept() throws IOException, InterruptedException {
+        ResultOutbox outbox = new ResultOutbox(temp.resolve("outbox").toString(), new ObjectMapper());
+        outbox.store(delivery(2L, file("first.zip"), new AtomicBoolean()));
+        Thread.sleep(5);
+        outbox.store(delivery(2L, file("second.zip"), new AtomicBoolean()));
+        outbox.store(delivery(3L, null, new AtomicBoolean()));
+
+        List<PendingDelivery> restored = outbox.restore();
+        Assertions.assertEquals(2, restored.size());
+        PendingDelivery latest = restored.stream().filter(d -> d.getId() == 2L).findFirst().orElseThrow(AssertionError::new);
+        Assertions.assertEquals("second.zip", latest.getResources().get(0).getFilename());
+        Assertions.assertEquals(2, outbox.getEntryCount());
+    }
+
+    @Test
+    public void stdoutIsStoredSeparately() throws IOException {
+        ResultOutbox outbox = new ResultOutbox(temp.resolve("outbox").toString(), new ObjectMapper());
+        AnalysisResultDTO result = new AnalysisResultDTO();
+        result.setId(4L);
+        File stdout = file("4_stdout.txt");
+        outbox.store(new PendingDelivery(
+                "4", result, AutoCloseWrapper.of(CommonFileUtils.getFSResources(Collections.singletonList(file("4_result.zip"))), () -> {}),
+                AutoCloseWrapper.of(new FileSystemResource(stdout), () -> {}), "http://central/result", "secret"
+        ));
+
+        PendingDelivery restored = outbox.restore().get(0);
+        Assertions.assertEquals(1, restored.getResources().size());
+        Assertions.assertEquals("4_stdout.txt", restored.getStdout().getFilename());
+        Assertions.assertTrue(restored.getStdout().exists());
+        Assertions.assertFalse(stdout.exists());
+    }
+
+    @Test
+    public void passwordIsJournaledEncrypted() throws IOException {
+        ResultOutbox outbox = new ResultOutbox(temp.resolve("outbox").toString(), new ObjectMapper());
+        outbox.store(delivery(5L, file("5_result.zip"), new AtomicBoolean()));
+
+        try (Stream<Path> paths = Files.walk(temp.resolve("outbox"))) {
+            Path journal = paths.filter(path -> path.endsWith("delivery.json")).findFirst().orElseThrow(AssertionError::new);
+            Assertions.assertFalse(new String(Files.readAllBytes(journal), StandardCharsets.UTF_8).contains("secret"));
+        }
+        Assertions.assertTrue(Files.isRegularFile(temp.resolve("outbox.key")));
+        Assertions.assertEquals("secret", new ResultOutbox(temp.resolve("outbox").toString(), new ObjectMapper()).restore().get(0).getPassword());
+
+        // Without the key, the entry can not be sent, but it is kept
+        Files.delete(temp.resolve("outbox.key"));
+        Assertions.assertTrue(new ResultOutbox(temp.resolve("outbox").toString(), new ObjectMapper()).restore().isEmpty());
+        Assertions.assertEquals(1, outbox.getEntryCount());
+    }
+
+    @Test
+    public void resultsOverSizeLimitAreNotStored() throws IOException {
+        ResultOutbox outbox = new ResultOutbox(temp.resolve("outbox").toString(), null, 1, new ObjectMapper());
+        File large = file("large.zip");
+        Files.write(large.toPath(), new byte[2 << 20]);
+        AtomicBoolean disposed = new AtomicBoolean();
+        PendingDelivery delivery = outbox.store(delivery(4L, large, disposed));
+
+        Assertions.assertFalse(delivery.isDurable());
+        Assertions.assertFalse(disposed.get());
+        Assertions.assertTrue(large.isFile());
+        Assertions.assertTrue(outbox.store(delivery(5L, file("small.zip"), new AtomicBoolean())).isDurable());
+        Assertions.assertEquals(1, outbox.getEntryCount());
+    }
+
+    private File file(String name) throws IOException {
+        Path dir = Files.createTempDirectory(temp, "packed");
+        return Files.write(dir.resolve(name), "content".getBytes(StandardCharsets.UTF_8)).toFile();
+    }
+
+    private static PendingDelivery delivery(Long id, File file, AtomicBoolean disposed) {
+        AnalysisResultDTO result = new AnalysisResultDTO();
+        result.setId(id);
+        result.setStage(Stage.COMPLETED);
+        List<File> files = file != null ? Collections.singletonList(file) : Collections.emptyList();
+        return new PendingDelivery(
+                result, AutoCloseWrapper.of(CommonFileUtils.getFSResources(files), () -> disposed.set(true)), "http://central/result", "secret"
+        );
+    }
+}
@@ -0,0 +1,76 @@
+package com.odysseusinc.arachne.executionengine.execution.callback;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.ResultManifestDTO;
+import com.odysseusinc.arachne.execution_engine_common.util.CommonFileUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ResultRetentionTest {
+    @TempDir
+    Path temp;
+
+    private ResultRetention retention;
+
+    @AfterEach
+    public void shutdown() {
+        if (retention != null) {
+            retention.shutdown();
+        }
+    }
+
+    @Test
+    public void retainedFilesAreServedUntilReleased() throws IOException {
+        retention = new ResultRetention(temp.resolve("retained").toString(), 1, new ObjectMapper());
+        File first = file("a", "result.zip");
+        File second = file("b", "result.zip");
+
+        ResultManifestDTO manifest = retention.retain(4L, "secret", CommonFileUtils.getFSResources(Arrays.asList(first, second)));
+
+        Assertions.assertFalse(first.exists(), "Files must be moved into retention");
+        Assertions.assertEquals(Arrays.asList("result.zip", "1_result.zip"),
+                manifest.getFiles().stream().map(ResultManifestDTO.ResultFileDTO::getPath).collect(Collectors.toList())
+        );
+        ResultManifestDTO.ResultFileDTO entry = manifest.getFiles().get(1);
+        Assertions.assertFalse(entry.isUploaded());
+        Assertions.assertEquals(DigestUtils.sha256Hex("b"), entry.getHash());
+
+        File served = retention.find(4L, "1_result.zip", "secret").orElseThrow(AssertionError::new);
+        Assertions.assertEquals("b", new String(Files.readAllBytes(served.toPath()), StandardCharsets.UTF_8));
+        Assertions.assertFalse(retention.find(4L, "1_result.zip", "wrong").isPresent());
+        Assertions.assertFalse(retention.find(4L, "../4/result.zip", "secret").isPresent());
+        Assertions.assertFalse(retention.find(4L, "retention.json", "secret").isPresent());
+        String record = new String(Files.readAllBytes(temp.resolve("retained/4/retention.json")), StandardCharsets.UTF_8);
+        Assertions.assertFalse(record.contains("secret"));
+
+        Assertions.assertFalse(retention.release(4L, "wrong"));
+        Assertions.assertTrue(retention.release(4L, "secret"));
+        Assertions.assertFalse(retention.find(4L, "result.zip", "secret").isPresent());
+        Assertions.assertEquals(0, retention.getEntryCount());
+    }
+
+    @Test
+    public void expiredFilesAreNotServed() throws IOException {
+        retention = new ResultRetention(temp.resolve("retained").toString(), 0, new ObjectMapper());
+        retention.retain(5L, "secret", CommonFileUtils.getFSResources(Arrays.asList(file("c", "result.zip"))));
+
+        Assertions.assertFalse(retention.find(5L, "result.zip", "secret").isPresent());
+        retention.sweep();
+        Assertions.assertEquals(0, retention.getEntryCount());
+    }
+
+    private File file(String content, String name) throws IOException {
+        Path dir = Files.createTempDirectory(temp, "packed");
+        return Files.write(dir.resolve(name), content.getBytes(StandardCharsets.UTF_8)).toFile();
+    }
+}
@@ -0,0 +1,135 @@
+package com.odysseusinc.arachne.executionengine.execution.r;
+
+import com.odysseusinc.arachne.executionengine.config.runtimeservice.RIsolatedRuntimeProperties;
+import com.odysseusinc.arachne.executionengine.execution.Processes;
+import com.odysseusinc.arachne.executionengine.model.descriptor.Descriptor;
+import com.odysseusinc.arachne.executionengine.model.descriptor.DescriptorBundle;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BundleCacheTest {
+    private static final long ENTRY_SIZE = 400 << 10;
+
+    @TempDir
+    public Path root;
+
+    private final RIsolatedRuntimeProperties properties = new RIsolatedRuntimeProperties();
+    private DescriptorBundle first;
+    private DescriptorBundle second;
+    private DescriptorBundle third;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        first = bundle("first");
+        second = bundle("second");
+        third = bundle("third");
+        properties.setCacheDir(root.resolve("cache").toString());
+        // Fits two entries
+        properties.setCacheMaxSizeMb(1);
+    }
+
+    @Test
+    public void keysByArchiveStamp() throws IOException {
+        File archive = new File(first.getPath());
+        String key = BundleCache.key(archive, first);
+        Assertions.assertTrue(key.startsWith("first-"));
+        Assertions.assertEquals(key, BundleCache.key(archive, new DescriptorBundle(first.getPath(), first.getDescriptor())));
+
+        Files.setLastModifiedTime(archive.toPath(), FileTime.fromMillis(archive.lastModified() - 1000));
+        Assertions.assertNotEquals(key, BundleCache.key(archive, first));
+    }
+
+    @Test
+    public void extractsMissedBundlesInBackground() throws Exception {
+        Path content = Files.createDirectories(root.resolve("content").resolve("etc"));
+        Files.write(content.resolve("bundle"), "first".getBytes(StandardCharsets.UTF_8));
+        Processes.exec("tar", "czf", first.getPath(), "-C", root.resolve("content").toString(), "etc");
+        BundleCache cache = new BundleCache(properties);
+        cache.init();
+        try {
+            Assertions.assertFalse(cache.acquire(1L, first).isPresent());
+            Assertions.assertEquals(1, cache.getMissCount());
+            Assumptions.assumeTrue(Conditions.canRunAsRoot(), "Bundles are extracted as root");
+            // Polling misses do not queue the bundle again while it is being extracted
+            Conditions.await(() -> cache.acquire(2L, first).map(lease -> {
+                lease.close();
+                return true;
+            }).orElse(false));
+            try (BundleCache.Lease lease = cache.acquire(3L, first).get()) {
+                Assertions.assertEquals("first", new String(Files.readAllBytes(lease.getDir().resolve("etc/bundle")), StandardCharsets.UTF_8));
+            }
+        } finally {
+            cache.shutdown();
+        }
+    }
+
+    @Test
+    public void reusesCachedBundles() throws IOException {
+        BundleCache cache = cache(first, 0);
+        Assertions.assertEquals(1, cache.getBundleCount());
+        try (BundleCache.Lease lease = cache.acquire(1L, first).get()) {
+            Assertions.assertEquals(root.resolve("cache").resolve(BundleCache.key(new File(first.getPath()), first)), lease.getDir());
+            Assertions.assertEquals(1, cache.getHitCount());
+            Assertions.assertEquals(0, cache.getMissCount());
+            Assertions.assertEquals(1, cache.getLeaseCount());
+        }
+        Assertions.assertEquals(0, cache.getLeaseCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedBundles() throws IOException {
+        cache(first, 2000);
+        cache(second, 1000);
+        BundleCache cache = cache(third, -60000);
+
+        cache.acquire(1L, third).get().close();
+        Assertions.assertEquals(2, cache.getBundleCount());
+        // Still cached, otherwise it would be extracted
+        cache.acquire(2L, second).get().close();
+        Assertions.assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void keepsBundlesInUse() throws IOException {
+        cache(first, -60000);
+        cache(second, -120000);
+        BundleCache cache = cache(third, -180000);
+
+        // The least recently used once acquired, but leased
+        try (BundleCache.Lease lease = cache.acquire(1L, first).get()) {
+            Assertions.assertEquals(2, cache.getBundleCount());
+            cache.acquire(2L, third).get().close();
+            Assertions.assertEquals(2, cache.getHitCount());
+        }
+    }
+
+    private DescriptorBundle bundle(String id) throws IOException {
+        Descriptor descriptor = new Descriptor();
+        descriptor.setId(id);
+        Path archive = Files.write(root.resolve(id + ".tar.gz"), id.getBytes(StandardCharsets.UTF_8));
+        return new DescriptorBundle(archive.toString(), descriptor);
+    }
+
+    /**
+     * Puts the bundle into the cache directory as if it was extracted the given number of ms ago
+     * @return cache initialized from the directory
+     */
+    private BundleCache cache(DescriptorBundle bundle, long age) throws IOException {
+        Path entry = Files.createDirectories(Paths.get(properties.getCacheDir(), BundleCache.key(new File(bundle.getPath()), bundle)));
+        Files.write(Paths.get(entry + ".size"), String.valueOf(ENTRY_SIZE).getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis() - age));
+        BundleCache cache = new BundleCache(properties);
+        cache.init();
+        return cache;
+    }
+}
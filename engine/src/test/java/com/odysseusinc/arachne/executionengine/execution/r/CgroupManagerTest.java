@@ -0,0 +1,62 @@
+package com.odysseusinc.arachne.executionengine.execution.r;
+
+import com.odysseusinc.arachne.executionengine.config.runtimeservice.RIsolatedRuntimeProperties;
+import com.odysseusinc.arachne.executionengine.model.descriptor.Descriptor;
+import com.odysseusinc.arachne.executionengine.model.descriptor.ResourceLimits;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CgroupManagerTest {
+    @TempDir
+    public Path root;
+
+    @Test
+    public void appliesDescriptorLimitsWithinCeilings() throws IOException {
+        Files.write(root.resolve("cgroup.controllers"), "cpu io memory".getBytes(StandardCharsets.UTF_8));
+        RIsolatedRuntimeProperties properties = new RIsolatedRuntimeProperties();
+        properties.setCgroupParent(root.resolve("ee").toString());
+        properties.setCgroupMemoryMb(1024);
+        properties.setCgroupMaxMemoryMb(4096);
+        properties.setCgroupMaxCpus(2);
+        properties.setCgroupIoDevice("8:0");
+        properties.setCgroupIoWriteBps(1000);
+        CgroupManager manager = new CgroupManager(properties, root);
+        manager.init();
+
+        CgroupManager.Cgroup defaults = manager.forExecution(1L, new Descriptor()).get();
+        Assertions.assertEquals(root.resolve("ee/analysis-1"), defaults.getDir());
+        Assertions.assertEquals(String.valueOf(1024L << 20), defaults.getEnv().get("CGROUP_MEMORY_MAX"));
+        // No default CPU limit, but the ceiling applies
+        Assertions.assertEquals("200000 100000", defaults.getEnv().get("CGROUP_CPU_MAX"));
+        Assertions.assertEquals("8:0 rbps=max wbps=1000", defaults.getEnv().get("CGROUP_IO_MAX"));
+
+        ResourceLimits limits = new ResourceLimits();
+        limits.setMemoryMb(8192L);
+        limits.setCpus(0.5);
+        Descriptor descriptor = new Descriptor();
+        descriptor.setLimits(limits);
+        CgroupManager.Cgroup requested = manager.forExecution(2L, descriptor).get();
+        Assertions.assertEquals(String.valueOf(4096L << 20), requested.getMemoryMax());
+        Assertions.assertEquals("50000 100000", requested.getEnv().get("CGROUP_CPU_MAX"));
+
+        Files.createDirectories(requested.getDir());
+        Files.write(requested.getDir().resolve("memory.events"), "low 0\nhigh 0\nmax 12\noom 1\noom_kill 1\n".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(1, manager.getOomKills(2L, requested));
+        Assertions.assertEquals(0, manager.getOomKills(1L, defaults));
+        Assertions.assertEquals(1, manager.getOomKilledCount());
+    }
+
+    @Test
+    public void disabledWithoutCgroupV2() {
+        RIsolatedRuntimeProperties properties = new RIsolatedRuntimeProperties();
+        properties.setCgroupParent(root.resolve("ee").toString());
+        CgroupManager manager = new CgroupManager(properties, root);
+        manager.init();
+        Assertions.assertFalse(manager.forExecution(1L, new Descriptor()).isPresent());
+    }
+}
@@ -0,0 +1,39 @@
+package com.odysseusinc.arachne.executionengine.execution.r;
+
+import com.odysseusinc.arachne.executionengine.execution.Processes;
+import java.io.IOException;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * Helpers for tests of runtime services which work in background or run commands as root
+ */
+final class Conditions {
+    private static final long TIMEOUT_MS = 10_000;
+
+    private Conditions() {
+    }
+
+    /**
+     * Waits for the condition to hold, failing the test if it does not in 10 sec
+     */
+    static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for condition");
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * Whether commands run by {@link Processes#execAsRoot} can succeed, which takes root or passwordless sudo
+     */
+    static boolean canRunAsRoot() {
+        try {
+            Processes.execAsRoot("true");
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.odysseusinc.arachne.executionengine.execution.r;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.odysseusinc.arachne.executionengine.config.runtimeservice.RIsolatedRuntimeProperties;
+import com.odysseusinc.arachne.executionengine.execution.Processes;
+import com.odysseusinc.arachne.executionengine.model.descriptor.Descriptor;
+import com.odysseusinc.arachne.executionengine.model.descriptor.DescriptorBundle;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class JailPoolTest {
+    @TempDir
+    public Path root;
+
+    private final RIsolatedRuntimeProperties properties = new RIsolatedRuntimeProperties();
+    private final BundleCache bundleCache = mock(BundleCache.class);
+    private JailPool pool;
+    private DescriptorBundle first;
+    private DescriptorBundle second;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        first = bundle("first");
+        second = bundle("second");
+        properties.setPoolDir(root.resolve("jails").toString());
+        properties.setPoolSize(2);
+        properties.setPoolBundles(1);
+        pool = new JailPool(properties, bundleCache);
+    }
+
+    @AfterEach
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void preparesJailsForRequestedBundles() throws Exception {
+        Assumptions.assumeTrue(Conditions.canRunAsRoot(), "Jails are unpacked as root");
+        Path leftover = Files.createDirectories(root.resolve("jails").resolve("jail-of-previous-run"));
+        pool.init();
+        Assertions.assertFalse(Files.exists(leftover));
+
+        Assertions.assertFalse(pool.claim(1L, first).isPresent());
+        Conditions.await(() -> pool.getReadyCount() == 1);
+
+        Path jail = pool.claim(2L, first).orElseThrow(AssertionError::new);
+        Assertions.assertEquals("first", new String(Files.readAllBytes(jail.resolve("etc/bundle")), StandardCharsets.UTF_8));
+        // Requested twice over the window
+        Conditions.await(() -> pool.getReadyCount() == 2);
+        Assertions.assertEquals(1, pool.getHitCount());
+        Assertions.assertEquals(1, pool.getMissCount());
+        Assertions.assertEquals(3, pool.getPreparedCount());
+    }
+
+    @Test
+    public void dropsJailsOfBundlesNoLongerPopular() throws Exception {
+        Assumptions.assumeTrue(Conditions.canRunAsRoot(), "Jails are unpacked as root");
+        pool.init();
+        pool.claim(1L, first);
+        Conditions.await(() -> pool.getReadyCount() == 1);
+        Path jail;
+        try (Stream<Path> jails = Files.list(root.resolve("jails"))) {
+            jail = jails.findFirst().orElseThrow(AssertionError::new);
+        }
+
+        pool.claim(2L, second);
+        pool.claim(3L, second);
+        Conditions.await(() -> !Files.exists(jail) && pool.getReadyCount() == 2);
+        Path claimed = pool.claim(4L, second).orElseThrow(AssertionError::new);
+        Assertions.assertTrue(Files.exists(claimed.resolve("etc/bundle")));
+    }
+
+    @Test
+    public void keepsCachedBundlesExtractedInsteadOfJails() throws Exception {
+        when(bundleCache.isEnabled()).thenReturn(true);
+        pool.init();
+
+        Assertions.assertFalse(pool.claim(1L, first).isPresent());
+        verify(bundleCache, timeout(5000)).fill(first);
+        verify(bundleCache, never()).fill(second);
+        Assertions.assertEquals(0, pool.getReadyCount());
+        Assertions.assertEquals(0, pool.getMissCount());
+    }
+
+    private DescriptorBundle bundle(String id) throws IOException {
+        Path content = Files.createDirectories(root.resolve(id).resolve("etc"));
+        Files.write(content.resolve("bundle"), id.getBytes(StandardCharsets.UTF_8));
+        Path archive = root.resolve(id + ".tar.gz");
+        Processes.exec("tar", "czf", archive.toString(), "-C", root.resolve(id).toString(), "etc");
+        Descriptor descriptor = new Descriptor();
+        descriptor.setId(id);
+        return new DescriptorBundle(archive.toString(), descriptor);
+    }
+}
@@ -0,0 +1,73 @@
+package com.odysseusinc.arachne.executionengine.execution.r;
+
+import com.odysseusinc.arachne.executionengine.config.runtimeservice.RIsolatedRuntimeProperties;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class JailReaperTest {
+    @TempDir
+    public Path root;
+
+    private Path trash;
+    private JailReaper reaper;
+
+    @BeforeEach
+    public void setUp() {
+        trash = root.resolve("trash");
+        RIsolatedRuntimeProperties properties = new RIsolatedRuntimeProperties();
+        properties.setTrashDir(trash.toString());
+        reaper = new JailReaper(properties);
+    }
+
+    @AfterEach
+    public void shutdown() {
+        reaper.shutdown();
+    }
+
+    @Test
+    public void sweepsTrashInBatchesOnStart() throws Exception {
+        Assumptions.assumeTrue(Conditions.canRunAsRoot(), "Jails are deleted as root");
+        // More than a batch
+        for (int i = 0; i < 40; i++) {
+            jail("jail" + i);
+        }
+        Path filling = jail(".jail-being-moved");
+        Path abandoned = jail(".jail-of-failed-cleanup");
+        Files.setLastModifiedTime(abandoned, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2)));
+        Assertions.assertEquals(42, reaper.getBacklog());
+
+        reaper.init();
+        Conditions.await(() -> reaper.getReapedCount() == 41);
+        Assertions.assertEquals(1, reaper.getBacklog());
+        Assertions.assertTrue(Files.exists(filling));
+        Assertions.assertFalse(Files.exists(abandoned));
+        Assertions.assertEquals(0, reaper.getFailedCount());
+    }
+
+    @Test
+    public void sweepsOnRequest() throws Exception {
+        Assumptions.assumeTrue(Conditions.canRunAsRoot(), "Jails are deleted as root");
+        reaper.init();
+        Conditions.await(() -> reaper.getBacklog() == 0);
+        Path jail = jail("jail");
+
+        reaper.request();
+        Conditions.await(() -> reaper.getReapedCount() == 1);
+        Assertions.assertFalse(Files.exists(jail));
+    }
+
+    private Path jail(String name) throws IOException {
+        Path jail = Files.createDirectories(trash.resolve(name).resolve("usr/lib"));
+        Files.write(jail.resolve("libR.so"), new byte[1024]);
+        return trash.resolve(name);
+    }
+}
@@ -0,0 +1,147 @@
+package com.odysseusinc.arachne.executionengine.execution.r;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+
+public class RWorkerPoolTest {
+    /**
+     * Follows the protocol of worker.R, without R
+     */
+    private static final String WORKER = "echo READY; while IFS=$'\\t' read -r dir file log env; do "
+            + "rm -f \"$env\"; echo \"$file in $dir\" >> \"$log\"; "
+            + "case \"$file\" in fail.R) echo 'DONE 1';; stale.R) echo 'DONE 0 STALE';; *) echo 'DONE 0';; esac; done";
+    private static final Map<String, String> ENV = Collections.singletonMap("DBMS_PASSWORD", "secret");
+
+    @TempDir
+    public Path dir;
+
+    private RWorkerPool pool;
+
+    @AfterEach
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void reusesWorkerUntilFailure() throws Exception {
+        pool = new RWorkerPool(new String[]{"bash", "-c", WORKER, "worker"}, 1, 3, 10, new DefaultResourceLoader());
+        pool.init();
+        File workDir = dir.toFile();
+
+        // Workers are started by the first analysis of a descriptor
+        Assertions.assertFalse(pool.submit(1L, "hades", workDir, "main.R", log(1), ENV).isPresent());
+        Conditions.await(() -> pool.getIdleCount() == 1);
+
+        Process first = pool.submit(2L, "hades", workDir, "main.R", log(2), ENV).get();
+        Assertions.assertTrue(first.waitFor(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, first.exitValue());
+        Assertions.assertEquals("main.R in " + workDir.getAbsolutePath() + "\n", read(log(2)));
+        Conditions.await(() -> pool.getIdleCount() == 1);
+        Assertions.assertEquals(1, pool.getWorkerCount());
+
+        Process failed = pool.submit(3L, "hades", workDir, "fail.R", log(3), ENV).get();
+        Assertions.assertTrue(failed.waitFor(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, failed.exitValue());
+        Conditions.await(() -> pool.getRetiredCount() == 1 && pool.getIdleCount() == 1 && pool.getWorkerCount() == 1);
+        Assertions.assertEquals(2, pool.getWarmRunCount());
+        Assertions.assertEquals(1, pool.getColdRunCount());
+    }
+
+    @Test
+    public void replacesWorkerWhichCouldNotBeReset() throws Exception {
+        pool = new RWorkerPool(new String[]{"bash", "-c", WORKER, "worker"}, 1, 3, 10, new DefaultResourceLoader());
+        pool.init();
+        pool.submit(1L, "hades", dir.toFile(), "main.R", log(1), ENV);
+        Conditions.await(() -> pool.getIdleCount() == 1);
+
+        Process stale = pool.submit(2L, "hades", dir.toFile(), "stale.R", log(2), ENV).get();
+        Assertions.assertTrue(stale.waitFor(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, stale.exitValue());
+        Conditions.await(() -> pool.getRetiredCount() == 1 && pool.getIdleCount() == 1);
+    }
+
+    @Test
+    public void analysisStateDoesNotLeakIntoNextOne() throws Exception {
+        Assumptions.assumeTrue(isRscriptAvailable(), "Rscript is not available");
+        Path workDir = Files.createDirectories(dir.resolve("analysis"));
+        Files.write(workDir.resolve("leak.R"), Arrays.asList(
+                "leaked <<- 'global'",
+                "options(leaked.option = 'option', digits = 3)",
+                "Sys.setenv(LEAKED = 'env')",
+                "connection <- file(tempfile(), open = 'w')",
+                "set.seed(1)"
+        ));
+        Files.write(workDir.resolve("check.R"), Collections.singletonList(
+                "cat(exists('leaked'), getOption('leaked.option', 'none'), getOption('digits'), Sys.getenv('LEAKED', 'none'),"
+                        + " exists('.Random.seed', envir = globalenv()), nrow(showConnections()), sep = ';')"
+        ));
+        pool = new RWorkerPool(new String[]{"Rscript", "--no-init-file"}, 1, 3, 60, new DefaultResourceLoader());
+        pool.init();
+        pool.submit(1L, "hades", workDir.toFile(), "leak.R", log(1), ENV);
+        Conditions.await(() -> pool.getIdleCount() == 1);
+
+        Process leak = pool.submit(2L, "hades", workDir.toFile(), "leak.R", log(2), ENV).get();
+        Assertions.assertTrue(leak.waitFor(30, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, leak.exitValue());
+        Conditions.await(() -> pool.getIdleCount() == 1);
+
+        Process check = pool.submit(3L, "hades", workDir.toFile(), "check.R", log(3), ENV).get();
+        Assertions.assertTrue(check.waitFor(30, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, check.exitValue());
+        // Only stdin of the worker and the log of the analysis are open
+        Assertions.assertEquals("FALSE;none;7;none;FALSE;2", read(log(3)).trim());
+        Assertions.assertEquals(0, pool.getRetiredCount());
+    }
+
+    @Test
+    public void destroyingAnalysisTakesWorkerDown() throws Exception {
+        pool = new RWorkerPool(new String[]{"bash", "-c", "echo READY; read -r line; sleep 300", "worker"}, 1, 3, 10, new DefaultResourceLoader());
+        pool.init();
+        pool.submit(1L, "hades", dir.toFile(), "main.R", log(1), ENV);
+        Conditions.await(() -> pool.getIdleCount() == 1);
+
+        Process process = pool.submit(2L, "hades", dir.toFile(), "main.R", log(2), ENV).get();
+        Assertions.assertFalse(process.waitFor(200, TimeUnit.MILLISECONDS));
+        Assertions.assertTrue(process.isAlive());
+        process.destroyForcibly();
+        Assertions.assertTrue(process.waitFor(10, TimeUnit.SECONDS));
+        Assertions.assertNotEquals(0, process.exitValue());
+        Conditions.await(() -> pool.getRetiredCount() == 1);
+    }
+
+    @Test
+    public void encodesAnyValue() {
+        Assertions.assertEquals("a%20b%3D%C3%BC%0A_x-1.2", RWorkerPool.encode("a b=ü\n_x-1.2"));
+    }
+
+    private File log(int id) {
+        return dir.resolve(id + ".log").toFile();
+    }
+
+    private static boolean isRscriptAvailable() {
+        try {
+            return new ProcessBuilder("Rscript", "--version").start().waitFor() == 0;
+        } catch (IOException | InterruptedException e) {
+            return false;
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
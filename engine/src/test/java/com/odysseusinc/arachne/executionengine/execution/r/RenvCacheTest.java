@@ -0,0 +1,140 @@
+package com.odysseusinc.arachne.executionengine.execution.r;
+
+import com.odysseusinc.arachne.executionengine.config.runtimeservice.RIsolatedRuntimeProperties;
+import com.odysseusinc.arachne.executionengine.model.descriptor.Descriptor;
+import com.odysseusinc.arachne.executionengine.model.descriptor.DescriptorBundle;
+import com.odysseusinc.arachne.executionengine.model.descriptor.r.RDependency;
+import com.odysseusinc.arachne.executionengine.model.descriptor.r.RDependencySourceType;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+
+public class RenvCacheTest {
+    private static final String LOCK = "{\"R\": {\"Version\": \"4.1.3\"}, \"Packages\": {"
+            + "\"SqlRender\": {\"Package\": \"SqlRender\", \"Version\": \"1.9.0\", \"Source\": \"Repository\", \"Hash\": \"e6a3f2\"},"
+            + "\"Andromeda\": {\"Package\": \"Andromeda\", \"Version\": \"0.6.0\", \"Source\": \"Repository\", \"Hash\": \"a1b2c3\"},"
+            + "\"Cyclops\": {\"Package\": \"Cyclops\", \"Version\": \"3.3.1\", \"Source\": \"Repository\", \"Hash\": \"ffffff\"},"
+            + "\"Tools\": {\"Package\": \"Tools\", \"Version\": \"1.0\", \"Source\": \"GitHub\", \"RemoteRef\": \"main\", \"RemoteUsername\": \"ohdsi\"}"
+            + "}}";
+    private static final String LIBRARY = "renv/library/R-4.1/x86_64-pc-linux-gnu";
+
+    @TempDir
+    public Path root;
+
+    @Test
+    public void linksCachedPackagesIntoProjectLibrary() throws IOException {
+        RDependency sqlRender = dependency("SqlRender", "1.9.0");
+        sqlRender.setHash("e6a3f2");
+        String key = RenvCache.key(sqlRender, "4.1.3");
+        Path cached = root.resolve("cache/packages").resolve(key);
+        Files.createDirectories(cached.resolve("SqlRender"));
+        Files.write(Paths.get(cached + ".meta"), ("library=" + LIBRARY + "\nsize=1024\n").getBytes(StandardCharsets.UTF_8));
+        Path workDir = Files.createDirectories(root.resolve("analysis"));
+        Files.write(workDir.resolve("renv.lock"), LOCK.getBytes(StandardCharsets.UTF_8));
+
+        RenvCache cache = new RenvCache(properties(), new DefaultResourceLoader());
+        try {
+            cache.init();
+            Assertions.assertEquals(1, cache.getPackageCount());
+
+            RenvCache.Lease lease = cache.acquire(1L, workDir.toFile(), new DescriptorBundle("bundle.tar.gz", new Descriptor())).get();
+            Path link = workDir.resolve(LIBRARY).resolve("SqlRender");
+            Assertions.assertTrue(lease.hasLinks());
+            Assertions.assertEquals(root.resolve("cache/packages"), lease.getDir());
+            Assertions.assertEquals(Paths.get(RenvCache.MOUNT_POINT, key, "SqlRender"), Files.readSymbolicLink(link));
+            Assertions.assertEquals(1, cache.getHitCount());
+            // GitHub branch is not cacheable, so only Andromeda and Cyclops are missed
+            Assertions.assertEquals(2, cache.getMissCount());
+
+            cache.complete(lease);
+            Assertions.assertFalse(Files.exists(link, LinkOption.NOFOLLOW_LINKS));
+        } finally {
+            cache.shutdown();
+        }
+    }
+
+    @Test
+    public void installsMissedPackagesAndVerifiesThemAgainstLock() throws Exception {
+        Assumptions.assumeTrue(Conditions.canRunAsRoot(), "Cache is filled as root");
+        Path workDir = Files.createDirectories(root.resolve("analysis"));
+        Files.write(workDir.resolve("renv.lock"), LOCK.getBytes(StandardCharsets.UTF_8));
+        // Whatever renv installed in the jail must not get into the cache
+        for (String name : new String[]{"Andromeda", "Cyclops"}) {
+            Path installed = Files.createDirectories(workDir.resolve(LIBRARY).resolve(name));
+            Files.write(installed.resolve("DESCRIPTION"), ("Package: " + name + "\nVersion: 6.6.6\n").getBytes(StandardCharsets.UTF_8));
+        }
+        // Stands for renv-install.sh, installs any package as it is requested, with the hash of Andromeda
+        Path script = root.resolve("renv-install.sh");
+        Files.write(script, ("mkdir -p $2/$3\n"
+                + "printf 'Package: %s\\nVersion: %s\\n' $3 ${4#*@} > $2/$3/DESCRIPTION\n"
+                + "echo a1b2c3 > $2.hash\n").getBytes(StandardCharsets.UTF_8));
+        RIsolatedRuntimeProperties properties = properties();
+        properties.setRunCmd(new String[]{"bash"});
+        properties.setRenvInstallSh(script.toString());
+
+        RenvCache cache = new RenvCache(properties, new DefaultResourceLoader());
+        try {
+            cache.init();
+            cache.complete(cache.acquire(1L, workDir.toFile(), new DescriptorBundle("bundle.tar.gz", new Descriptor())).get());
+            Conditions.await(() -> cache.getPublishedCount() + cache.getRejectedCount() == 2);
+            Assertions.assertEquals(1, cache.getPublishedCount());
+            Assertions.assertEquals(1, cache.getRejectedCount());
+
+            Path workDir2 = Files.createDirectories(root.resolve("analysis2"));
+            Files.write(workDir2.resolve("renv.lock"), LOCK.getBytes(StandardCharsets.UTF_8));
+            RenvCache.Lease lease = cache.acquire(2L, workDir2.toFile(), new DescriptorBundle("bundle.tar.gz", new Descriptor())).get();
+            Path link = workDir2.resolve(LIBRARY).resolve("Andromeda");
+            Path cached = root.resolve("cache/packages").resolve(Files.readSymbolicLink(link).subpath(1, 3));
+            Assertions.assertEquals("Version: 0.6.0", Files.readAllLines(cached.resolve("DESCRIPTION")).get(1));
+            Assertions.assertFalse(Files.exists(workDir2.resolve(LIBRARY).resolve("Cyclops"), LinkOption.NOFOLLOW_LINKS));
+            cache.complete(lease);
+        } finally {
+            cache.shutdown();
+        }
+    }
+
+    @Test
+    public void verifiesInstalledPackageAgainstLock() {
+        Map<String, String> description = new HashMap<>();
+        description.put("Package", "SqlRender");
+        description.put("Version", "1.9.0");
+        Assertions.assertTrue(RenvCache.matches(dependency("SqlRender", "1.9.0"), description));
+        Assertions.assertFalse(RenvCache.matches(dependency("SqlRender", "1.10.0"), description));
+
+        RDependency github = dependency("SqlRender", "0123456789abcdef0123456789abcdef01234567");
+        github.setDependencySourceType(RDependencySourceType.GITHUB);
+        github.setOwner("ohdsi");
+        Assertions.assertFalse(RenvCache.isCacheable(github));
+        github.setHash("e6a3f2");
+        Assertions.assertTrue(RenvCache.isCacheable(github));
+        Assertions.assertEquals("ohdsi/SqlRender@" + github.getVersion(), RenvCache.spec(github));
+        Assertions.assertFalse(RenvCache.matches(github, description));
+        description.put("RemoteSha", github.getVersion());
+        description.put("RemoteUsername", "ohdsi");
+        Assertions.assertTrue(RenvCache.matches(github, description));
+    }
+
+    private RIsolatedRuntimeProperties properties() {
+        RIsolatedRuntimeProperties properties = new RIsolatedRuntimeProperties();
+        properties.setRenvCacheDir(root.resolve("cache").toString());
+        return properties;
+    }
+
+    private static RDependency dependency(String name, String version) {
+        RDependency dependency = new RDependency();
+        dependency.setName(name);
+        dependency.setVersion(version);
+        dependency.setDependencySourceType(RDependencySourceType.CRAN);
+        return dependency;
+    }
+}
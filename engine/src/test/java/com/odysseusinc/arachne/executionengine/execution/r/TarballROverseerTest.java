@@ -0,0 +1,89 @@
+package com.odysseusinc.arachne.executionengine.execution.r;
+
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.ExecutionOutcome;
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.Stage;
+import com.odysseusinc.arachne.executionengine.execution.LogStore;
+import com.odysseusinc.arachne.executionengine.execution.LogTailer;
+import com.odysseusinc.arachne.executionengine.execution.OverseerScheduler;
+import com.odysseusinc.arachne.executionengine.execution.ProcessTable;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TarballROverseerTest {
+    @TempDir
+    public Path dir;
+
+    private LogTailer tailer;
+    private OverseerScheduler scheduler;
+
+    @BeforeEach
+    public void init() throws Exception {
+        tailer = new LogTailer(dir.toString());
+        tailer.init();
+        scheduler = new OverseerScheduler(1);
+    }
+
+    @AfterEach
+    public void shutdown() throws Exception {
+        scheduler.shutdown();
+        tailer.shutdown();
+    }
+
+    @Test
+    public void killsWholeTreeAfterInactivity() throws Exception {
+        Assumptions.assumeTrue(ProcessTable.PROC.toFile().isDirectory());
+        LogTailer.Tail tail = tailer.create(1L);
+        Process process = new ProcessBuilder("bash", "-c", "echo started; sleep 300 & sleep 300 & wait")
+                .redirectErrorStream(true).redirectOutput(tail.getFile()).start();
+        Thread.sleep(500);
+        List<ProcessTable.Entry> tree = ProcessTable.read(ProcessTable.PROC).tree(ProcessTable.pid(process).get());
+        Assertions.assertEquals(3, tree.size());
+
+        TarballROverseer overseer = new TarballROverseer(
+                1L, process, tail, new LogStore(dir.resolve("1.spill").toFile(), 1024), 3600, 1, (stage, log) -> {}, 100,
+                Instant.now(), "test", 5, scheduler, Optional.empty()
+        );
+        ExecutionOutcome outcome = overseer.getResult().get(30, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(Stage.EXECUTE, outcome.getStage());
+        Assertions.assertTrue(outcome.getError().startsWith("No output for 1 seconds"), outcome.getError());
+        Assertions.assertEquals("started\n", outcome.getStdout());
+        for (ProcessTable.Entry entry : tree) {
+            Assertions.assertFalse(ProcessTable.isAlive(ProcessTable.PROC, entry), entry.getKey());
+        }
+    }
+
+    @Test
+    public void keepsOnlyTailInOutcomeAndHandsOverLogFile() throws Exception {
+        LogTailer.Tail tail = tailer.create(2L);
+        Process process = new ProcessBuilder("bash", "-c", "for i in $(seq 1 10000); do echo line $i; done")
+                .redirectErrorStream(true).redirectOutput(tail.getFile()).start();
+        // The first 64K chars are spilled, as the log outgrows memory
+        LogStore stdout = new LogStore(dir.resolve("2.spill").toFile(), 16);
+        TarballROverseer overseer = new TarballROverseer(
+                2L, process, tail, stdout, 3600, 0, (stage, log) -> {}, 100, Instant.now(), "test", 5, scheduler, Optional.empty()
+        );
+        ExecutionOutcome outcome = overseer.getResult().get(30, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(Stage.COMPLETED, outcome.getStage());
+        Assertions.assertEquals(stdout.getTail(), outcome.getStdout());
+        Assertions.assertTrue(outcome.getStdout().length() < stdout.length());
+        Assertions.assertTrue(outcome.getStdout().endsWith("line 10000\n"));
+        File log = overseer.detachStdout().orElseThrow(AssertionError::new);
+        List<String> lines = Files.readAllLines(log.toPath());
+        Assertions.assertEquals(10000, lines.size());
+        Assertions.assertEquals("line 1", lines.get(0));
+        Assertions.assertFalse(overseer.detachStdout().isPresent());
+    }
+}
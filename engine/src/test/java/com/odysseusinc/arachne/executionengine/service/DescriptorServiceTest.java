@@ -1,13 +1,25 @@
 package com.odysseusinc.arachne.executionengine.service;
 
 import com.odysseusinc.arachne.executionengine.model.descriptor.DefaultDescriptor;
+import com.odysseusinc.arachne.executionengine.model.descriptor.Descriptor;
 import com.odysseusinc.arachne.executionengine.model.descriptor.DescriptorBundle;
+import com.odysseusinc.arachne.executionengine.model.descriptor.r.RDependency;
+import com.odysseusinc.arachne.executionengine.model.descriptor.r.RDependencySourceType;
+import com.odysseusinc.arachne.executionengine.model.descriptor.r.RExecutionRuntime;
 import com.odysseusinc.arachne.executionengine.service.impl.DescriptorServiceImpl;
+import com.odysseusinc.arachne.executionengine.service.impl.RuntimeIndex;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 public class DescriptorServiceTest {
     private final static DescriptorBundle DEFAULT = new DescriptorBundle("default.tar.gz", new DefaultDescriptor());
@@ -69,6 +81,66 @@ public class DescriptorServiceTest {
         Assertions.assertEquals(DEFAULT, subj.getDescriptorBundle(analysisFolder("strategus-mismatch"), 1L, null));
     }
 
+    @Test
+    public void refreshPicksUpChanges(@TempDir Path folder) throws IOException {
+        Path envs = ENVS.get();
+        Files.copy(envs.resolve("descriptor_hades_1.13.0.json"), folder.resolve("descriptor_hades_1.13.0.json"));
+        Files.write(folder.resolve("descriptor_broken.json"), "{".getBytes());
+        DescriptorServiceImpl subj = new DescriptorServiceImpl(DEFAULT, Optional.of(folder), true, 0);
+        Assertions.assertEquals(1, subj.getDescriptors().get().size());
+        // Descriptor without bundle is listed, but not used
+        Assertions.assertEquals(DEFAULT, subj.getDescriptorBundle(analysisFolder("strategus-match"), 1L, "hades_0.0.1"));
+
+        String bundleName = "r_base_focal_descriptor_hades_1.13.0_amd64.tar.gz";
+        Files.copy(envs.resolve(bundleName), folder.resolve(bundleName));
+        Files.copy(envs.resolve("descriptor_strategus_0.0.6.json"), folder.resolve("descriptor_strategus_0.0.6.json"));
+        subj.refresh();
+        Assertions.assertEquals(2, subj.getDescriptors().get().size());
+        DescriptorBundle bundle = subj.getDescriptorBundle(analysisFolder("strategus-match"), 1L, "hades_0.0.1");
+        Assertions.assertEquals(folder.resolve(bundleName).toString(), bundle.getPath());
+
+        Files.copy(envs.resolve("descriptor_base.json"), folder.resolve("descriptor_hades_1.13.0.json"), StandardCopyOption.REPLACE_EXISTING);
+        subj.refresh();
+        Assertions.assertTrue(subj.getDescriptors("hades_0.0.1").isEmpty());
+        Assertions.assertEquals(1, subj.getDescriptors("Default").size());
+    }
+
+    @Test
+    public void indexMatchesAndRanksRuntimes() {
+        Descriptor single = descriptor("single", runtime("4.1.2", "a"));
+        Descriptor pair = descriptor("pair", runtime("4.1.2", "a", "b"));
+        Descriptor newer = descriptor("newer", runtime("4.2.0", "a", "b", "c"));
+        RuntimeIndex index = new RuntimeIndex(Arrays.asList(single, pair, newer));
+
+        Assertions.assertEquals(Arrays.asList(single, pair), index.match(runtime("4.1.2", "a")));
+        Assertions.assertEquals(Collections.singletonList(newer), index.match(runtime("4.2.0", "c", "a")));
+        Assertions.assertTrue(index.match(runtime("4.1.2", "a", "b", "c")).isEmpty());
+
+        Assertions.assertEquals(newer, index.closest(runtime("4.1.2", "a", "b", "c")).get().getKey());
+        // Among runtimes having as many dependencies, the one of the requested R version is closer
+        Assertions.assertEquals(pair, index.closest(runtime("4.1.2", "a", "b", "d")).get().getKey());
+    }
+
+    private static Descriptor descriptor(String id, RExecutionRuntime runtime) {
+        Descriptor descriptor = new Descriptor();
+        descriptor.setId(id);
+        descriptor.setExecutionRuntimes(Collections.singletonList(runtime));
+        return descriptor;
+    }
+
+    private static RExecutionRuntime runtime(String version, String... packages) {
+        RExecutionRuntime runtime = new RExecutionRuntime();
+        runtime.setVersion(version);
+        runtime.setDependencies(Arrays.stream(packages).map(name -> {
+            RDependency dependency = new RDependency();
+            dependency.setName(name);
+            dependency.setVersion("1.0");
+            dependency.setDependencySourceType(RDependencySourceType.CRAN);
+            return dependency;
+        }).collect(Collectors.toList()));
+        return runtime;
+    }
+
     private static File analysisFolder(String subfolder) {
         return new File("src/test/resources/analysis/" + subfolder);
     }